@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2021 - 2022 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limbofilter;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import net.elytrium.java.commons.mc.serialization.Serializer;
+import net.elytrium.limboapi.api.Limbo;
+import net.elytrium.limboapi.api.chunk.VirtualWorld;
+import net.elytrium.limbofilter.cache.CachedPackets;
+import net.elytrium.limbofilter.cache.captcha.CaptchaPools;
+import net.elytrium.limbofilter.policy.AddressLists;
+import net.elytrium.limbofilter.policy.NetworkPolicy;
+import net.elytrium.limbofilter.policy.UsernameFilter;
+
+/**
+ * Everything the filter limbo needs, built from one config snapshot.
+ * Generations are never modified after being built, sessions keep the generation they were spawned with.
+ * A closed generation is disposed once the last of its sessions has left.
+ */
+public class FilterGeneration {
+
+  private final int id;
+  private final Settings settings;
+  private final Serializer serializer;
+  private final CachedPackets packets;
+  private final CaptchaPools captchaPools;
+  private final VirtualWorld filterWorld;
+  private final Limbo filterServer;
+  private final AddressLists addressLists;
+  private final NetworkPolicy networkPolicy;
+  private final UsernameFilter usernameFilter;
+  // -1 once disposed.
+  private final AtomicInteger sessions = new AtomicInteger();
+
+  private volatile boolean closed;
+
+  public FilterGeneration(int id, Settings settings, Serializer serializer, CachedPackets packets,
+                          CaptchaPools captchaPools, VirtualWorld filterWorld, Limbo filterServer, AddressLists addressLists,
+                          NetworkPolicy networkPolicy, UsernameFilter usernameFilter) {
+    this.id = id;
+    this.settings = settings;
+    this.serializer = serializer;
+    this.packets = packets;
+    this.captchaPools = captchaPools;
+    this.filterWorld = filterWorld;
+    this.filterServer = filterServer;
+    this.addressLists = addressLists;
+    this.networkPolicy = networkPolicy;
+    this.usernameFilter = usernameFilter;
+  }
+
+  public int getId() {
+    return this.id;
+  }
+
+  public Settings getSettings() {
+    return this.settings;
+  }
+
+  public Serializer getSerializer() {
+    return this.serializer;
+  }
+
+  public CachedPackets getPackets() {
+    return this.packets;
+  }
+
+  public CaptchaPools getCaptchaPools() {
+    return this.captchaPools;
+  }
+
+  public VirtualWorld getFilterWorld() {
+    return this.filterWorld;
+  }
+
+  public Limbo getFilterServer() {
+    return this.filterServer;
+  }
+
+  public AddressLists getAddressLists() {
+    return this.addressLists;
+  }
+
+  public NetworkPolicy getNetworkPolicy() {
+    return this.networkPolicy;
+  }
+
+  public UsernameFilter getUsernameFilter() {
+    return this.usernameFilter;
+  }
+
+  /**
+   * @return false if the generation has already been disposed, and can't be used for a new session
+   */
+  public boolean retain() {
+    while (true) {
+      int sessions = this.sessions.get();
+      if (sessions < 0) {
+        return false;
+      }
+
+      if (this.sessions.compareAndSet(sessions, sessions + 1)) {
+        return true;
+      }
+    }
+  }
+
+  public void release() {
+    if (this.sessions.decrementAndGet() == 0 && this.closed) {
+      this.dispose();
+    }
+  }
+
+  /**
+   * Stops generating captcha tiers, sessions spawned with this generation can still use it until they leave.
+   */
+  public void close() {
+    this.closed = true;
+    this.captchaPools.close();
+    this.dispose();
+  }
+
+  private void dispose() {
+    if (this.sessions.compareAndSet(0, -1)) {
+      this.captchaPools.dispose();
+      LimboFilter.getLogger().info("Disposed filter generation #" + this.id + ".");
+    }
+  }
+}
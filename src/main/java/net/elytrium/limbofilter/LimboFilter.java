@@ -21,12 +21,16 @@ import com.google.inject.Inject;
 import com.velocitypowered.api.command.CommandManager;
 import com.velocitypowered.api.event.Subscribe;
 import com.velocitypowered.api.event.proxy.ProxyInitializeEvent;
+import com.velocitypowered.api.event.proxy.ProxyShutdownEvent;
+import com.velocitypowered.api.network.ProtocolVersion;
 import com.velocitypowered.api.plugin.Dependency;
 import com.velocitypowered.api.plugin.Plugin;
 import com.velocitypowered.api.plugin.PluginContainer;
 import com.velocitypowered.api.plugin.annotation.DataDirectory;
 import com.velocitypowered.api.proxy.Player;
 import com.velocitypowered.api.proxy.ProxyServer;
+import com.velocitypowered.proxy.VelocityServer;
+import com.velocitypowered.proxy.network.ServerChannelInitializerHolder;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import java.io.File;
 import java.io.FileNotFoundException;
@@ -35,12 +39,24 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 import net.elytrium.java.commons.mc.serialization.Serializer;
 import net.elytrium.java.commons.mc.serialization.Serializers;
 import net.elytrium.java.commons.updates.UpdatesChecker;
@@ -52,13 +68,32 @@ import net.elytrium.limboapi.api.file.SchematicFile;
 import net.elytrium.limboapi.api.file.StructureFile;
 import net.elytrium.limboapi.api.file.WorldFile;
 import net.elytrium.limbofilter.cache.CachedPackets;
-import net.elytrium.limbofilter.cache.captcha.CachedCaptcha;
-import net.elytrium.limbofilter.captcha.CaptchaGenerator;
+import net.elytrium.limbofilter.cache.captcha.CaptchaPools;
+import net.elytrium.limbofilter.cache.world.CachedWorld;
+import net.elytrium.limbofilter.cluster.ClusterNode;
+import net.elytrium.limbofilter.cluster.ClusterRates;
+import net.elytrium.limbofilter.cluster.PeerVerificationBackend;
+import net.elytrium.limbofilter.cluster.VerificationBackend;
 import net.elytrium.limbofilter.commands.LimboFilterCommand;
 import net.elytrium.limbofilter.commands.SendFilterCommand;
 import net.elytrium.limbofilter.handler.BotFilterSessionHandler;
+import net.elytrium.limbofilter.handler.ReleaseQueue;
+import net.elytrium.limbofilter.handler.SessionSlab;
 import net.elytrium.limbofilter.listener.FilterListener;
+import net.elytrium.limbofilter.policy.AddressLists;
+import net.elytrium.limbofilter.policy.AdmissionController;
+import net.elytrium.limbofilter.policy.FilterPolicy;
+import net.elytrium.limbofilter.policy.FilterToggle;
+import net.elytrium.limbofilter.policy.NetworkPolicy;
+import net.elytrium.limbofilter.policy.PingTable;
+import net.elytrium.limbofilter.policy.PolicyController;
+import net.elytrium.limbofilter.policy.SessionLimiter;
+import net.elytrium.limbofilter.policy.UsernameFilter;
+import net.elytrium.limbofilter.protocol.FilterChannelInitializer;
+import net.elytrium.limbofilter.stats.HeavyHitters;
 import net.elytrium.limbofilter.stats.Statistics;
+import net.elytrium.limbofilter.stats.VerdictReason;
+import net.elytrium.limbofilter.stats.audit.AuditLog;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.serializer.ComponentSerializer;
 import org.bstats.charts.SimplePie;
@@ -82,25 +117,47 @@ import org.slf4j.Logger;
 )
 public class LimboFilter {
 
+  private static final String DEFAULT_CLUSTER_SECRET = "change-me";
+
   @MonotonicNonNull
   private static Logger LOGGER;
   @MonotonicNonNull
   private static Serializer SERIALIZER;
 
   private final Map<String, CachedUser> cachedFilterChecks = new ConcurrentHashMap<>();
+  private final AtomicReference<FilterGeneration> generation = new AtomicReference<>();
+  private final AtomicInteger generationCounter = new AtomicInteger();
+  private final ExecutorService reloadExecutor = Executors.newSingleThreadExecutor(task -> new Thread(task, "limbofilter-reload"));
+  private final ScheduledExecutorService purgeCacheExecutor = Executors.newSingleThreadScheduledExecutor(task -> new Thread(task, "purge-cache"));
+  private final ExecutorService stageExecutor = Executors.newCachedThreadPool(task -> new Thread(task, "limbofilter-startup"));
 
   private final Path dataDirectory;
   private final File configFile;
   private final Metrics.Factory metricsFactory;
   private final ProxyServer server;
-  private final CachedPackets packets;
-  private final CaptchaGenerator generator;
   private final Statistics statistics;
   private final LimboFactory factory;
-
-  private CachedCaptcha cachedCaptcha;
-  private Limbo filterServer;
-  private VirtualWorld filterWorld;
+  private final PolicyController policyController;
+  private final AdmissionController admissionController = new AdmissionController();
+  private final SessionLimiter sessionLimiter = new SessionLimiter();
+  private final PingTable pingTable = new PingTable();
+  private final HeavyHitters heavyHitters = new HeavyHitters();
+  private final ReleaseQueue releaseQueue;
+
+  private volatile AuditLog auditLog;
+  private volatile VerificationBackend verificationBackend = VerificationBackend.LOCAL;
+  private volatile ClusterRates clusterRates;
+  private ClusterNode clusterNode;
+  // Settings the running node was started with.
+  private Settings.MAIN.CLUSTER clusterSettings;
+  private SessionSlab sessionSlab;
+  private FilterListener filterListener;
+  private ScheduledFuture<?> purgeCacheTask;
+  private long purgeCacheMillis;
+  private Map<String, InetAddress> whitelistedPlayers = Map.of();
+  // Configured addresses or hostnames, hostnames and non-canonical literals don't match InetAddress#getHostAddress.
+  private Map<String, String> whitelist = Map.of();
+  private boolean channelInitializerInstalled;
 
   @Inject
   public LimboFilter(Logger logger, ProxyServer server, Metrics.Factory metricsFactory, @DataDirectory Path dataDirectory) {
@@ -110,9 +167,9 @@ public class LimboFilter {
     this.metricsFactory = metricsFactory;
     this.dataDirectory = dataDirectory;
     this.configFile = this.dataDirectory.resolve("config.yml").toFile();
-    this.packets = new CachedPackets();
-    this.generator = new CaptchaGenerator(this);
     this.statistics = new Statistics();
+    this.policyController = new PolicyController(this);
+    this.releaseQueue = new ReleaseQueue(this);
 
     this.factory = (LimboFactory) this.server.getPluginManager().getPlugin("limboapi").flatMap(PluginContainer::getInstance).orElseThrow();
   }
@@ -132,84 +189,218 @@ public class LimboFilter {
 
     Settings.IMP.setLogger(LOGGER);
 
-    this.reload();
+    // Only the config is loaded synchronously, the filter limbo is built in the background.
+    // Until it is ready, players that should be checked are asked to rejoin.
+    Settings.IMP.reload(this.configFile, Settings.IMP.PREFIX);
+    setSerializer(this.createSerializer(Settings.IMP));
+    this.admissionController.reload(Settings.IMP.MAIN.ADMISSION, SERIALIZER.deserialize(Settings.IMP.MAIN.STRINGS.ADMISSION_KICK));
+    this.sessionLimiter.reload(Settings.IMP.MAIN.SESSION_LIMIT, SERIALIZER.deserialize(Settings.IMP.MAIN.STRINGS.SESSION_LIMIT_KICK));
+    if (Settings.IMP.MAIN.SESSION_SLAB_SIZE > 0) {
+      this.sessionSlab = new SessionSlab(Settings.IMP.MAIN.SESSION_SLAB_SIZE);
+      this.server.getScheduler().buildTask(this, this.sessionSlab::sweep).delay(1, TimeUnit.SECONDS).repeat(1, TimeUnit.SECONDS).schedule();
+    }
+    this.statistics.startUpdating(Settings.IMP.MAIN);
+    this.policyController.start();
+    this.filterListener = new FilterListener(this, Settings.IMP.MAIN);
+    this.server.getEventManager().register(this, this.filterListener);
+
+    this.reload().exceptionally(throwable -> {
+      LOGGER.error("Unable to build the filter limbo.", throwable);
+      return null;
+    });
+
+    this.purgeCacheExecutor.scheduleAtFixedRate(() -> {
+      FilterGeneration generation = this.generation.get();
+      if (generation != null) {
+        generation.getCaptchaPools().releaseUnused();
+      }
+
+      this.admissionController.purgeExpired();
+    }, 10, 10, TimeUnit.SECONDS);
+
+    if (Settings.IMP.CHECK_FOR_UPDATES) {
+      this.stageExecutor.execute(() -> {
+        if (!UpdatesChecker.checkVersionByURL("https://raw.githubusercontent.com/Elytrium/LimboFilter/master/VERSION", Settings.IMP.VERSION)) {
+          LOGGER.error("****************************************");
+          LOGGER.warn("The new LimboFilter update was found, please update.");
+          LOGGER.error("https://github.com/Elytrium/LimboFilter/releases/");
+          LOGGER.error("****************************************");
+        }
+      });
+    }
+  }
 
-    if (!UpdatesChecker.checkVersionByURL("https://raw.githubusercontent.com/Elytrium/LimboFilter/master/VERSION", Settings.IMP.VERSION)) {
-      LOGGER.error("****************************************");
-      LOGGER.warn("The new LimboFilter update was found, please update.");
-      LOGGER.error("https://github.com/Elytrium/LimboFilter/releases/");
-      LOGGER.error("****************************************");
+  @Subscribe
+  public void onProxyShutdown(ProxyShutdownEvent event) {
+    this.reloadExecutor.shutdownNow();
+    this.stageExecutor.shutdownNow();
+    this.purgeCacheExecutor.shutdownNow();
+    this.policyController.stop();
+    this.releaseQueue.stop();
+    this.statistics.stopUpdating();
+    if (this.auditLog != null) {
+      this.auditLog.close();
     }
+    this.closeCluster();
   }
 
-  @SuppressFBWarnings(value = "NP_NULL_ON_SOME_PATH", justification = "LEGACY_AMPERSAND can't be null in velocity.")
-  public void reload() {
-    Settings.IMP.reload(this.configFile, Settings.IMP.PREFIX);
+  /**
+   * Builds a new generation from the config in the background and swaps it in once it is complete.
+   * Until then, and for sessions that are already in the filter limbo, the previous generation is used.
+   */
+  public CompletableFuture<FilterGeneration> reload() {
+    return CompletableFuture.supplyAsync(() -> {
+      final long start = System.currentTimeMillis();
+      // The config is parsed once into the snapshot, Settings.IMP is replaced only once the generation is swapped in.
+      Settings settings = new Settings();
+      settings.setLogger(LOGGER);
+      settings.reload(this.configFile, Settings.IMP.PREFIX);
+
+      Map<String, Long> timings = Collections.synchronizedMap(new LinkedHashMap<>());
+      timings.put("config", System.currentTimeMillis() - start);
+
+      FilterGeneration generation = this.buildGeneration(settings, this.createSerializer(settings), timings);
+      this.applyGeneration(generation);
+
+      LOGGER.info("Filter generation #" + generation.getId() + " built in " + (System.currentTimeMillis() - start) + " ms "
+          + timings.entrySet().stream().map(timing -> timing.getKey() + ": " + timing.getValue() + " ms").collect(Collectors.joining(", ", "(", ").")));
+      return generation;
+    }, this.reloadExecutor);
+  }
 
-    ComponentSerializer<Component, Component, String> serializer = Serializers.valueOf(Settings.IMP.SERIALIZER.toUpperCase(Locale.ROOT)).getSerializer();
+  @SuppressFBWarnings(value = "NP_NULL_ON_SOME_PATH", justification = "LEGACY_AMPERSAND can't be null in velocity.")
+  private Serializer createSerializer(Settings settings) {
+    ComponentSerializer<Component, Component, String> serializer = Serializers.valueOf(settings.SERIALIZER.toUpperCase(Locale.ROOT)).getSerializer();
     if (serializer == null) {
       LOGGER.warn("The specified serializer could not be founded, using default. (LEGACY_AMPERSAND)");
-      setSerializer(new Serializer(Objects.requireNonNull(Serializers.LEGACY_AMPERSAND.getSerializer())));
+      return new Serializer(Objects.requireNonNull(Serializers.LEGACY_AMPERSAND.getSerializer()));
     } else {
-      setSerializer(new Serializer(serializer));
+      return new Serializer(serializer);
     }
+  }
 
-    BotFilterSessionHandler.setFallingCheckTotalTime(Settings.IMP.MAIN.FALLING_CHECK_TICKS * 50L);
+  /**
+   * Builds the generation stages in parallel: packets, captcha and world, then the limbo once the world is loaded.
+   */
+  private FilterGeneration buildGeneration(Settings settings, Serializer serializer, Map<String, Long> timings) {
+    CompletableFuture<CachedPackets> packets = this.runStage("packets", timings, () -> {
+      CachedPackets cachedPackets = new CachedPackets();
+      cachedPackets.createPackets(this.factory, settings.MAIN, serializer);
+      return cachedPackets;
+    });
 
-    this.statistics.startUpdating();
+    CompletableFuture<CaptchaPools> captchaPools = this.runStage("captcha", timings, () -> new CaptchaPools(this, settings.MAIN));
 
-    this.cachedCaptcha = new CachedCaptcha(this);
-    this.generator.generateCaptcha();
+    CompletableFuture<VirtualWorld> filterWorld = this.runStage("world", timings, () -> this.createFilterWorld(settings.MAIN));
+    CompletableFuture<Limbo> filterServer = filterWorld.thenCompose(world -> this.runStage("limbo", timings, () ->
+        this.factory.createLimbo(world)
+            .setName("LimboFilter")
+            .setReadTimeout(settings.MAIN.MAX_PING)
+    ));
 
-    this.packets.createPackets(this.getFactory());
+    CompletableFuture<AddressLists> addressLists = this.runStage("address lists", timings, () ->
+        new AddressLists(this.dataDirectory, settings.MAIN.ADDRESS_LISTS, serializer.deserialize(settings.MAIN.STRINGS.ADDRESS_DENIED_KICK))
+    );
 
-    this.cachedFilterChecks.clear();
+    CompletableFuture<NetworkPolicy> networkPolicy = this.runStage("network policy", timings, () ->
+        new NetworkPolicy(this.dataDirectory, settings.MAIN.NETWORK_POLICY, serializer.deserialize(settings.MAIN.STRINGS.NETWORK_LIMIT_KICK))
+    );
 
-    Settings.IMP.MAIN.WHITELISTED_PLAYERS.forEach((username, ip) -> {
-      try {
-        this.cachedFilterChecks.put(username, new CachedUser(InetAddress.getByName(ip), Long.MAX_VALUE));
-      } catch (UnknownHostException e) {
-        e.printStackTrace();
-      }
-    });
+    CompletableFuture<UsernameFilter> usernameFilter = this.runStage("username filter", timings, () ->
+        new UsernameFilter(settings.MAIN.USERNAME_FILTER, this.statistics, serializer.deserialize(settings.MAIN.STRINGS.USERNAME_BLOCKED_KICK))
+    );
 
-    Settings.MAIN.COORDS captchaCoords = Settings.IMP.MAIN.COORDS;
-    this.filterWorld = this.factory.createVirtualWorld(
-        Dimension.valueOf(Settings.IMP.MAIN.BOTFILTER_DIMENSION),
+    try {
+      CompletableFuture.allOf(packets, captchaPools, filterServer, addressLists, networkPolicy, usernameFilter).join();
+    } catch (CompletionException e) {
+      captchaPools.thenAccept(CaptchaPools::close);
+      throw e;
+    }
+
+    return new FilterGeneration(
+        this.generationCounter.incrementAndGet(), settings, serializer, packets.join(), captchaPools.join(), filterWorld.join(), filterServer.join(),
+        addressLists.join(), networkPolicy.join(), usernameFilter.join()
+    );
+  }
+
+  private <T> CompletableFuture<T> runStage(String name, Map<String, Long> timings, Supplier<T> stage) {
+    return CompletableFuture.supplyAsync(() -> {
+      long start = System.currentTimeMillis();
+      T result = stage.get();
+      timings.put(name, System.currentTimeMillis() - start);
+      return result;
+    }, this.stageExecutor);
+  }
+
+  private VirtualWorld createFilterWorld(Settings.MAIN settings) {
+    Settings.MAIN.COORDS captchaCoords = settings.COORDS;
+    VirtualWorld filterWorld = this.factory.createVirtualWorld(
+        Dimension.valueOf(settings.BOTFILTER_DIMENSION),
         captchaCoords.CAPTCHA_X, captchaCoords.CAPTCHA_Y, captchaCoords.CAPTCHA_Z,
         (float) captchaCoords.CAPTCHA_YAW, (float) captchaCoords.CAPTCHA_PITCH
     );
 
-    if (Settings.IMP.MAIN.LOAD_WORLD) {
+    if (settings.LOAD_WORLD) {
       try {
-        Path path = this.dataDirectory.resolve(Settings.IMP.MAIN.WORLD_FILE_PATH);
-        WorldFile file;
-        switch (Settings.IMP.MAIN.WORLD_FILE_TYPE) {
-          case "schematic": {
-            file = new SchematicFile(path);
-            break;
-          }
-          case "structure": {
-            file = new StructureFile(path);
-            break;
+        Path path = this.dataDirectory.resolve(settings.WORLD_FILE_PATH);
+        String type = settings.WORLD_FILE_TYPE;
+        Settings.MAIN.WORLD_COORDS coords = settings.WORLD_COORDS;
+        CachedWorld cachedWorld = new CachedWorld(this.dataDirectory.resolve("world-cache"));
+        if (!settings.CACHE_WORLD || !cachedWorld.restore(this.factory, filterWorld, path, type, coords.X, coords.Y, coords.Z)) {
+          WorldFile file;
+          switch (type) {
+            case "schematic": {
+              file = new SchematicFile(path);
+              break;
+            }
+            case "structure": {
+              file = new StructureFile(path);
+              break;
+            }
+            default: {
+              LOGGER.error("Incorrect world file type.");
+              this.server.shutdown();
+              throw new IllegalStateException("Incorrect world file type: " + type);
+            }
           }
-          default: {
-            LOGGER.error("Incorrect world file type.");
-            this.server.shutdown();
-            return;
+
+          if (settings.CACHE_WORLD) {
+            cachedWorld.bake(file, this.factory, filterWorld, path, type, coords.X, coords.Y, coords.Z);
+          } else {
+            file.toWorld(this.factory, filterWorld, coords.X, coords.Y, coords.Z);
           }
         }
-
-        Settings.MAIN.WORLD_COORDS coords = Settings.IMP.MAIN.WORLD_COORDS;
-        file.toWorld(this.factory, this.filterWorld, coords.X, coords.Y, coords.Z);
       } catch (IOException e) {
         e.printStackTrace();
       }
     }
 
-    this.filterServer = this.factory.createLimbo(this.filterWorld)
-        .setName("LimboFilter")
-        .setReadTimeout(Settings.IMP.MAIN.MAX_PING);
+    return filterWorld;
+  }
+
+  private void applyGeneration(FilterGeneration generation) {
+    setSerializer(generation.getSerializer());
+    FilterGeneration previous = this.generation.getAndSet(generation);
+    Settings.IMP = generation.getSettings();
+    if (previous != null) {
+      // Disposed once the sessions spawned with it have left.
+      previous.close();
+      LOGGER.info("Swapped filter generation #" + previous.getId() + " with #" + generation.getId() + ".");
+    }
+
+    Settings.MAIN settings = generation.getSettings().MAIN;
+    this.statistics.startUpdating(settings);
+    this.policyController.start();
+    if (settings.EARLY_DROP.ENABLED || settings.FRAME_VALIDATOR.ENABLED) {
+      this.installChannelInitializer(settings);
+    }
+    this.admissionController.reload(settings.ADMISSION, SERIALIZER.deserialize(settings.STRINGS.ADMISSION_KICK));
+    this.sessionLimiter.reload(settings.SESSION_LIMIT, SERIALIZER.deserialize(settings.STRINGS.SESSION_LIMIT_KICK));
+    this.releaseQueue.reload(settings.RELEASE_QUEUE);
+    this.reloadAuditLog(settings.AUDIT);
+    this.reloadCluster(settings);
+
+    this.reloadWhitelist(settings.WHITELISTED_PLAYERS);
 
     CommandManager manager = this.server.getCommandManager();
     manager.unregister("limbofilter");
@@ -218,32 +409,181 @@ public class LimboFilter {
     manager.register("limbofilter", new LimboFilterCommand(this), "lf", "botfilter", "bf", "lfilter");
     manager.register("sendfilter", new SendFilterCommand(this));
 
-    this.server.getEventManager().unregisterListeners(this);
-    this.server.getEventManager().register(this, new FilterListener(this));
+    if (this.filterListener != null) {
+      this.server.getEventManager().unregisterListener(this, this.filterListener);
+    }
+    this.filterListener = new FilterListener(this, settings);
+    this.server.getEventManager().register(this, this.filterListener);
+
+    // Verified players are kept across reloads, their expiry follows the new PURGE_CACHE_MILLIS as the cache stores verification times.
+    long purgeCacheMillis = settings.PURGE_CACHE_MILLIS;
+    if (this.purgeCacheTask == null || this.purgeCacheMillis != purgeCacheMillis) {
+      long initialDelay = purgeCacheMillis;
+      if (this.purgeCacheTask != null) {
+        this.purgeCacheTask.cancel(false);
+        // Purge the players which have expired with the new value right away.
+        initialDelay = 0;
+      }
 
-    Executors.newScheduledThreadPool(1, task -> new Thread(task, "purge-cache")).scheduleAtFixedRate(
-        () -> this.checkCache(this.cachedFilterChecks),
-        Settings.IMP.MAIN.PURGE_CACHE_MILLIS,
-        Settings.IMP.MAIN.PURGE_CACHE_MILLIS,
-        TimeUnit.MILLISECONDS
-    );
+      this.purgeCacheMillis = purgeCacheMillis;
+      this.purgeCacheTask = this.purgeCacheExecutor.scheduleAtFixedRate(
+          () -> this.checkCache(this.cachedFilterChecks),
+          initialDelay,
+          purgeCacheMillis,
+          TimeUnit.MILLISECONDS
+      );
+    }
+  }
+
+  /**
+   * Applies the whitelist changes to the cache, without touching verified players.
+   */
+  private void reloadWhitelist(Map<String, String> whitelist) {
+    Map<String, InetAddress> whitelistedPlayers = new HashMap<>();
+    whitelist.forEach((username, ip) -> {
+      InetAddress address = this.whitelistedPlayers.get(username);
+      if (address == null || !ip.equals(this.whitelist.get(username))) {
+        try {
+          address = InetAddress.getByName(ip);
+        } catch (UnknownHostException e) {
+          e.printStackTrace();
+          return;
+        }
+      }
+
+      whitelistedPlayers.put(username, address);
+    });
+
+    this.whitelistedPlayers.forEach((username, address) -> {
+      if (!address.equals(whitelistedPlayers.get(username))) {
+        this.cachedFilterChecks.computeIfPresent(username, (key, user) -> user.isWhitelisted() ? null : user);
+      }
+    });
+
+    whitelistedPlayers.forEach((username, address) -> this.cachedFilterChecks.compute(username, (key, user) -> {
+      if (user != null && user.isWhitelisted() && address.equals(user.getInetAddress())) {
+        return user;
+      }
+
+      return new CachedUser(address, Long.MAX_VALUE);
+    }));
+
+    this.whitelistedPlayers = whitelistedPlayers;
+    this.whitelist = new HashMap<>(whitelist);
+  }
+
+  private void reloadAuditLog(Settings.MAIN.AUDIT audit) {
+    AuditLog previous = this.auditLog;
+    if (previous != null) {
+      this.auditLog = null;
+      // Waits for the writes in progress, so the new log doesn't overwrite them.
+      previous.close();
+    }
+
+    if (audit.ENABLED) {
+      try {
+        this.auditLog = new AuditLog(this.dataDirectory.resolve(audit.DIRECTORY), audit.SEGMENT_RECORDS, audit.MAX_SEGMENTS);
+      } catch (IOException e) {
+        LOGGER.error("Unable to open the audit log.", e);
+      }
+    }
+  }
+
+  /**
+   * Wraps the Velocity server channel initializer once, disabling early-drop and frame-validator afterwards only turns the wrapper into a pass-through.
+   */
+  private synchronized void installChannelInitializer(Settings.MAIN settings) {
+    VelocityServer server = (VelocityServer) this.server;
+    boolean proxyProtocol = server.getConfiguration().isProxyProtocol();
+    if (proxyProtocol && settings.EARLY_DROP.ENABLED) {
+      LOGGER.warn("Early drop can't be used with proxy-protocol, ignoring it.");
+    }
+
+    if (!this.channelInitializerInstalled) {
+      ServerChannelInitializerHolder holder = server.getCm().getServerChannelInitializer();
+      holder.set(new FilterChannelInitializer(this, holder.get(), proxyProtocol));
+      this.channelInitializerInstalled = true;
+    }
+  }
+
+  private void reloadCluster(Settings.MAIN settings) {
+    Settings.MAIN.CLUSTER cluster = settings.CLUSTER;
+    if (this.clusterNode != null && cluster.ENABLED && this.isSameNode(this.clusterSettings, cluster)) {
+      // Restarting the node would drop its id, the replay windows and the peer rates, so only the intervals are updated.
+      ((PeerVerificationBackend) this.verificationBackend).setFlushInterval(cluster.FLUSH_INTERVAL_MILLIS);
+      if (this.clusterRates != null) {
+        this.clusterRates.setWindows(settings.UNIT_OF_TIME_CPS, settings.UNIT_OF_TIME_PPS, cluster.PEER_TIMEOUT_MILLIS);
+      }
+
+      this.clusterSettings = cluster;
+      return;
+    }
+
+    this.closeCluster();
+    if (cluster.ENABLED && (cluster.SECRET.isBlank() || cluster.SECRET.equals(DEFAULT_CLUSTER_SECRET))) {
+      LOGGER.warn("The cluster secret isn't set, the cluster is disabled. Set the same secret on all proxies.");
+    } else if (cluster.ENABLED) {
+      try {
+        this.clusterNode = new ClusterNode(cluster.BIND_ADDRESS, cluster.PORT, cluster.PEERS, cluster.SECRET);
+        this.clusterSettings = cluster;
+        this.verificationBackend = new PeerVerificationBackend(this.clusterNode, this::cacheRemoteUser, cluster.FLUSH_INTERVAL_MILLIS);
+        if (cluster.SHARE_RATES) {
+          this.clusterRates = new ClusterRates(
+              this.clusterNode, this.statistics, settings.UNIT_OF_TIME_CPS, settings.UNIT_OF_TIME_PPS, cluster.PEER_TIMEOUT_MILLIS
+          );
+        }
+      } catch (IOException | RuntimeException e) {
+        LOGGER.error("Unable to start the cluster node, verified players won't be shared.", e);
+        this.closeCluster();
+      }
+    }
+  }
+
+  private boolean isSameNode(Settings.MAIN.CLUSTER current, Settings.MAIN.CLUSTER cluster) {
+    return current.BIND_ADDRESS.equals(cluster.BIND_ADDRESS)
+        && current.PORT == cluster.PORT
+        && current.PEERS.equals(cluster.PEERS)
+        && current.SECRET.equals(cluster.SECRET)
+        && current.SHARE_RATES == cluster.SHARE_RATES;
+  }
+
+  private void closeCluster() {
+    this.verificationBackend.close();
+    this.verificationBackend = VerificationBackend.LOCAL;
+    this.clusterRates = null;
+    this.clusterSettings = null;
+    if (this.clusterNode != null) {
+      this.clusterNode.close();
+      this.clusterNode = null;
+    }
   }
 
   public void cacheFilterUser(Player player) {
     String username = player.getUsername();
+    InetAddress address = player.getRemoteAddress().getAddress();
+    long verifyTime = System.currentTimeMillis();
     this.cachedFilterChecks.remove(username);
-    this.cachedFilterChecks.put(
-        username,
-        new CachedUser(player.getRemoteAddress().getAddress(), System.currentTimeMillis() + Settings.IMP.MAIN.PURGE_CACHE_MILLIS)
+    this.cachedFilterChecks.put(username, new CachedUser(address, verifyTime));
+    this.verificationBackend.publish(username, address, verifyTime + this.getSettings().PURGE_CACHE_MILLIS);
+    this.admissionController.addPriority(address);
+  }
+
+  private void cacheRemoteUser(String username, InetAddress address, long checkTime) {
+    // Don't override whitelisted players and newer local verifications.
+    this.cachedFilterChecks.merge(
+        username, new CachedUser(address, checkTime - this.getSettings().PURGE_CACHE_MILLIS),
+        (current, remote) -> current.getVerifyTime() >= remote.getVerifyTime() ? current : remote
     );
+    this.admissionController.addPriority(address);
   }
 
   public boolean shouldCheck(Player player) {
-    if (!this.checkCpsLimit(Settings.IMP.MAIN.FILTER_AUTO_TOGGLE.ALL_BYPASS)) {
+    FilterPolicy policy = this.getPolicy();
+    if (!policy.isEngaged(FilterToggle.ALL_BYPASS)) {
       return false;
     }
 
-    if (player.isOnlineMode() && !this.checkCpsLimit(Settings.IMP.MAIN.FILTER_AUTO_TOGGLE.ONLINE_MODE_BYPASS)) {
+    if (player.isOnlineMode() && !policy.isEngaged(FilterToggle.ONLINE_MODE_BYPASS)) {
       return false;
     }
 
@@ -251,31 +591,115 @@ public class LimboFilter {
   }
 
   public boolean shouldCheck(String nickname, InetAddress ip) {
-    if (this.cachedFilterChecks.containsKey(nickname)) {
-      return !ip.equals(this.cachedFilterChecks.get(nickname).getInetAddress());
-    } else {
-      return true;
+    FilterGeneration generation = this.generation.get();
+    if (generation != null) {
+      if (generation.getAddressLists().isAllowed(ip)) {
+        return false;
+      }
+
+      NetworkPolicy.Rule rule = generation.getNetworkPolicy().getRule(ip);
+      if (rule != null && rule.isBypass()) {
+        return false;
+      }
     }
+
+    // Entries are removed concurrently by the purge task, the whitelist reload and the cluster, so the map is only read once.
+    CachedUser cachedUser = this.cachedFilterChecks.get(nickname);
+    return cachedUser == null || !ip.equals(cachedUser.getInetAddress());
   }
 
   public void sendToFilterServer(Player player) {
+    this.sendToFilterServer(player, false);
+  }
+
+  /**
+   * @param admitted whether the player holds a permit from {@link AdmissionController#tryAdmit}
+   */
+  public void sendToFilterServer(Player player, boolean admitted) {
+    InetAddress address = player.getRemoteAddress().getAddress();
+    BotFilterSessionHandler handler = null;
+    FilterGeneration retained = null;
+    int limitPrefix = -1;
     try {
-      this.filterServer.spawnPlayer(player, new BotFilterSessionHandler(player, this));
+      FilterGeneration generation = this.generation.get();
+      if (generation == null) {
+        if (admitted) {
+          this.admissionController.release();
+        }
+        player.disconnect(SERIALIZER.deserialize(Settings.IMP.MAIN.STRINGS.STARTING_KICK));
+        return;
+      }
+
+      limitPrefix = this.sessionLimiter.tryAcquire(address);
+      if (limitPrefix == -1) {
+        if (admitted) {
+          this.admissionController.release();
+        }
+        this.statistics.addVerdict(VerdictReason.SESSION_LIMIT, player.getProtocolVersion(), null);
+        this.writeVerdict(player, VerdictReason.SESSION_LIMIT);
+        this.sessionLimiter.kick(player);
+        return;
+      }
+
+      // The generation may have been swapped and disposed since it was read.
+      while (!generation.retain()) {
+        generation = this.generation.get();
+      }
+      retained = generation;
+      handler = new BotFilterSessionHandler(player, this, generation, admitted, limitPrefix);
+      generation.getFilterServer().spawnPlayer(player, handler);
     } catch (Throwable t) {
+      if (handler != null) {
+        handler.release();
+      } else {
+        if (retained != null) {
+          retained.release();
+        }
+        if (limitPrefix != -1) {
+          this.sessionLimiter.release(address, limitPrefix);
+        }
+        if (admitted) {
+          this.admissionController.release();
+        }
+      }
       t.printStackTrace();
     }
   }
 
+  /**
+   * Writes the verdict for a player, that was kicked before spawning in the filter limbo.
+   */
+  public void writeVerdict(Player player, VerdictReason reason) {
+    this.writeVerdict(player.getRemoteAddress().getAddress(), player.getUsername(), player.getProtocolVersion(), reason);
+  }
+
+  public void writeVerdict(InetAddress address, String username, ProtocolVersion version, VerdictReason reason) {
+    if (reason.isBlocked()) {
+      this.addHeavyHitter(HeavyHitters.Metric.FAILURES, address);
+    }
+
+    AuditLog auditLog = this.auditLog;
+    if (auditLog != null) {
+      auditLog.write(address, username, version, reason, null, 0);
+    }
+  }
+
+  public void addHeavyHitter(HeavyHitters.Metric metric, InetAddress address) {
+    FilterGeneration generation = this.generation.get();
+    this.heavyHitters.add(metric, address, generation == null ? -1 : generation.getNetworkPolicy().getAsn(address));
+  }
+
   private void checkCache(Map<String, CachedUser> userMap) {
+    long purgeCacheMillis = this.getSettings().PURGE_CACHE_MILLIS;
     userMap.entrySet().stream()
-        .filter(user -> user.getValue().getCheckTime() <= System.currentTimeMillis())
+        .filter(user -> System.currentTimeMillis() - user.getValue().getVerifyTime() >= purgeCacheMillis)
         .map(Map.Entry::getKey)
         .forEach(userMap::remove);
   }
 
   public boolean checkCpsLimit(int limit) {
     if (limit != -1) {
-      return limit <= this.statistics.getConnections();
+      return limit <= this.getFleetConnections();
     } else {
       return false;
     }
@@ -283,12 +707,25 @@ public class LimboFilter {
 
   public boolean checkPpsLimit(int limit) {
     if (limit != -1) {
-      return limit <= this.statistics.getPings();
+      return limit <= this.getFleetPings();
     } else {
       return false;
     }
   }
 
+  /**
+   * @return connections of this proxy, plus the last snapshot of the other proxies connections if the cluster is enabled
+   */
+  public long getFleetConnections() {
+    ClusterRates rates = this.clusterRates;
+    return rates == null ? this.statistics.getConnections() : this.statistics.getConnections() + rates.getRemoteConnections();
+  }
+
+  public long getFleetPings() {
+    ClusterRates rates = this.clusterRates;
+    return rates == null ? this.statistics.getPings() : this.statistics.getPings() + rates.getRemotePings();
+  }
+
   public File getFile(String filename) {
     File dataDirectoryFile = this.dataDirectory.resolve(filename).toFile();
     if (dataDirectoryFile.exists()) {
@@ -311,20 +748,55 @@ public class LimboFilter {
     return this.factory;
   }
 
-  public CachedPackets getPackets() {
-    return this.packets;
+  /**
+   * @return the slab shared by the filter sessions, null if it is disabled
+   */
+  public SessionSlab getSessionSlab() {
+    return this.sessionSlab;
+  }
+
+  public ReleaseQueue getReleaseQueue() {
+    return this.releaseQueue;
+  }
+
+  public PingTable getPingTable() {
+    return this.pingTable;
+  }
+
+  public HeavyHitters getHeavyHitters() {
+    return this.heavyHitters;
+  }
+
+  public SessionLimiter getSessionLimiter() {
+    return this.sessionLimiter;
+  }
+
+  public AdmissionController getAdmissionController() {
+    return this.admissionController;
   }
 
   public Statistics getStatistics() {
     return this.statistics;
   }
 
-  public CachedCaptcha getCachedCaptcha() {
-    return this.cachedCaptcha;
+  public FilterPolicy getPolicy() {
+    return this.policyController.getPolicy();
+  }
+
+  public FilterGeneration getGeneration() {
+    return this.generation.get();
   }
 
-  public VirtualWorld getFilterWorld() {
-    return this.filterWorld;
+  /**
+   * @return the config snapshot of the current generation, or the startup config until the first generation is built
+   */
+  public Settings.MAIN getSettings() {
+    FilterGeneration generation = this.generation.get();
+    return generation == null ? Settings.IMP.MAIN : generation.getSettings().MAIN;
+  }
+
+  public AuditLog getAuditLog() {
+    return this.auditLog;
   }
 
   private static void setLogger(Logger logger) {
@@ -346,19 +818,26 @@ public class LimboFilter {
   private static class CachedUser {
 
     private final InetAddress inetAddress;
-    private final long checkTime;
+    private final long verifyTime;
 
-    public CachedUser(InetAddress inetAddress, long checkTime) {
+    /**
+     * @param verifyTime the time when the player was verified, {@link Long#MAX_VALUE} for whitelisted players
+     */
+    public CachedUser(InetAddress inetAddress, long verifyTime) {
       this.inetAddress = inetAddress;
-      this.checkTime = checkTime;
+      this.verifyTime = verifyTime;
     }
 
     public InetAddress getInetAddress() {
       return this.inetAddress;
     }
 
-    public long getCheckTime() {
-      return this.checkTime;
+    public long getVerifyTime() {
+      return this.verifyTime;
+    }
+
+    public boolean isWhitelisted() {
+      return this.verifyTime == Long.MAX_VALUE;
     }
   }
 }
@@ -17,14 +17,17 @@
 
 package net.elytrium.limbofilter;
 
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import java.util.List;
 import java.util.Map;
 import net.elytrium.java.commons.config.YamlConfig;
 
 public class Settings extends YamlConfig {
 
+  // Replaced once a generation built from a new snapshot is swapped in, the filter itself reads the snapshot of its generation.
   @Ignore
-  public static final Settings IMP = new Settings();
+  @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "Published by LimboFilter after a reload.")
+  public static volatile Settings IMP = new Settings();
 
   @Final
   public String VERSION = BuildConstants.FILTER_VERSION;
@@ -39,6 +42,8 @@ public class Settings extends YamlConfig {
   })
   public String SERIALIZER = "LEGACY_AMPERSAND";
   public String PREFIX = "LimboFilter &6>>&f";
+  @Comment("Check for updates in the background on startup.")
+  public boolean CHECK_FOR_UPDATES = true;
 
   @Create
   public MAIN MAIN;
@@ -64,6 +69,12 @@ public class Settings extends YamlConfig {
     public int GEYSER_TIME_OUT = 45000;
     @Comment("The timeout for Netty. Max ping while being on the filter limbo. Used to remove useless buffers from RAM.")
     public int MAX_PING = 2000;
+    @Comment({
+        "Amount of filter sessions, whose check state is stored in preallocated arrays instead of separate objects.",
+        "Reduces GC pressure during long bot attacks, another block of this size is allocated when all sessions are used",
+        "and freed once it is empty again. 0 to disable, then every session keeps its own state and timeout task. Requires restart."
+    })
+    public int SESSION_SLAB_SIZE = 4096;
     @Comment("Change the parameters below only if you know what they mean.")
     public int NON_VALID_POSITION_XZ_ATTEMPTS = 10;
     public int NON_VALID_POSITION_Y_ATTEMPTS = 10;
@@ -88,6 +99,8 @@ public class Settings extends YamlConfig {
     @Comment("World file type: \"schematic\" (1.12.2 and lower), \"structure\" block .nbt (saved in the latest version).")
     public String WORLD_FILE_TYPE = "structure";
     public String WORLD_FILE_PATH = "world.nbt";
+    @Comment("Cache the parsed world in the \"world-cache\" directory, so the world file is parsed again only if it or world-coords are changed.")
+    public boolean CACHE_WORLD = true;
 
     @Comment("Unit of time in seconds for the Auto Toggles the Statistics.")
     public int UNIT_OF_TIME_CPS = 300;
@@ -143,6 +156,202 @@ public class Settings extends YamlConfig {
       public int DISABLE_MOTD_PICTURE = 25;
     }
 
+    @Create
+    public MAIN.POLICY POLICY;
+
+    @Comment("How filter-auto-toggle limits are applied, the toggles are updated once per second.")
+    public static class POLICY {
+
+      @Comment("Smoothing of the rates, from 0 (never changes) to 1 (no smoothing).")
+      public double EWMA_ALPHA = 0.3;
+      @Comment("An enabled toggle will be disabled only when the rate goes below limit * exit-factor.")
+      public double EXIT_FACTOR = 0.7;
+      @Comment("Minimum time in milliseconds, during which an enabled toggle stays enabled.")
+      public long MIN_ENGAGED_MILLIS = 30000;
+      @Comment("Minimum time in milliseconds, during which a disabled toggle stays disabled.")
+      public long MIN_DISENGAGED_MILLIS = 3000;
+      @Comment({
+          "All toggles will be enabled if the ratio of failed checks and the amount of players in the filter are both above these values.",
+          "-1 in attack-sessions to disable."
+      })
+      public double ATTACK_FAIL_RATIO = 0.5;
+      public int ATTACK_SESSIONS = 50;
+    }
+
+    @Create
+    public MAIN.ADMISSION ADMISSION;
+
+    @Comment("Limits the amount of concurrent filter sessions and their spawn rate, connections above the limits are kicked before spawning.")
+    public static class ADMISSION {
+
+      public boolean ENABLED = false;
+      public int MAX_SESSIONS = 2000;
+      @Comment("Maximum filter sessions spawned per second, and the burst above it.")
+      public int SPAWNS_PER_SECOND = 200;
+      public int SPAWN_BURST = 400;
+      @Comment({
+          "Part of max-sessions, reserved for the connections from subnets with a recent successful check.",
+          "These connections also ignore the spawn rate."
+      })
+      public double PRIORITY_RESERVE = 0.1;
+      public int PRIORITY_IPV4_PREFIX = 24;
+      public int PRIORITY_IPV6_PREFIX = 64;
+      @Comment("Time in milliseconds, during which a subnet has priority after a successful check.")
+      public long PRIORITY_MILLIS = 3600000;
+    }
+
+    @Create
+    public MAIN.SESSION_LIMIT SESSION_LIMIT;
+
+    @Comment("Maximum concurrent filter sessions from one address and from one subnet, -1 to disable one of the limits.")
+    public static class SESSION_LIMIT {
+
+      public boolean ENABLED = false;
+      public int MAX_PER_ADDRESS = 5;
+      public int MAX_PER_SUBNET = 50;
+      public int IPV4_PREFIX = 24;
+      public int IPV6_PREFIX = 48;
+    }
+
+    @Create
+    public MAIN.ADDRESS_LISTS ADDRESS_LISTS;
+
+    @Comment({
+        "IPv4 and IPv6 ranges (e.g. \"192.0.2.0/24\" or \"2001:db8::/32\"), players from allowed ranges skip the filter,",
+        "players from denied ranges are kicked before the login. The most specific range wins.",
+        "Files are relative to the plugin directory and contain one range per line, # starts a comment."
+    })
+    public static class ADDRESS_LISTS {
+
+      public List<String> ALLOW = List.of();
+      public List<String> ALLOW_FILES = List.of();
+      public List<String> DENY = List.of();
+      public List<String> DENY_FILES = List.of();
+    }
+
+    @Create
+    public MAIN.EARLY_DROP EARLY_DROP;
+
+    @Comment({
+        "Closes connections right after they are accepted, before Velocity decodes anything, which is the cheapest way to reject them.",
+        "Dropped connections don't get a kick message and aren't written to the audit log.",
+        "Doesn't work if proxy-protocol is enabled in velocity.toml, as the real address is only known after decoding."
+    })
+    public static class EARLY_DROP {
+
+      public boolean ENABLED = false;
+      @Comment("Drop connections from the denied ranges of address-lists.")
+      public boolean DROP_DENIED_ADDRESSES = true;
+      @Comment("Maximum connections per second from one address, including pings. Allowed ranges aren't limited, 0 to disable.")
+      public int MAX_CONNECTIONS_PER_SECOND = 0;
+    }
+
+    @Create
+    public MAIN.FRAME_VALIDATOR FRAME_VALIDATOR;
+
+    @Comment({
+        "Validates the raw handshake and login start packets before Velocity decodes them.",
+        "Connections with malformed or implausible packets are closed without a kick message, see \"/limbofilter verdicts INVALID_FRAME\"."
+    })
+    public static class FRAME_VALIDATOR {
+
+      public boolean ENABLED = false;
+      @Comment("Close login connections with protocol versions Velocity doesn't support, instead of sending them the \"unsupported version\" message.")
+      public boolean CHECK_PROTOCOL_VERSION = true;
+      @Comment("In bytes. Some proxies and mods (e.g. TCPShield or Forge) append their data to the hostname, raise this value if needed.")
+      public int MAX_HOSTNAME_LENGTH = 300;
+      @Comment("Only allow usernames of up to 16 latin letters, digits and underscores, as in the vanilla client.")
+      public boolean STRICT_USERNAMES = true;
+    }
+
+    @Create
+    public MAIN.PACKET_RATE PACKET_RATE;
+
+    @Comment({
+        "Packets per second a player can send in the filter limbo, averaged over window-millis.",
+        "Players outside these limits are disconnected, so a single connection can't take much CPU or hold its session silently.",
+        "Clients send at least one movement packet (position, rotation or on-ground state) per second, the minimum is checked from the second window.",
+        "There is no minimum for chat and other packets, real clients don't have to send them."
+    })
+    public static class PACKET_RATE {
+
+      public boolean ENABLED = false;
+      public int WINDOW_MILLIS = 5000;
+      public double MIN_MOVE = 0.5;
+      public double MAX_MOVE = 100;
+      public double MAX_CHAT = 5;
+      public double MAX_OTHER = 60;
+    }
+
+    @Create
+    public MAIN.PING_CHECK PING_CHECK;
+
+    @Comment({
+        "Real clients usually ping the server list before joining, most join bots don't.",
+        "With this check, players that haven't been verified yet have to ping the server first, while the connections per the unit of time",
+        "are above min-cps (0 to always require the ping). Direct connect and some launchers skip the ping, so keep min-cps high enough."
+    })
+    public static class PING_CHECK {
+
+      public boolean ENABLED = false;
+      public int MIN_CPS = 30;
+      @Comment("Time in seconds, how long a ping is valid.")
+      public int MAX_AGE_SECONDS = 300;
+    }
+
+    @Create
+    public MAIN.USERNAME_FILTER USERNAME_FILTER;
+
+    @Comment({
+        "Usernames matching these patterns are kicked before the login. Patterns are case-insensitive,",
+        "\"text\" matches usernames containing the text, \"^\" and \"$\" anchor it to the start and the end,",
+        "\"#\" matches any digit and \"?\" matches any character."
+    })
+    public static class USERNAME_FILTER {
+
+      public boolean ENABLED = false;
+      public List<String> PATTERNS = List.of("^bot_###", "mcstorm", "^?????_#####$");
+    }
+
+    @Create
+    public MAIN.NETWORK_POLICY NETWORK_POLICY;
+
+    @Comment({
+        "Rules for networks, resolved with local MaxMind DB files (e.g. GeoLite2-ASN.mmdb and GeoLite2-Country.mmdb).",
+        "Databases are relative to the plugin directory and aren't downloaded automatically. The ASN database is also used by \"/limbofilter top\"."
+    })
+    public static class NETWORK_POLICY {
+
+      public boolean ENABLED = false;
+      public String ASN_DATABASE = "GeoLite2-ASN.mmdb";
+      public String COUNTRY_DATABASE = "";
+      @Comment({
+          "\"AS<number>\" or a country code, to \"<check state, BYPASS or DEFAULT>[, <connections per second>]\".",
+          "The check state is the same as in check-state, BYPASS skips the filter, DEFAULT only applies the rate limit.",
+          "The rate is shared by the whole network, players over it are kicked before the check. The ASN rule wins."
+      })
+      public Map<String, String> RULES = Map.of(
+          "AS14061", "CAPTCHA_POSITION, 20",
+          "AS16276", "DEFAULT, 20"
+      );
+    }
+
+    @Create
+    public MAIN.RELEASE_QUEUE RELEASE_QUEUE;
+
+    @Comment({
+        "Paces verified players leaving the filter limbo, so a wave of players doesn't hit the backend servers at once.",
+        "Players wait in the filter limbo until their turn. Not used if players have to reconnect after the check."
+    })
+    public static class RELEASE_QUEUE {
+
+      public boolean ENABLED = false;
+      @Comment("Players per second, released to a server that isn't listed below. 0 or less to release them without pacing, here and below.")
+      public int DEFAULT_PER_SECOND = 20;
+      @Comment("Players per second, released to the specific servers (names from velocity.toml).")
+      public Map<String, Integer> SERVERS = Map.of("lobby", 20);
+    }
+
     @Create
     public Settings.MAIN.WORLD_COORDS WORLD_COORDS;
 
@@ -160,6 +369,14 @@ public class Settings extends YamlConfig {
 
       @Comment("Prepares Captcha packets, uses ~0.5GB RAM, but improves CPU performance during bot attacks. It's recommended to disable it, if you have less than 2GB of RAM.")
       public boolean PREPARE_CAPTCHA_PACKETS = false;
+      @Comment({
+          "Memory budget of one captcha pool, e.g. \"256M\", \"1G\" or \"10%\" (of the max heap). Empty to disable.",
+          "With a budget, images-count is the upper limit and prepare-captcha-packets is picked automatically:",
+          "packets are prepared if the whole pool fits into the budget, otherwise the raw map data is kept,",
+          "with fewer images if even the raw pool doesn't fit. Prepared packets take several times more memory per image.",
+          "See \"/limbofilter memory\" for the actual usage."
+      })
+      public String MEMORY_BUDGET = "";
       @Comment("List of paths to the background image to draw on captcha. Any format, 128x128 128x128 px (will be automatically resized and stretched to the correct size). [] if empty.")
       public List<String> BACKPLATE_PATHS = List.of("");
       @Comment("Path to the font files to draw on captcha (ttf), can be empty.")
@@ -172,6 +389,11 @@ public class Settings extends YamlConfig {
       public boolean FONT_ROTATE = true;
       public boolean FONT_RIPPLE = true;
       public boolean FONT_BLUR = true;
+      @Comment({
+          "Pre-rasterize every pattern character of every font and compose captchas from these glyphs,",
+          "speeds up the generation. Letter spacing, strikethrough and underline are ignored with it."
+      })
+      public boolean USE_GLYPH_ATLAS = false;
       @Comment("Set 0 to disable")
       public int CURVE_SIZE = 1;
       @Comment("Set 0 to disable")
@@ -183,6 +405,139 @@ public class Settings extends YamlConfig {
       public int LENGTH = 3;
       public int IMAGES_COUNT = 1000;
       public List<String> RGB_COLOR_LIST = List.of("000000", "AA0000", "00AA00", "0000AA", "AAAA00", "AA00AA", "00AAAA");
+
+      /**
+       * @return a copy that can be changed without affecting the config, e.g. for a captcha tier
+       */
+      public CAPTCHA_GENERATOR copy() {
+        CAPTCHA_GENERATOR copy = new CAPTCHA_GENERATOR();
+        copy.PREPARE_CAPTCHA_PACKETS = this.PREPARE_CAPTCHA_PACKETS;
+        copy.MEMORY_BUDGET = this.MEMORY_BUDGET;
+        copy.BACKPLATE_PATHS = this.BACKPLATE_PATHS;
+        copy.FONTS_PATH = this.FONTS_PATH;
+        copy.USE_STANDARD_FONTS = this.USE_STANDARD_FONTS;
+        copy.LETTER_SPACING = this.LETTER_SPACING;
+        copy.FONT_SIZE = this.FONT_SIZE;
+        copy.FONT_OUTLINE = this.FONT_OUTLINE;
+        copy.FONT_ROTATE = this.FONT_ROTATE;
+        copy.FONT_RIPPLE = this.FONT_RIPPLE;
+        copy.FONT_BLUR = this.FONT_BLUR;
+        copy.USE_GLYPH_ATLAS = this.USE_GLYPH_ATLAS;
+        copy.CURVE_SIZE = this.CURVE_SIZE;
+        copy.CURVES_AMOUNT = this.CURVES_AMOUNT;
+        copy.STRIKETHROUGH = this.STRIKETHROUGH;
+        copy.UNDERLINE = this.UNDERLINE;
+        copy.COLORIFY = this.COLORIFY;
+        copy.PATTERN = this.PATTERN;
+        copy.LENGTH = this.LENGTH;
+        copy.IMAGES_COUNT = this.IMAGES_COUNT;
+        copy.RGB_COLOR_LIST = this.RGB_COLOR_LIST;
+        return copy;
+      }
+    }
+
+    @Create
+    public MAIN.CAPTCHA_TIERS CAPTCHA_TIERS;
+
+    @Comment({
+        "Captcha pools for different load levels, captcha-generator is used as the default tier.",
+        "Light and hardened tiers override the captcha-generator settings with the same names,",
+        "they are generated when the tier is needed for the first time and released after the cool-down."
+    })
+    public static class CAPTCHA_TIERS {
+
+      public boolean ENABLED = false;
+      @Comment("Minimum connections per the unit of time to use the default tier, the light tier is used below it.")
+      public int DEFAULT_CPS = 10;
+      @Comment("Minimum connections per the unit of time to use the hardened tier, it is also used if an attack is detected (see policy).")
+      public int HARDENED_CPS = 100;
+      @Comment("Time in milliseconds, after which an unused light or hardened pool is released.")
+      public long COOL_DOWN_MILLIS = 600000;
+
+      @Create
+      public CAPTCHA_TIERS.LIGHT LIGHT;
+
+      public static class LIGHT {
+
+        public int IMAGES_COUNT = 250;
+        public boolean FONT_RIPPLE = false;
+        public boolean FONT_BLUR = false;
+        public int CURVES_AMOUNT = 1;
+        public int LENGTH = 3;
+
+        public MAIN.CAPTCHA_GENERATOR override(MAIN.CAPTCHA_GENERATOR base) {
+          MAIN.CAPTCHA_GENERATOR profile = base.copy();
+          profile.IMAGES_COUNT = this.IMAGES_COUNT;
+          profile.FONT_RIPPLE = this.FONT_RIPPLE;
+          profile.FONT_BLUR = this.FONT_BLUR;
+          profile.CURVES_AMOUNT = this.CURVES_AMOUNT;
+          profile.LENGTH = this.LENGTH;
+          return profile;
+        }
+      }
+
+      @Create
+      public CAPTCHA_TIERS.HARDENED HARDENED;
+
+      public static class HARDENED {
+
+        public int IMAGES_COUNT = 3000;
+        public boolean FONT_OUTLINE = true;
+        public boolean FONT_RIPPLE = true;
+        public boolean FONT_BLUR = true;
+        public int CURVES_AMOUNT = 5;
+        public int LENGTH = 5;
+
+        public MAIN.CAPTCHA_GENERATOR override(MAIN.CAPTCHA_GENERATOR base) {
+          MAIN.CAPTCHA_GENERATOR profile = base.copy();
+          profile.IMAGES_COUNT = this.IMAGES_COUNT;
+          profile.FONT_OUTLINE = this.FONT_OUTLINE;
+          profile.FONT_RIPPLE = this.FONT_RIPPLE;
+          profile.FONT_BLUR = this.FONT_BLUR;
+          profile.CURVES_AMOUNT = this.CURVES_AMOUNT;
+          profile.LENGTH = this.LENGTH;
+          return profile;
+        }
+      }
+    }
+
+    @Create
+    public MAIN.AUDIT AUDIT;
+
+    @Comment("Binary log of every check verdict, can be queried with \"/limbofilter audit\".")
+    public static class AUDIT {
+
+      public boolean ENABLED = false;
+      @Comment("Directory inside the plugin folder with the audit log segments.")
+      public String DIRECTORY = "audit";
+      @Comment("Amount of records in one segment file, each record takes 48 bytes.")
+      public int SEGMENT_RECORDS = 262144;
+      @Comment("Amount of segment files to keep, the oldest segments will be deleted.")
+      public int MAX_SEGMENTS = 16;
+      @Comment("Default amount of the latest matching records to show in \"/limbofilter audit\".")
+      public int QUERY_LIMIT = 10;
+    }
+
+    @Create
+    public MAIN.CLUSTER CLUSTER;
+
+    @Comment("Share verified players between several proxies. Every proxy should list all the other proxies as peers.")
+    public static class CLUSTER {
+
+      public boolean ENABLED = false;
+      @Comment("UDP address and port of this proxy for the cluster messages.")
+      public String BIND_ADDRESS = "0.0.0.0";
+      public int PORT = 37040;
+      @Comment("\"HOST:PORT\" list of the other proxies.")
+      public List<String> PEERS = List.of("127.0.0.1:37041");
+      @Comment("Messages are signed with this secret, should be the same on all proxies. The cluster isn't started with the default secret.")
+      public String SECRET = "change-me";
+      @Comment("How frequently new verifications are sent to the peers, in milliseconds.")
+      public long FLUSH_INTERVAL_MILLIS = 250;
+      @Comment("Sum connections and pings of all proxies for the filter-auto-toggle limits.")
+      public boolean SHARE_RATES = true;
+      @Comment("Rates of a proxy are ignored if it hasn't sent anything during this time, in milliseconds.")
+      public long PEER_TIMEOUT_MILLIS = 5000;
     }
 
     @Comment(
@@ -198,6 +553,16 @@ public class Settings extends YamlConfig {
 
       public String RELOAD = "{PRFX} &aReloaded successfully!";
       public String RELOAD_FAILED = "{PRFX} &cReload failed, check console for details.";
+      public String RELEASE_QUEUE_CHAT = "{PRFX} &aYou are &6{0} &ain the queue to {1}, please wait..";
+      public String RELEASE_QUEUE_TITLE = "&aQueue: &6{0}";
+      public String RELEASE_QUEUE_SUBTITLE = "&aPlease wait..";
+      public String ADDRESS_DENIED_KICK = "{PRFX}{NL}&cYour network is not allowed to join this server.";
+      public String PING_CHECK_KICK = "{PRFX}{NL}&cPlease, add this server to your server list and join from there.";
+      public String USERNAME_BLOCKED_KICK = "{PRFX}{NL}&cThis username is not allowed on this server.";
+      public String NETWORK_LIMIT_KICK = "{PRFX}{NL}&cToo many players are joining from your network.{NL}&6Please, rejoin in a few seconds.";
+      public String SESSION_LIMIT_KICK = "{PRFX}{NL}&cToo many players are being checked from your network.{NL}&6Please, rejoin in a few seconds.";
+      public String ADMISSION_KICK = "{PRFX}{NL}&cThe server is overloaded.{NL}&6Please, rejoin in a few seconds.";
+      public String STARTING_KICK = "{PRFX}{NL}&cThe server is starting.{NL}&6Please, rejoin in a few seconds.";
 
       public String CLIENT_SETTINGS_KICK = "{PRFX}{NL}&cYour client doesn't send settings packets.";
       public String CLIENT_BRAND_KICK = "{PRFX}{NL}&cYour client doesn't send brand packet or it's blocked.";
@@ -216,6 +581,7 @@ public class Settings extends YamlConfig {
 
       public String CAPTCHA_FAILED_KICK = "{PRFX}{NL}&cYou've mistaken in captcha check.{NL}&6Please, rejoin the server.";
       public String FALLING_CHECK_FAILED_KICK = "{PRFX}{NL}&cFalling Check was failed.{NL}&6Please, rejoin the server.";
+      public String PACKET_RATE_KICK = "{PRFX}{NL}&cYour client sends packets at an unusual rate.{NL}&6Please, rejoin the server.";
       public String TIMES_UP = "{PRFX}{NL}&cYou have exceeded the maximum Bot-Filter check time.{NL}&6Please, rejoin the server.";
 
       public String STATS_FORMAT = "&c&lTotal Blocked: &6&l{0} &c&l| Connections: &6&l{1}s &c&l| Pings: &6&l{2}s &c&l| Total Connections: &6&l{3} &c&l| Ping: &6&l{4}";
@@ -225,6 +591,25 @@ public class Settings extends YamlConfig {
       public String SEND_PLAYER_SUCCESSFUL = "{PRFX} Successfully sent {0} to the filter limbo.";
       public String SEND_SERVER_SUCCESSFUL = "{PRFX} Successfully sent {0} players from {1} to the filter limbo.";
       public String SEND_FAILED = "{PRFX} There is no registered servers or connected players named {0}.";
+
+      public String MEMORY_SUMMARY = "{PRFX} Captcha pools use &6{0}&f, budget per pool: &6{1}&f, heap: &6{2} &fof &6{3}&f.";
+      public String MEMORY_POOL = "{PRFX}   &7{0}: &6{1} &f{2} images, &6{3}&f (canvas &6{4}&f, 1.7 columns &6{5}&f, prepared &6{6}&f), &7{7}";
+
+      public String VERDICTS_USAGE = "{PRFX} &cUsage: /limbofilter verdicts [reason]";
+      public String VERDICTS_SUMMARY = "{PRFX} Since the start: &a{0} &fpassed, &c{1} &fblocked.";
+      public String VERDICTS_REASON = "{PRFX}   &7{0}: &6{1} &7(versions: &f{2}&7; states: &f{3}&7)";
+      public String VERDICTS_CELL = "{PRFX}   &7{0} &f{1}: &6{2}";
+      public String TOP_USAGE = "{PRFX} &cUsage: /limbofilter top [limit]";
+      public String TOP_SUBNETS = "{PRFX} Subnets by {0} in the last minute:";
+      public String TOP_NETWORKS = "{PRFX} Networks by {0} in the last minute:";
+      public String TOP_ENTRY = "{PRFX}   &7{0}: &6{1}";
+      public String TOP_EMPTY = "{PRFX}   &7Nothing yet.";
+      public String AUDIT_DISABLED = "{PRFX} &cThe audit log is disabled.";
+      public String AUDIT_USAGE = "{PRFX} &cUsage: /limbofilter audit [since=1h] [until=0s] [subnet=127.0.0.0/8] [reason=CAPTCHA] [player=Name] [limit=10]";
+      public String AUDIT_FAILED = "{PRFX} &cUnable to read the audit log, check console for details.";
+      public String AUDIT_SUMMARY = "{PRFX} Found &6{0} &frecords, &c{1} &fblocked.";
+      public String AUDIT_REASON = "{PRFX}   &7{0}: &6{1}";
+      public String AUDIT_RECORD = "{PRFX}   &7{0,date,yyyy-MM-dd HH:mm:ss} &f{1} &6{2} &7({3}, {4}, {5} ms)";
     }
 
     @Create
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2021 - 2022 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limbofilter.cache;
+
+import com.velocitypowered.api.network.ProtocolVersion;
+import com.velocitypowered.api.proxy.Player;
+import com.velocitypowered.proxy.connection.client.ConnectedPlayer;
+import com.velocitypowered.proxy.protocol.packet.Disconnect;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import net.kyori.adventure.text.Component;
+
+/**
+ * Disconnect packet for the players that aren't in the filter limbo yet, created once per protocol version.
+ * The reason is serialized to JSON once, the packet itself is still encoded on every kick,
+ * as its id depends on the state of the connection, which isn't known here.
+ */
+public class CachedDisconnect {
+
+  private static final ProtocolVersion[] VERSIONS = ProtocolVersion.values();
+
+  private final AtomicReferenceArray<Disconnect> packets = new AtomicReferenceArray<>(VERSIONS.length);
+  private final Component reason;
+
+  public CachedDisconnect(Component reason) {
+    this.reason = reason;
+  }
+
+  public void disconnect(Player player) {
+    if (!(player instanceof ConnectedPlayer)) {
+      player.disconnect(this.reason);
+      return;
+    }
+
+    ProtocolVersion version = player.getProtocolVersion();
+    Disconnect packet = this.packets.get(version.ordinal());
+    if (packet == null) {
+      packet = Disconnect.create(this.reason, version);
+      this.packets.set(version.ordinal(), packet);
+    }
+
+    ((ConnectedPlayer) player).getConnection().closeWith(packet);
+  }
+}
@@ -23,40 +23,56 @@ import com.velocitypowered.proxy.protocol.ProtocolUtils;
 import com.velocitypowered.proxy.protocol.packet.Chat;
 import com.velocitypowered.proxy.protocol.packet.Disconnect;
 import com.velocitypowered.proxy.protocol.packet.title.GenericTitlePacket;
+import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.List;
+import net.elytrium.java.commons.mc.serialization.Serializer;
 import net.elytrium.limboapi.api.LimboFactory;
 import net.elytrium.limboapi.api.material.Item;
 import net.elytrium.limboapi.api.material.VirtualItem;
 import net.elytrium.limboapi.api.protocol.PreparedPacket;
 import net.elytrium.limboapi.api.protocol.packets.BuiltInPackets;
-import net.elytrium.limbofilter.LimboFilter;
 import net.elytrium.limbofilter.Settings;
 import net.kyori.adventure.nbt.CompoundBinaryTag;
 import net.kyori.adventure.nbt.IntBinaryTag;
+import net.kyori.adventure.text.Component;
 
 public class CachedPackets {
 
+  // Messages with the attempts count are prepared up to this count, higher counts are created on send.
+  private static final int MAX_CACHED_ATTEMPTS = 16;
+
   private PreparedPacket captchaFailed;
   private PreparedPacket fallingCheckFailed;
   private PreparedPacket timesUp;
+  private PreparedPacket packetRateKick;
   private PreparedPacket setSlot;
   private PreparedPacket resetSlot;
   private PreparedPacket checkingChat;
   private PreparedPacket checkingTitle;
+  private PreparedPacket checkingCaptchaChat;
+  private PreparedPacket checkingCaptchaTitle;
+  private PreparedPacket[] checkingWrongCaptchaChat;
+  private String checkingWrongCaptchaChatFormat;
+  private String releaseQueueTitleFormat;
+  private String releaseQueueSubtitleFormat;
+  private String releaseQueueChatFormat;
   private PreparedPacket kickClientCheckSettings;
   private PreparedPacket kickClientCheckBrand;
   private PreparedPacket successfulBotFilterChat;
   private PreparedPacket successfulBotFilterDisconnect;
   private PreparedPacket noAbilities;
   private List<PreparedPacket> experience;
+  private Serializer serializer;
 
-  public void createPackets(LimboFactory factory) {
-    Settings.MAIN.STRINGS strings = Settings.IMP.MAIN.STRINGS;
+  public void createPackets(LimboFactory factory, Settings.MAIN settings, Serializer serializer) {
+    this.serializer = serializer;
+    Settings.MAIN.STRINGS strings = settings.STRINGS;
 
     this.captchaFailed = this.createDisconnectPacket(factory, strings.CAPTCHA_FAILED_KICK);
     this.fallingCheckFailed = this.createDisconnectPacket(factory, strings.FALLING_CHECK_FAILED_KICK);
     this.timesUp = this.createDisconnectPacket(factory, strings.TIMES_UP);
+    this.packetRateKick = this.createDisconnectPacket(factory, strings.PACKET_RATE_KICK);
 
     this.setSlot = factory.createPreparedPacket()
         .prepare(
@@ -72,6 +88,10 @@ public class CachedPackets {
     this.resetSlot = factory.createPreparedPacket().prepare(this.createSetSlotPacket(factory, factory.getItem(Item.AIR), 0, null));
     this.checkingChat = this.createChatPacket(factory, strings.CHECKING_CHAT);
     this.checkingTitle = this.createTitlePacket(factory, strings.CHECKING_TITLE, strings.CHECKING_SUBTITLE);
+    this.createCaptchaPackets(factory, strings, settings.CAPTCHA_ATTEMPTS);
+    this.releaseQueueTitleFormat = strings.RELEASE_QUEUE_TITLE;
+    this.releaseQueueSubtitleFormat = strings.RELEASE_QUEUE_SUBTITLE;
+    this.releaseQueueChatFormat = strings.RELEASE_QUEUE_CHAT;
 
     this.kickClientCheckSettings = this.createDisconnectPacket(factory, strings.CLIENT_SETTINGS_KICK);
     this.kickClientCheckBrand = this.createDisconnectPacket(factory, strings.CLIENT_BRAND_KICK);
@@ -80,16 +100,35 @@ public class CachedPackets {
     this.successfulBotFilterDisconnect = this.createDisconnectPacket(factory, strings.SUCCESSFUL_PREMIUM_KICK);
 
     this.noAbilities = this.createAbilitiesPacket(factory);
-    this.experience = this.createExpPackets(factory);
+    this.experience = this.createExpPackets(factory, settings.FALLING_CHECK_TICKS);
+  }
+
+  private void createCaptchaPackets(LimboFactory factory, Settings.MAIN.STRINGS strings, int attempts) {
+    this.checkingCaptchaChat = this.createChatPacket(factory, MessageFormat.format(strings.CHECKING_CAPTCHA_CHAT, attempts));
+    if (!strings.CHECKING_CAPTCHA_TITLE.isEmpty() && !strings.CHECKING_CAPTCHA_SUBTITLE.isEmpty()) {
+      this.checkingCaptchaTitle = this.createTitlePacket(
+          factory,
+          MessageFormat.format(strings.CHECKING_CAPTCHA_TITLE, attempts),
+          MessageFormat.format(strings.CHECKING_CAPTCHA_SUBTITLE, attempts)
+      );
+    } else {
+      this.checkingCaptchaTitle = null;
+    }
+
+    // Wrong captcha messages are sent with 1 to attempts - 1 attempts left.
+    this.checkingWrongCaptchaChatFormat = strings.CHECKING_WRONG_CAPTCHA_CHAT;
+    this.checkingWrongCaptchaChat = new PreparedPacket[Math.max(1, Math.min(attempts, MAX_CACHED_ATTEMPTS + 1))];
+    for (int i = 1; i < this.checkingWrongCaptchaChat.length; ++i) {
+      this.checkingWrongCaptchaChat[i] = this.createChatPacket(factory, MessageFormat.format(this.checkingWrongCaptchaChatFormat, i));
+    }
   }
 
   private PreparedPacket createAbilitiesPacket(LimboFactory factory) {
     return factory.createPreparedPacket().prepare(factory.instantiatePacket(BuiltInPackets.PlayerAbilities, (byte) 6, 0f, 0f));
   }
 
-  private List<PreparedPacket> createExpPackets(LimboFactory factory) {
+  private List<PreparedPacket> createExpPackets(LimboFactory factory, long ticks) {
     List<PreparedPacket> packets = new ArrayList<>();
-    long ticks = Settings.IMP.MAIN.FALLING_CHECK_TICKS;
     float expInterval = 0.01F;
     for (int i = 0; i < ticks; ++i) {
       int percentage = (int) (i * 100 / ticks);
@@ -106,36 +145,36 @@ public class CachedPackets {
   }
 
   public PreparedPacket createChatPacket(LimboFactory factory, String text) {
+    Component component = this.serializer.deserialize(text);
     return factory.createPreparedPacket()
         .prepare(new Chat(
-            ProtocolUtils.getJsonChatSerializer(ProtocolVersion.MINIMUM_VERSION).serialize(
-                LimboFilter.getSerializer().deserialize(text)
-            ), Chat.CHAT_TYPE, null
+            ProtocolUtils.getJsonChatSerializer(ProtocolVersion.MINIMUM_VERSION).serialize(component), Chat.CHAT_TYPE, null
         ), ProtocolVersion.MINIMUM_VERSION, ProtocolVersion.MINECRAFT_1_15_2)
         .prepare(new Chat(
-            ProtocolUtils.getJsonChatSerializer(ProtocolVersion.MINECRAFT_1_16).serialize(
-                LimboFilter.getSerializer().deserialize(text)
-            ), Chat.CHAT_TYPE, null
+            ProtocolUtils.getJsonChatSerializer(ProtocolVersion.MINECRAFT_1_16).serialize(component), Chat.CHAT_TYPE, null
         ), ProtocolVersion.MINECRAFT_1_16);
   }
 
   private PreparedPacket createDisconnectPacket(LimboFactory factory, String message) {
-    return factory.createPreparedPacket().prepare(version -> Disconnect.create(LimboFilter.getSerializer().deserialize(message), version));
+    return factory.createPreparedPacket().prepare(version -> Disconnect.create(this.serializer.deserialize(message), version));
   }
 
   public PreparedPacket createTitlePacket(LimboFactory factory, String title, String subtitle) {
     PreparedPacket preparedPacket = factory.createPreparedPacket();
 
+    // Deserialized once, the packets are prepared for every version.
+    Component titleComponent = this.serializer.deserialize(title);
     preparedPacket.prepare(version -> {
       GenericTitlePacket packet = GenericTitlePacket.constructTitlePacket(GenericTitlePacket.ActionType.SET_TITLE, version);
-      packet.setComponent(ProtocolUtils.getJsonChatSerializer(version).serialize(LimboFilter.getSerializer().deserialize(title)));
+      packet.setComponent(ProtocolUtils.getJsonChatSerializer(version).serialize(titleComponent));
       return packet;
     }, ProtocolVersion.MINECRAFT_1_8);
 
     if (!subtitle.isEmpty()) {
+      Component subtitleComponent = this.serializer.deserialize(subtitle);
       preparedPacket.prepare(version -> {
         GenericTitlePacket packet = GenericTitlePacket.constructTitlePacket(GenericTitlePacket.ActionType.SET_SUBTITLE, version);
-        packet.setComponent(ProtocolUtils.getJsonChatSerializer(version).serialize(LimboFilter.getSerializer().deserialize(subtitle)));
+        packet.setComponent(ProtocolUtils.getJsonChatSerializer(version).serialize(subtitleComponent));
         return packet;
       }, ProtocolVersion.MINECRAFT_1_8);
     }
@@ -165,6 +204,10 @@ public class CachedPackets {
     return this.timesUp;
   }
 
+  public PreparedPacket getPacketRateKick() {
+    return this.packetRateKick;
+  }
+
   public PreparedPacket getSetSlot() {
     return this.setSlot;
   }
@@ -181,6 +224,37 @@ public class CachedPackets {
     return this.checkingTitle;
   }
 
+  public PreparedPacket getCheckingCaptchaChat() {
+    return this.checkingCaptchaChat;
+  }
+
+  /**
+   * @return the captcha title, or null if it is disabled
+   */
+  public PreparedPacket getCheckingCaptchaTitle() {
+    return this.checkingCaptchaTitle;
+  }
+
+  public PreparedPacket getCheckingWrongCaptchaChat(LimboFactory factory, int attempts) {
+    if (attempts > 0 && attempts < this.checkingWrongCaptchaChat.length) {
+      return this.checkingWrongCaptchaChat[attempts];
+    }
+
+    return this.createChatPacket(factory, MessageFormat.format(this.checkingWrongCaptchaChatFormat, attempts));
+  }
+
+  public PreparedPacket createReleaseQueueTitle(LimboFactory factory, String position, String server) {
+    return this.createTitlePacket(
+        factory,
+        MessageFormat.format(this.releaseQueueTitleFormat, position, server),
+        MessageFormat.format(this.releaseQueueSubtitleFormat, position, server)
+    );
+  }
+
+  public PreparedPacket createReleaseQueueChat(LimboFactory factory, String position, String server) {
+    return this.createChatPacket(factory, MessageFormat.format(this.releaseQueueChatFormat, position, server));
+  }
+
   public PreparedPacket getKickClientCheckSettings() {
     return this.kickClientCheckSettings;
   }
@@ -24,7 +24,6 @@ import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 import net.elytrium.limboapi.api.protocol.PreparedPacket;
 import net.elytrium.limbofilter.LimboFilter;
-import net.elytrium.limbofilter.Settings;
 import net.elytrium.limbofilter.captcha.CaptchaHolder;
 
 public class CachedCaptcha {
@@ -33,26 +32,49 @@ public class CachedCaptcha {
   private final AtomicInteger captchaCounter = new AtomicInteger();
 
   private final LimboFilter plugin;
+  private final boolean preparePackets;
 
-  public CachedCaptcha(LimboFilter plugin) {
+  private long canvasBytes;
+  private long columnsBytes;
+  private long preparedBytes;
+  // Every prepared captcha has the same size, racing threads would measure the same value.
+  private volatile long preparedCaptchaBytes = -1;
+
+  public CachedCaptcha(LimboFilter plugin, boolean preparePackets) {
     this.plugin = plugin;
+    this.preparePackets = preparePackets;
   }
 
+  // Called from the generator threads, the list is read only after generation is complete.
+  // Packets are encoded outside of the monitor so the generator threads don't queue on each other.
   public void createCaptchaPacket(MinecraftPacket mapDataPacket, MinecraftPacket[] mapDataPackets17, String answer) {
-    if (Settings.IMP.MAIN.CAPTCHA_GENERATOR.PREPARE_CAPTCHA_PACKETS) {
+    if (this.preparePackets) {
       PreparedPacket prepared = this.plugin.getFactory().createPreparedPacket();
-      this.captchas.add(
-          new CaptchaHolder(
-              this.toArray(
-                  prepared
-                      .prepare(mapDataPackets17, ProtocolVersion.MINECRAFT_1_7_2, ProtocolVersion.MINECRAFT_1_7_6)
-                      .prepare(mapDataPacket, ProtocolVersion.MINECRAFT_1_8)
-              ),
-              answer
-          )
+      CaptchaHolder holder = new CaptchaHolder(
+          this.toArray(
+              prepared
+                  .prepare(mapDataPackets17, ProtocolVersion.MINECRAFT_1_7_2, ProtocolVersion.MINECRAFT_1_7_6)
+                  .prepare(mapDataPacket, ProtocolVersion.MINECRAFT_1_8)
+          ),
+          answer
       );
+      long captchaBytes = this.preparedCaptchaBytes;
+      if (captchaBytes == -1) {
+        captchaBytes = CaptchaFootprint.measurePrepared(mapDataPacket, mapDataPackets17);
+        this.preparedCaptchaBytes = captchaBytes;
+      }
+
+      synchronized (this) {
+        this.captchas.add(holder);
+        this.preparedBytes += captchaBytes;
+      }
     } else {
-      this.captchas.add(new CaptchaHolder(this.toArray(mapDataPacket), mapDataPackets17, answer));
+      CaptchaHolder holder = new CaptchaHolder(this.toArray(mapDataPacket), mapDataPackets17, answer);
+      synchronized (this) {
+        this.captchas.add(holder);
+        this.canvasBytes += CaptchaFootprint.getCanvasBytes();
+        this.columnsBytes += CaptchaFootprint.getColumnsBytes();
+      }
     }
   }
 
@@ -70,4 +92,37 @@ public class CachedCaptcha {
 
     return this.captchas.get(count);
   }
+
+  public synchronized int getCount() {
+    return this.captchas.size();
+  }
+
+  public boolean isPrepared() {
+    return this.preparePackets;
+  }
+
+  /**
+   * 1.8+ map data held by unprepared captchas.
+   */
+  public synchronized long getCanvasBytes() {
+    return this.canvasBytes;
+  }
+
+  /**
+   * 1.7 map columns held by unprepared captchas.
+   */
+  public synchronized long getColumnsBytes() {
+    return this.columnsBytes;
+  }
+
+  /**
+   * Per-version frames held by prepared captchas.
+   */
+  public synchronized long getPreparedBytes() {
+    return this.preparedBytes;
+  }
+
+  public synchronized long getTotalBytes() {
+    return this.canvasBytes + this.columnsBytes + this.preparedBytes;
+  }
 }
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2021 - 2022 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limbofilter.cache.captcha;
+
+import com.velocitypowered.api.network.ProtocolVersion;
+import com.velocitypowered.proxy.protocol.MinecraftPacket;
+import com.velocitypowered.proxy.protocol.ProtocolUtils;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.util.Locale;
+import net.elytrium.limboapi.api.LimboFactory;
+import net.elytrium.limboapi.api.protocol.packets.BuiltInPackets;
+import net.elytrium.limboapi.api.protocol.packets.data.MapData;
+import net.elytrium.limbofilter.captcha.map.CraftMapCanvas;
+
+/**
+ * Memory footprint of one captcha in each representation.
+ *
+ * <p>Map data arrays are accounted exactly, object headers and references are approximated.
+ * Prepared buffers aren't exposed by LimboAPI, so the packets are encoded the same way, one frame per protocol version.
+ * Map data packets have the same encoded size for every image, so one captcha is enough to measure them.
+ */
+public class CaptchaFootprint {
+
+  private static final int ARRAY_HEADER = 16;
+  // MapData with its packet.
+  private static final int PACKET_OVERHEAD = 64;
+
+  private static long preparedBytes = -1;
+
+  public static long getCanvasBytes() {
+    return ARRAY_HEADER + MapData.MAP_SIZE + PACKET_OVERHEAD;
+  }
+
+  public static long getColumnsBytes() {
+    return ARRAY_HEADER + MapData.MAP_DIM_SIZE * 4L + MapData.MAP_DIM_SIZE * (ARRAY_HEADER + MapData.MAP_DIM_SIZE + PACKET_OVERHEAD);
+  }
+
+  /**
+   * @return prepared bytes of one captcha, measured with a blank map once
+   */
+  public static synchronized long getPreparedBytes(LimboFactory factory) {
+    if (preparedBytes == -1) {
+      CraftMapCanvas canvas = new CraftMapCanvas();
+      MinecraftPacket packet = (MinecraftPacket) factory.instantiatePacket(BuiltInPackets.MapData, 0, (byte) 0, canvas.getMapData());
+      MinecraftPacket[] packets17 = new MinecraftPacket[MapData.MAP_DIM_SIZE];
+      for (int i = 0; i < MapData.MAP_DIM_SIZE; ++i) {
+        packets17[i] = (MinecraftPacket) factory.instantiatePacket(BuiltInPackets.MapData, 0, (byte) 0, canvas.getMaps17Data()[i]);
+      }
+
+      preparedBytes = measurePrepared(packet, packets17);
+    }
+
+    return preparedBytes;
+  }
+
+  /**
+   * @return size of the frames prepared for the captcha: 1.7 columns for 1.7.2-1.7.6, the whole map for 1.8 and above
+   */
+  public static long measurePrepared(MinecraftPacket packet, MinecraftPacket[] packets17) {
+    long total = 0;
+    ByteBuf buf = Unpooled.buffer(MapData.MAP_SIZE + 32);
+    try {
+      for (ProtocolVersion version : ProtocolVersion.SUPPORTED_VERSIONS) {
+        if (version.compareTo(ProtocolVersion.MINECRAFT_1_8) >= 0) {
+          total += getFrameBytes(buf, packet, version);
+        } else if (version.compareTo(ProtocolVersion.MINECRAFT_1_7_2) >= 0) {
+          for (MinecraftPacket packet17 : packets17) {
+            total += getFrameBytes(buf, packet17, version);
+          }
+        }
+      }
+    } finally {
+      buf.release();
+    }
+
+    return total;
+  }
+
+  private static int getFrameBytes(ByteBuf buf, MinecraftPacket packet, ProtocolVersion version) {
+    buf.clear();
+    packet.encode(buf, ProtocolUtils.Direction.CLIENTBOUND, version);
+    // The map data packet id fits into one byte in every version.
+    int length = 1 + buf.readableBytes();
+    return ProtocolUtils.varIntBytes(length) + length;
+  }
+
+  public static long getRawBytes() {
+    return getCanvasBytes() + getColumnsBytes();
+  }
+
+  /**
+   * @param budget absolute size with an optional K, M or G suffix, or a percentage of the max heap
+   * @return budget in bytes, -1 if it is empty
+   */
+  public static long parseBudget(String budget) {
+    String value = budget.trim().toUpperCase(Locale.ROOT);
+    if (value.isEmpty()) {
+      return -1;
+    }
+
+    char unit = value.charAt(value.length() - 1);
+    String number = Character.isDigit(unit) ? value : value.substring(0, value.length() - 1).trim();
+    switch (unit) {
+      case '%':
+        return (long) (Runtime.getRuntime().maxMemory() * Double.parseDouble(number) / 100);
+      case 'K':
+        return Long.parseLong(number) << 10;
+      case 'M':
+        return Long.parseLong(number) << 20;
+      case 'G':
+        return Long.parseLong(number) << 30;
+      default:
+        if (!Character.isDigit(unit)) {
+          throw new NumberFormatException("Unknown memory unit: " + unit);
+        }
+
+        return Long.parseLong(number);
+    }
+  }
+
+  public static String format(long bytes) {
+    if (bytes < 1 << 20) {
+      return String.format(Locale.ROOT, "%.1f KB", bytes / 1024.0);
+    } else {
+      return String.format(Locale.ROOT, "%.1f MB", bytes / 1024.0 / 1024.0);
+    }
+  }
+}
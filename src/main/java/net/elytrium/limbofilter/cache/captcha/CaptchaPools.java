@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2021 - 2022 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limbofilter.cache.captcha;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import net.elytrium.limbofilter.LimboFilter;
+import net.elytrium.limbofilter.Settings;
+import net.elytrium.limbofilter.captcha.CaptchaGenerator;
+import net.elytrium.limbofilter.captcha.CaptchaTier;
+
+/**
+ * Captcha pools of one generation, one per {@link CaptchaTier}.
+ *
+ * <p>The default pool is generated with the generation and is never released. Other pools are generated
+ * in the background when their tier is activated, and released when the tier hasn't been used for the cool-down time.
+ * Until a pool is ready, the default pool is used instead.
+ */
+public class CaptchaPools {
+
+  private static final CaptchaTier[] TIERS = CaptchaTier.values();
+
+  private final AtomicReferenceArray<CachedCaptcha> pools = new AtomicReferenceArray<>(TIERS.length);
+  private final boolean[] generating = new boolean[TIERS.length];
+  private final AtomicLongArray lastUsed = new AtomicLongArray(TIERS.length);
+  private final Settings.MAIN.CAPTCHA_GENERATOR[] profiles = new Settings.MAIN.CAPTCHA_GENERATOR[TIERS.length];
+  // How the memory budget sized each pool, shown by "/limbofilter memory".
+  private final AtomicReferenceArray<String> sizing = new AtomicReferenceArray<>(TIERS.length);
+  private final LimboFilter plugin;
+  private final boolean tiersEnabled;
+  private final long coolDownMillis;
+  private final String memoryBudget;
+
+  private ExecutorService executor;
+
+  public CaptchaPools(LimboFilter plugin, Settings.MAIN settings) {
+    this.plugin = plugin;
+    this.tiersEnabled = settings.CAPTCHA_TIERS.ENABLED;
+    this.coolDownMillis = settings.CAPTCHA_TIERS.COOL_DOWN_MILLIS;
+    this.memoryBudget = settings.CAPTCHA_GENERATOR.MEMORY_BUDGET;
+
+    this.profiles[CaptchaTier.LIGHT.ordinal()] = settings.CAPTCHA_TIERS.LIGHT.override(settings.CAPTCHA_GENERATOR);
+    this.profiles[CaptchaTier.DEFAULT.ordinal()] = settings.CAPTCHA_GENERATOR;
+    this.profiles[CaptchaTier.HARDENED.ordinal()] = settings.CAPTCHA_TIERS.HARDENED.override(settings.CAPTCHA_GENERATOR);
+
+    this.pools.set(CaptchaTier.DEFAULT.ordinal(), this.generate(CaptchaTier.DEFAULT));
+  }
+
+  /**
+   * Marks the tier as used, and starts its generation if it isn't generated yet.
+   */
+  public void activate(CaptchaTier tier) {
+    if (!this.tiersEnabled) {
+      return;
+    }
+
+    int index = tier.ordinal();
+    this.lastUsed.set(index, System.currentTimeMillis());
+    if (this.pools.get(index) == null) {
+      synchronized (this) {
+        if (this.generating[index] || this.pools.get(index) != null) {
+          return;
+        }
+
+        if (this.executor == null) {
+          this.executor = Executors.newSingleThreadExecutor(task -> new Thread(task, "limbofilter-captcha-tiers"));
+        }
+
+        this.generating[index] = true;
+        this.executor.execute(() -> {
+          try {
+            this.pools.set(index, this.generate(tier));
+          } catch (Throwable t) {
+            t.printStackTrace();
+          } finally {
+            synchronized (this) {
+              this.generating[index] = false;
+            }
+          }
+        });
+      }
+    }
+  }
+
+  /**
+   * @return the pool for the tier, or the default pool if the tier isn't generated yet
+   */
+  public CachedCaptcha get(CaptchaTier tier) {
+    if (this.tiersEnabled) {
+      CachedCaptcha pool = this.pools.get(tier.ordinal());
+      if (pool != null) {
+        this.lastUsed.set(tier.ordinal(), System.currentTimeMillis());
+        return pool;
+      }
+
+      this.activate(tier);
+    }
+
+    return this.pools.get(CaptchaTier.DEFAULT.ordinal());
+  }
+
+  /**
+   * Releases the pools that weren't used during the cool-down time, except the default one.
+   */
+  public void releaseUnused() {
+    long now = System.currentTimeMillis();
+    for (CaptchaTier tier : TIERS) {
+      int index = tier.ordinal();
+      if (tier != CaptchaTier.DEFAULT && this.pools.get(index) != null && now - this.lastUsed.get(index) > this.coolDownMillis) {
+        this.pools.set(index, null);
+        LimboFilter.getLogger().info("Released unused " + tier + " captcha pool.");
+      }
+    }
+  }
+
+  /**
+   * @return the pool for the tier, or null if it isn't generated, without marking the tier as used
+   */
+  public CachedCaptcha getPool(CaptchaTier tier) {
+    return this.pools.get(tier.ordinal());
+  }
+
+  /**
+   * @return how the memory budget sized the pool of the tier, or null if it isn't generated
+   */
+  public String getSizing(CaptchaTier tier) {
+    return this.sizing.get(tier.ordinal());
+  }
+
+  public long getTotalBytes() {
+    long total = 0;
+    for (CaptchaTier tier : TIERS) {
+      CachedCaptcha pool = this.pools.get(tier.ordinal());
+      if (pool != null) {
+        total += pool.getTotalBytes();
+      }
+    }
+
+    return total;
+  }
+
+  public String getMemoryBudget() {
+    return this.memoryBudget;
+  }
+
+  public synchronized void close() {
+    if (this.executor != null) {
+      this.executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Releases every pool, including the default one. Only called once no session can use them anymore.
+   */
+  public synchronized void dispose() {
+    this.close();
+    for (int i = 0; i < TIERS.length; ++i) {
+      this.pools.set(i, null);
+    }
+  }
+
+  private CachedCaptcha generate(CaptchaTier tier) {
+    Settings.MAIN.CAPTCHA_GENERATOR profile = this.fitBudget(tier, this.profiles[tier.ordinal()]);
+    CachedCaptcha cachedCaptcha = new CachedCaptcha(this.plugin, profile.PREPARE_CAPTCHA_PACKETS);
+    LimboFilter.getLogger().info("Generating " + tier + " captcha pool.");
+    new CaptchaGenerator(this.plugin, profile).generateCaptcha(cachedCaptcha);
+    return cachedCaptcha;
+  }
+
+  /**
+   * Sizes the pool and picks its representation to fit the memory budget.
+   * Prepared packets are used if the whole pool fits, then the raw map data, otherwise fewer raw images are generated.
+   */
+  private Settings.MAIN.CAPTCHA_GENERATOR fitBudget(CaptchaTier tier, Settings.MAIN.CAPTCHA_GENERATOR profile) {
+    long budget;
+    try {
+      budget = CaptchaFootprint.parseBudget(profile.MEMORY_BUDGET);
+    } catch (NumberFormatException e) {
+      LimboFilter.getLogger().warn("Invalid captcha memory budget " + profile.MEMORY_BUDGET + ", ignoring it.");
+      budget = -1;
+    }
+
+    if (budget < 0) {
+      this.sizing.set(tier.ordinal(), "no budget");
+      return profile;
+    }
+
+    Settings.MAIN.CAPTCHA_GENERATOR fitted = profile.copy();
+    String sizing;
+    if (budget >= CaptchaFootprint.getPreparedBytes(this.plugin.getFactory()) * profile.IMAGES_COUNT) {
+      fitted.PREPARE_CAPTCHA_PACKETS = true;
+      sizing = "prepared pool fits the budget";
+    } else if (budget >= CaptchaFootprint.getRawBytes() * profile.IMAGES_COUNT) {
+      fitted.PREPARE_CAPTCHA_PACKETS = false;
+      sizing = "raw pool fits the budget, prepared doesn't";
+    } else {
+      fitted.PREPARE_CAPTCHA_PACKETS = false;
+      fitted.IMAGES_COUNT = (int) Math.max(1, budget / CaptchaFootprint.getRawBytes());
+      sizing = "raw pool reduced from " + profile.IMAGES_COUNT + " images to fit the budget";
+    }
+
+    this.sizing.set(tier.ordinal(), sizing);
+    LimboFilter.getLogger().info("Sized " + tier + " captcha pool to " + fitted.IMAGES_COUNT + (fitted.PREPARE_CAPTCHA_PACKETS ? " prepared" : " raw")
+        + " images for the memory budget of " + CaptchaFootprint.format(budget) + ": " + sizing + ".");
+    return fitted;
+  }
+}
@@ -0,0 +1,395 @@
+/*
+ * Copyright (C) 2021 - 2022 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limbofilter.cache.world;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import net.elytrium.limboapi.api.LimboFactory;
+import net.elytrium.limboapi.api.chunk.Dimension;
+import net.elytrium.limboapi.api.chunk.VirtualBlock;
+import net.elytrium.limboapi.api.chunk.VirtualWorld;
+import net.elytrium.limboapi.api.file.WorldFile;
+import net.elytrium.limbofilter.LimboFilter;
+
+/**
+ * Disk cache of the blocks placed by {@link WorldFile#toWorld}, so the world file is parsed only once.
+ *
+ * <p>While the world file is parsed, the factory and the world are wrapped to record the created blocks (palette)
+ * and their positions. The cache file is keyed by SHA-256 of the world file, its type and the offset.
+ * If the world file does anything except creating simple blocks and placing them, nothing is cached.
+ *
+ * <p>File layout: magic, palette size, palette entries (factory method descriptor and arguments),
+ * blocks count, then 16 bytes per block: x, y, z and palette index.
+ */
+public class CachedWorld {
+
+  private static final long MAGIC = 0x4C46574F524C4431L; // LFWORLD1
+  private static final String SUFFIX = ".bin";
+
+  private static final byte TAG_BOOLEAN = 0;
+  private static final byte TAG_SHORT = 1;
+  private static final byte TAG_INT = 2;
+  private static final byte TAG_STRING = 3;
+  private static final byte TAG_MAP = 4;
+
+  private final Path directory;
+
+  public CachedWorld(Path directory) {
+    this.directory = directory;
+  }
+
+  /**
+   * Restores the cached world.
+   *
+   * @return false if there is no valid cache for this world file and offset
+   */
+  public boolean restore(LimboFactory factory, VirtualWorld world, Path worldFile, String type, int x, int y, int z) throws IOException {
+    Path cacheFile = this.getCacheFile(worldFile, type, x, y, z);
+    if (!Files.exists(cacheFile)) {
+      return false;
+    }
+
+    long start = System.currentTimeMillis();
+    boolean valid;
+    try (FileChannel channel = FileChannel.open(cacheFile, StandardOpenOption.READ)) {
+      valid = this.restore(factory, world, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    } catch (BufferUnderflowException | IndexOutOfBoundsException | ReflectiveOperationException | IllegalArgumentException e) {
+      valid = false;
+    }
+
+    if (!valid) {
+      LimboFilter.getLogger().warn("World cache " + cacheFile.getFileName() + " is invalid, parsing the world file again.");
+      Files.delete(cacheFile);
+      return false;
+    }
+
+    LimboFilter.getLogger().info("World restored from the cache in " + (System.currentTimeMillis() - start) + " ms.");
+    return true;
+  }
+
+  private boolean restore(LimboFactory factory, VirtualWorld world, MappedByteBuffer buffer) throws ReflectiveOperationException {
+    if (buffer.getLong() != MAGIC) {
+      return false;
+    }
+
+    VirtualBlock[] palette = new VirtualBlock[buffer.getInt()];
+    for (int i = 0; i < palette.length; ++i) {
+      Method method = findFactoryMethod(readString(buffer));
+      Object[] args = new Object[buffer.get()];
+      for (int j = 0; j < args.length; ++j) {
+        args[j] = readValue(buffer);
+      }
+
+      palette[i] = (VirtualBlock) method.invoke(factory, args);
+    }
+
+    int blocks = buffer.getInt();
+    for (int i = 0; i < blocks; ++i) {
+      world.setBlock(buffer.getInt(), buffer.getInt(), buffer.getInt(), palette[buffer.getInt()]);
+    }
+
+    return true;
+  }
+
+  /**
+   * Parses the world file into the world and writes the cache, if the world file is supported.
+   */
+  public void bake(WorldFile file, LimboFactory factory, VirtualWorld world, Path worldFile, String type, int x, int y, int z) throws IOException {
+    Recorder recorder = new Recorder(factory, world);
+    file.toWorld(recorder.getFactory(), recorder.getWorld(), x, y, z);
+
+    if (!recorder.isSupported()) {
+      LimboFilter.getLogger().warn("This world file can't be cached, it will be parsed on every reload.");
+      return;
+    }
+
+    Files.createDirectories(this.directory);
+    Path cacheFile = this.getCacheFile(worldFile, type, x, y, z);
+    try (Stream<Path> files = Files.list(this.directory)) {
+      for (Path oldFile : files.filter(oldFile -> oldFile.getFileName().toString().endsWith(SUFFIX)).collect(Collectors.toList())) {
+        Files.delete(oldFile);
+      }
+    }
+
+    Path tempFile = Files.createTempFile(this.directory, "world-", ".tmp");
+    try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+      recorder.write(output);
+    }
+
+    Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private Path getCacheFile(Path worldFile, String type, int x, int y, int z) throws IOException {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      try (InputStream input = Files.newInputStream(worldFile)) {
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+          digest.update(buffer, 0, read);
+        }
+      }
+
+      digest.update((type + ";" + x + ";" + y + ";" + z).getBytes(StandardCharsets.UTF_8));
+
+      StringBuilder name = new StringBuilder();
+      for (byte value : digest.digest()) {
+        name.append(String.format("%02x", value));
+      }
+
+      return this.directory.resolve(name.append(SUFFIX).toString());
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static Method findFactoryMethod(String descriptor) throws NoSuchMethodException {
+    for (Method method : LimboFactory.class.getMethods()) {
+      if (getDescriptor(method).equals(descriptor)) {
+        return method;
+      }
+    }
+
+    throw new NoSuchMethodException(descriptor);
+  }
+
+  private static String getDescriptor(Method method) {
+    return method.getName() + Arrays.stream(method.getParameterTypes()).map(Class::getName).collect(Collectors.joining(",", "(", ")"));
+  }
+
+  private static String readString(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.getInt()];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static void writeString(DataOutputStream output, String string) throws IOException {
+    byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+    output.writeInt(bytes.length);
+    output.write(bytes);
+  }
+
+  private static Object readValue(ByteBuffer buffer) {
+    byte tag = buffer.get();
+    switch (tag) {
+      case TAG_BOOLEAN: {
+        return buffer.get() != 0;
+      }
+      case TAG_SHORT: {
+        return buffer.getShort();
+      }
+      case TAG_INT: {
+        return buffer.getInt();
+      }
+      case TAG_STRING: {
+        return readString(buffer);
+      }
+      case TAG_MAP: {
+        int size = buffer.getInt();
+        Map<String, String> map = new HashMap<>(size);
+        for (int i = 0; i < size; ++i) {
+          map.put(readString(buffer), readString(buffer));
+        }
+
+        return map;
+      }
+      default: {
+        throw new IllegalArgumentException("Unknown tag " + tag);
+      }
+    }
+  }
+
+  private static void writeValue(DataOutputStream output, Object value) throws IOException {
+    if (value instanceof Boolean) {
+      output.writeByte(TAG_BOOLEAN);
+      output.writeBoolean((Boolean) value);
+    } else if (value instanceof Short) {
+      output.writeByte(TAG_SHORT);
+      output.writeShort((Short) value);
+    } else if (value instanceof Integer) {
+      output.writeByte(TAG_INT);
+      output.writeInt((Integer) value);
+    } else if (value instanceof String) {
+      output.writeByte(TAG_STRING);
+      writeString(output, (String) value);
+    } else {
+      Map<?, ?> map = (Map<?, ?>) value;
+      output.writeByte(TAG_MAP);
+      output.writeInt(map.size());
+      for (Map.Entry<?, ?> entry : map.entrySet()) {
+        writeString(output, (String) entry.getKey());
+        writeString(output, (String) entry.getValue());
+      }
+    }
+  }
+
+  private static boolean isSupportedValue(Object value) {
+    if (value instanceof Map) {
+      return ((Map<?, ?>) value).entrySet().stream().allMatch(entry -> entry.getKey() instanceof String && entry.getValue() instanceof String);
+    }
+
+    return value instanceof Boolean || value instanceof Short || value instanceof Integer || value instanceof String;
+  }
+
+  private static Object invoke(Object delegate, Method method, Object[] args) throws Throwable {
+    try {
+      return method.invoke(delegate, args);
+    } catch (InvocationTargetException e) {
+      throw e.getCause();
+    }
+  }
+
+  private static class Recorder {
+
+    private final Map<List<Object>, Integer> paletteIndexes = new HashMap<>();
+    private final Map<Object, Integer> blockIndexes = new IdentityHashMap<>();
+    private final List<List<Object>> palette = new ArrayList<>();
+    private final List<int[]> blocks = new ArrayList<>();
+    private final LimboFactory factory;
+    private final VirtualWorld world;
+    private boolean supported = true;
+
+    Recorder(LimboFactory factory, VirtualWorld world) {
+      this.factory = (LimboFactory) Proxy.newProxyInstance(
+          LimboFactory.class.getClassLoader(), new Class<?>[] {LimboFactory.class}, this.createFactoryHandler(factory)
+      );
+      this.world = (VirtualWorld) Proxy.newProxyInstance(
+          VirtualWorld.class.getClassLoader(), new Class<?>[] {VirtualWorld.class}, this.createWorldHandler(world)
+      );
+    }
+
+    private InvocationHandler createFactoryHandler(LimboFactory delegate) {
+      return (proxy, method, args) -> {
+        Object result = invoke(delegate, method, args);
+        if (method.getDeclaringClass() == Object.class) {
+          return result;
+        }
+
+        if (!method.getName().equals("createSimpleBlock") || result == null) {
+          this.supported = false;
+          return result;
+        }
+
+        List<Object> entry = new ArrayList<>();
+        entry.add(getDescriptor(method));
+        if (args != null) {
+          for (Object arg : args) {
+            if (!isSupportedValue(arg)) {
+              this.supported = false;
+              return result;
+            }
+
+            // Copy maps to keep the recorded value immutable and sorted.
+            entry.add(arg instanceof Map ? new TreeMap<>((Map<?, ?>) arg) : arg);
+          }
+        }
+
+        Integer index = this.paletteIndexes.get(entry);
+        if (index == null) {
+          index = this.palette.size();
+          this.palette.add(entry);
+          this.paletteIndexes.put(entry, index);
+        }
+
+        this.blockIndexes.put(result, index);
+        return result;
+      };
+    }
+
+    private InvocationHandler createWorldHandler(VirtualWorld delegate) {
+      return (proxy, method, args) -> {
+        if (method.getName().equals("setBlock") && args != null && args.length == 4) {
+          Integer index = this.blockIndexes.get(args[3]);
+          if (index == null) {
+            this.supported = false;
+          } else {
+            this.blocks.add(new int[] {(Integer) args[0], (Integer) args[1], (Integer) args[2], index});
+          }
+        } else if (method.getDeclaringClass() != Object.class && !isGetter(method)) {
+          // The world may be modified by other setters or through the returned object, e.g. a chunk.
+          this.supported = false;
+        }
+
+        return invoke(delegate, method, args);
+      };
+    }
+
+    private static boolean isGetter(Method method) {
+      Class<?> type = method.getReturnType();
+      return type != void.class && (type.isPrimitive() || type == String.class || type == Dimension.class);
+    }
+
+    void write(DataOutputStream output) throws IOException {
+      output.writeLong(MAGIC);
+      output.writeInt(this.palette.size());
+      for (List<Object> entry : this.palette) {
+        writeString(output, (String) entry.get(0));
+        output.writeByte(entry.size() - 1);
+        for (int i = 1; i < entry.size(); ++i) {
+          writeValue(output, entry.get(i));
+        }
+      }
+
+      output.writeInt(this.blocks.size());
+      for (int[] block : this.blocks) {
+        output.writeInt(block[0]);
+        output.writeInt(block[1]);
+        output.writeInt(block[2]);
+        output.writeInt(block[3]);
+      }
+    }
+
+    LimboFactory getFactory() {
+      return this.factory;
+    }
+
+    VirtualWorld getWorld() {
+      return this.world;
+    }
+
+    boolean isSupported() {
+      return this.supported && !this.blocks.isEmpty();
+    }
+  }
+}
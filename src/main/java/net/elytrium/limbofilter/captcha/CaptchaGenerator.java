@@ -30,74 +30,84 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ThreadLocalRandom;
-import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.atomic.AtomicInteger;
 import javax.imageio.ImageIO;
 import net.elytrium.limboapi.api.protocol.packets.BuiltInPackets;
 import net.elytrium.limboapi.api.protocol.packets.data.MapData;
 import net.elytrium.limbofilter.LimboFilter;
 import net.elytrium.limbofilter.Settings;
+import net.elytrium.limbofilter.cache.captcha.CachedCaptcha;
+import net.elytrium.limbofilter.cache.captcha.CaptchaFootprint;
 import net.elytrium.limbofilter.captcha.map.CraftMapCanvas;
 import net.elytrium.limbofilter.captcha.painter.CaptchaPainter;
+import net.elytrium.limbofilter.captcha.painter.GlyphAtlas;
 
 public class CaptchaGenerator {
 
-  private static final List<CraftMapCanvas> cachedBackgroundMap = new ArrayList<>();
-  private static final CaptchaPainter painter = new CaptchaPainter();
-  private static final List<Font> fonts = new ArrayList<>();
-  private static final AtomicInteger backplatesCounter = new AtomicInteger();
-  private static final AtomicInteger fontCounter = new AtomicInteger();
-  private static final AtomicInteger colorCounter = new AtomicInteger();
+  private final List<CraftMapCanvas> cachedBackgroundMap = new ArrayList<>();
+  private final List<Font> fonts = new ArrayList<>();
+  private final List<GlyphAtlas> atlases = new ArrayList<>();
+  private final AtomicInteger backplatesCounter = new AtomicInteger();
+  private final AtomicInteger fontCounter = new AtomicInteger();
+  private final AtomicInteger colorCounter = new AtomicInteger();
 
   private final LimboFilter plugin;
+  private final Settings.MAIN.CAPTCHA_GENERATOR settings;
+  private final CaptchaPainter painter;
 
-  public CaptchaGenerator(LimboFilter plugin) {
+  public CaptchaGenerator(LimboFilter plugin, Settings.MAIN.CAPTCHA_GENERATOR settings) {
     this.plugin = plugin;
+    this.settings = settings;
+    this.painter = new CaptchaPainter(settings);
   }
 
-  public void generateCaptcha() {
+  /**
+   * Generates all captcha images into the given cache, blocks until generation is complete.
+   */
+  public void generateCaptcha(CachedCaptcha cachedCaptcha) {
     try {
-      for (String backplatePath : Settings.IMP.MAIN.CAPTCHA_GENERATOR.BACKPLATE_PATHS) {
+      for (String backplatePath : this.settings.BACKPLATE_PATHS) {
         if (!backplatePath.isEmpty()) {
           CraftMapCanvas craftMapCanvas = new CraftMapCanvas();
           craftMapCanvas.drawImage(0, 0, this.resizeIfNeeded(ImageIO.read(this.plugin.getFile(backplatePath))), false);
-          cachedBackgroundMap.add(craftMapCanvas);
+          this.cachedBackgroundMap.add(craftMapCanvas);
         }
       }
     } catch (IOException e) {
       e.printStackTrace();
     }
 
-    fonts.clear();
-
-    int fontSize = Settings.IMP.MAIN.CAPTCHA_GENERATOR.FONT_SIZE;
+    int fontSize = this.settings.FONT_SIZE;
     Map<TextAttribute, Object> textSettings = Map.of(
         TextAttribute.TRACKING,
-        Settings.IMP.MAIN.CAPTCHA_GENERATOR.LETTER_SPACING,
+        this.settings.LETTER_SPACING,
         TextAttribute.SIZE,
         (float) fontSize,
         TextAttribute.STRIKETHROUGH,
-        Settings.IMP.MAIN.CAPTCHA_GENERATOR.STRIKETHROUGH,
+        this.settings.STRIKETHROUGH,
         TextAttribute.UNDERLINE,
-        Settings.IMP.MAIN.CAPTCHA_GENERATOR.UNDERLINE
+        this.settings.UNDERLINE
     );
 
-    if (Settings.IMP.MAIN.CAPTCHA_GENERATOR.USE_STANDARD_FONTS) {
-      fonts.add(new Font(Font.SANS_SERIF, Font.PLAIN, fontSize).deriveFont(textSettings));
-      fonts.add(new Font(Font.SERIF, Font.PLAIN, fontSize).deriveFont(textSettings));
-      fonts.add(new Font(Font.MONOSPACED, Font.PLAIN, fontSize).deriveFont(textSettings));
+    if (this.settings.USE_STANDARD_FONTS) {
+      this.fonts.add(new Font(Font.SANS_SERIF, Font.PLAIN, fontSize).deriveFont(textSettings));
+      this.fonts.add(new Font(Font.SERIF, Font.PLAIN, fontSize).deriveFont(textSettings));
+      this.fonts.add(new Font(Font.MONOSPACED, Font.PLAIN, fontSize).deriveFont(textSettings));
     }
 
-    if (Settings.IMP.MAIN.CAPTCHA_GENERATOR.FONTS_PATH != null) {
-      Settings.IMP.MAIN.CAPTCHA_GENERATOR.FONTS_PATH.forEach(fontFile -> {
+    if (this.settings.FONTS_PATH != null) {
+      this.settings.FONTS_PATH.forEach(fontFile -> {
         try {
           if (!fontFile.isEmpty()) {
             LimboFilter.getLogger().info("Loading font " + fontFile + ".");
             Font font = Font.createFont(Font.TRUETYPE_FONT, this.plugin.getFile(fontFile));
             GraphicsEnvironment.getLocalGraphicsEnvironment().registerFont(font);
-            fonts.add(font.deriveFont(textSettings));
+            this.fonts.add(font.deriveFont(textSettings));
           }
         } catch (FontFormatException | IOException e) {
           e.printStackTrace();
@@ -105,7 +115,17 @@ public class CaptchaGenerator {
       });
     }
 
-    new Thread(this::generateImages).start();
+    if (this.settings.USE_GLYPH_ATLAS) {
+      long start = System.currentTimeMillis();
+      this.fonts.forEach(font -> this.atlases.add(new GlyphAtlas(font, this.settings)));
+      // The atlases are only kept while the pool is generated, so they aren't a part of the pool footprint.
+      long memoryUsage = this.atlases.stream().mapToLong(GlyphAtlas::getMemoryUsage).sum();
+      LimboFilter.getLogger().info(
+          "Glyph atlases prepared in " + (System.currentTimeMillis() - start) + " ms, " + CaptchaFootprint.format(memoryUsage) + "."
+      );
+    }
+
+    this.generateImages(cachedCaptcha);
   }
 
   private BufferedImage resizeIfNeeded(BufferedImage image) {
@@ -122,46 +142,54 @@ public class CaptchaGenerator {
     }
   }
 
-  @SuppressWarnings("StatementWithEmptyBody")
-  public void generateImages() {
-    ThreadPoolExecutor executor = (ThreadPoolExecutor) Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
-    for (int i = 0; i < Settings.IMP.MAIN.CAPTCHA_GENERATOR.IMAGES_COUNT; ++i) {
-      executor.execute(this::genNewPacket);
-    }
-
+  private void generateImages(CachedCaptcha cachedCaptcha) {
+    ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
     long start = System.currentTimeMillis();
-    while (executor.getActiveCount() != 0) {
-      // Busy wait.
+    try {
+      List<Future<?>> futures = new ArrayList<>(this.settings.IMAGES_COUNT);
+      for (int i = 0; i < this.settings.IMAGES_COUNT; ++i) {
+        futures.add(executor.submit(() -> this.genNewPacket(cachedCaptcha)));
+      }
+
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Captcha generation was interrupted", e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Unable to generate captcha", e.getCause());
+    } finally {
+      executor.shutdownNow();
     }
 
     LimboFilter.getLogger().info("Captcha generated in " + (System.currentTimeMillis() - start) + " ms.");
-    executor.shutdownNow();
-    System.gc();
   }
 
-  public void genNewPacket() {
+  private void genNewPacket(CachedCaptcha cachedCaptcha) {
     String answer = this.randomAnswer();
 
     CraftMapCanvas map;
-    if (cachedBackgroundMap.isEmpty()) {
+    if (this.cachedBackgroundMap.isEmpty()) {
       map = new CraftMapCanvas();
     } else {
-      int backplateNumber = backplatesCounter.getAndIncrement();
-      if (backplateNumber >= cachedBackgroundMap.size()) {
+      int backplateNumber = this.backplatesCounter.getAndIncrement();
+      if (backplateNumber >= this.cachedBackgroundMap.size()) {
         backplateNumber = 0;
-        backplatesCounter.set(0);
+        this.backplatesCounter.set(0);
       }
 
-      map = new CraftMapCanvas(cachedBackgroundMap.get(backplateNumber));
+      map = new CraftMapCanvas(this.cachedBackgroundMap.get(backplateNumber));
     }
 
-    int fontNumber = fontCounter.getAndIncrement();
-    if (fontNumber >= fonts.size()) {
+    int fontNumber = this.fontCounter.getAndIncrement();
+    if (fontNumber >= this.fonts.size()) {
       fontNumber = 0;
-      fontCounter.set(0);
+      this.fontCounter.set(0);
     }
 
-    map.drawImage(0, 0, painter.drawCaptcha(fonts.get(fontNumber), this.randomColor(), answer), Settings.IMP.MAIN.CAPTCHA_GENERATOR.COLORIFY);
+    GlyphAtlas atlas = this.atlases.isEmpty() ? null : this.atlases.get(fontNumber);
+    map.drawImage(0, 0, this.painter.drawCaptcha(this.fonts.get(fontNumber), atlas, this.randomColor(), answer), this.settings.COLORIFY);
 
     MinecraftPacket packet = (MinecraftPacket) this.plugin.getFactory().instantiatePacket(BuiltInPackets.MapData, 0, (byte) 0, map.getMapData());
     MinecraftPacket[] packets17 = new MinecraftPacket[MapData.MAP_DIM_SIZE];
@@ -169,12 +197,12 @@ public class CaptchaGenerator {
       packets17[i] = (MinecraftPacket) this.plugin.getFactory().instantiatePacket(BuiltInPackets.MapData, 0, (byte) 0, map.getMaps17Data()[i]);
     }
 
-    this.plugin.getCachedCaptcha().createCaptchaPacket(packet, packets17, answer);
+    cachedCaptcha.createCaptchaPacket(packet, packets17, answer);
   }
 
   private String randomAnswer() {
-    int length = Settings.IMP.MAIN.CAPTCHA_GENERATOR.LENGTH;
-    String pattern = Settings.IMP.MAIN.CAPTCHA_GENERATOR.PATTERN;
+    int length = this.settings.LENGTH;
+    String pattern = this.settings.PATTERN;
 
     char[] text = new char[length];
     for (int i = 0; i < length; ++i) {
@@ -185,13 +213,13 @@ public class CaptchaGenerator {
   }
 
   private Color randomColor() {
-    int index = colorCounter.getAndIncrement();
-    if (index >= Settings.IMP.MAIN.CAPTCHA_GENERATOR.RGB_COLOR_LIST.size()) {
-      colorCounter.set(0);
+    int index = this.colorCounter.getAndIncrement();
+    if (index >= this.settings.RGB_COLOR_LIST.size()) {
+      this.colorCounter.set(0);
       index = 0;
     }
 
-    return this.downscaleRGB(Integer.parseInt(Settings.IMP.MAIN.CAPTCHA_GENERATOR.RGB_COLOR_LIST.get(index), 16));
+    return this.downscaleRGB(Integer.parseInt(this.settings.RGB_COLOR_LIST.get(index), 16));
   }
 
   private Color downscaleRGB(int rgb) {
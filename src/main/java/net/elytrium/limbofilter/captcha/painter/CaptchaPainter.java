@@ -40,21 +40,31 @@ public class CaptchaPainter {
 
   private static final Color TRANSPARENT = new Color(0, 0, 0, 0);
 
-  private final ThreadLocalRandom random = ThreadLocalRandom.current();
+  private final Settings.MAIN.CAPTCHA_GENERATOR settings;
 
-  public BufferedImage drawCaptcha(Font font, Color foreground, String text) {
-    BufferedImage image = this.createImage();
-    Graphics2D graphics = (Graphics2D) image.getGraphics();
-
-    this.drawText(this.configureGraphics(graphics, font, foreground), text);
+  public CaptchaPainter(Settings.MAIN.CAPTCHA_GENERATOR settings) {
+    this.settings = settings;
+  }
 
-    graphics.dispose();
+  /**
+   * @param atlas pre-rasterized glyphs of the font, or null to lay out the text with Java2D
+   */
+  public BufferedImage drawCaptcha(Font font, GlyphAtlas atlas, Color foreground, String text) {
+    BufferedImage image;
+    if (atlas == null) {
+      image = this.createImage();
+      Graphics2D graphics = (Graphics2D) image.getGraphics();
+      this.drawText(this.configureGraphics(graphics, font, foreground), text);
+      graphics.dispose();
+    } else {
+      image = atlas.compose(text, foreground);
+    }
 
     image = this.postProcess(image);
-    graphics = (Graphics2D) image.getGraphics();
+    Graphics2D graphics = (Graphics2D) image.getGraphics();
 
     graphics.setColor(foreground);
-    for (int i = 0; i < Settings.IMP.MAIN.CAPTCHA_GENERATOR.CURVES_AMOUNT; ++i) {
+    for (int i = 0; i < this.settings.CURVES_AMOUNT; ++i) {
       this.addCurve(graphics);
     }
 
@@ -87,6 +97,7 @@ public class CaptchaPainter {
   }
 
   private void drawText(Graphics2D graphics, String text) {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
     GlyphVector vector = graphics.getFont().createGlyphVector(graphics.getFontRenderContext(), text);
 
     this.transform(vector);
@@ -95,10 +106,10 @@ public class CaptchaPainter {
     float boundsWidth = (float) bounds.getWidth();
     float boundsHeight = (float) bounds.getHeight();
 
-    boolean outlineEnabled = Settings.IMP.MAIN.CAPTCHA_GENERATOR.FONT_OUTLINE;
+    boolean outlineEnabled = this.settings.FONT_OUTLINE;
 
-    float wr = MapData.MAP_DIM_SIZE / boundsWidth * (this.random.nextFloat() / 20 + (outlineEnabled ? 0.89f : 0.92f)) * 1;
-    float hr = MapData.MAP_DIM_SIZE / boundsHeight * (this.random.nextFloat() / 20 + (outlineEnabled ? 0.68f : 0.75f)) * 1;
+    float wr = MapData.MAP_DIM_SIZE / boundsWidth * (random.nextFloat() / 20 + (outlineEnabled ? 0.89f : 0.92f)) * 1;
+    float hr = MapData.MAP_DIM_SIZE / boundsHeight * (random.nextFloat() / 20 + (outlineEnabled ? 0.68f : 0.75f)) * 1;
     graphics.translate((MapData.MAP_DIM_SIZE - boundsWidth * wr) / 2, (MapData.MAP_DIM_SIZE - boundsHeight * hr) / 2);
     graphics.scale(wr, hr);
 
@@ -107,8 +118,8 @@ public class CaptchaPainter {
     if (outlineEnabled) {
       graphics.draw(
           vector.getOutline(
-              Math.signum(this.random.nextFloat() - 0.5f) * 1 * MapData.MAP_DIM_SIZE / 200 - boundsX,
-              Math.signum(this.random.nextFloat() - 0.5f) * 1 * MapData.MAP_DIM_SIZE / 70 + MapData.MAP_DIM_SIZE - boundsY
+              Math.signum(random.nextFloat() - 0.5f) * 1 * MapData.MAP_DIM_SIZE / 200 - boundsX,
+              Math.signum(random.nextFloat() - 0.5f) * 1 * MapData.MAP_DIM_SIZE / 70 + MapData.MAP_DIM_SIZE - boundsY
           )
       );
     }
@@ -117,19 +128,20 @@ public class CaptchaPainter {
   }
 
   private void transform(GlyphVector vector) {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
     int glyphNum = vector.getNumGlyphs();
 
     Point2D prePos = null;
     Rectangle2D preBounds = null;
 
-    double rotateCur = (this.random.nextDouble() - 0.5) * Math.PI / 8;
-    double rotateStep = Math.signum(rotateCur) * (this.random.nextDouble() * 3 * Math.PI / 8 / glyphNum);
-    boolean rotateEnabled = Settings.IMP.MAIN.CAPTCHA_GENERATOR.FONT_ROTATE;
+    double rotateCur = (random.nextDouble() - 0.5) * Math.PI / 8;
+    double rotateStep = Math.signum(rotateCur) * (random.nextDouble() * 3 * Math.PI / 8 / glyphNum);
+    boolean rotateEnabled = this.settings.FONT_ROTATE;
 
     for (int i = 0; i < glyphNum; ++i) {
       if (rotateEnabled) {
         AffineTransform transform = AffineTransform.getRotateInstance(rotateCur);
-        if (this.random.nextDouble() < 0.25) {
+        if (random.nextDouble() < 0.25) {
           rotateStep *= -1;
         }
 
@@ -149,7 +161,7 @@ public class CaptchaPainter {
       } else {
         newPos = new Point2D.Double(
             preBounds.getMaxX() + posX - boundsX - Math.min(preBounds.getWidth(), bounds.getWidth())
-                * (this.random.nextDouble() / 20 + (rotateEnabled ? 0.27 : 0.1)),
+                * (random.nextDouble() / 20 + (rotateEnabled ? 0.27 : 0.1)),
             posY
         );
       }
@@ -160,18 +172,19 @@ public class CaptchaPainter {
   }
 
   private BufferedImage postProcess(BufferedImage image) {
-    if (Settings.IMP.MAIN.CAPTCHA_GENERATOR.FONT_RIPPLE) {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    if (this.settings.FONT_RIPPLE) {
       Rippler.AxisConfig vertical = new Rippler.AxisConfig(
-          this.random.nextDouble() * 2 * Math.PI, (1 + this.random.nextDouble() * 2) * Math.PI, image.getHeight() / 10.0
+          random.nextDouble() * 2 * Math.PI, (1 + random.nextDouble() * 2) * Math.PI, image.getHeight() / 10.0
       );
       Rippler.AxisConfig horizontal = new Rippler.AxisConfig(
-          this.random.nextDouble() * 2 * Math.PI, (2 + this.random.nextDouble() * 2) * Math.PI, image.getWidth() / 100.0
+          random.nextDouble() * 2 * Math.PI, (2 + random.nextDouble() * 2) * Math.PI, image.getWidth() / 100.0
       );
 
       image = new Rippler(vertical, horizontal).filter(image, this.createImage());
     }
 
-    if (Settings.IMP.MAIN.CAPTCHA_GENERATOR.FONT_BLUR) {
+    if (this.settings.FONT_BLUR) {
       float[] blurArray = new float[9];
       this.fillBlurArray(blurArray);
 
@@ -186,9 +199,10 @@ public class CaptchaPainter {
   }
 
   private void fillBlurArray(float[] blurArray) {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
     float sum = 0;
     for (int i = 0; i < blurArray.length; ++i) {
-      blurArray[i] = this.random.nextFloat();
+      blurArray[i] = random.nextFloat();
       sum += blurArray[i];
     }
 
@@ -198,22 +212,23 @@ public class CaptchaPainter {
   }
 
   private void addCurve(Graphics2D graphics) {
-    if (Settings.IMP.MAIN.CAPTCHA_GENERATOR.CURVE_SIZE != 0) {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    if (this.settings.CURVE_SIZE != 0) {
       CubicCurve2D cubicCurve;
 
-      if (this.random.nextBoolean()) {
+      if (random.nextBoolean()) {
         cubicCurve = new CubicCurve2D.Double(
-            this.random.nextDouble() * MapData.MAP_DIM_SIZE, this.random.nextDouble() * 0.1 * MapData.MAP_DIM_SIZE,
-            this.random.nextDouble() * MapData.MAP_DIM_SIZE, this.random.nextDouble() * MapData.MAP_DIM_SIZE,
-            this.random.nextDouble() * MapData.MAP_DIM_SIZE, this.random.nextDouble() * MapData.MAP_DIM_SIZE,
-            this.random.nextDouble() * MapData.MAP_DIM_SIZE, (0.8 + 0.1 * this.random.nextDouble()) * MapData.MAP_DIM_SIZE
+            random.nextDouble() * MapData.MAP_DIM_SIZE, random.nextDouble() * 0.1 * MapData.MAP_DIM_SIZE,
+            random.nextDouble() * MapData.MAP_DIM_SIZE, random.nextDouble() * MapData.MAP_DIM_SIZE,
+            random.nextDouble() * MapData.MAP_DIM_SIZE, random.nextDouble() * MapData.MAP_DIM_SIZE,
+            random.nextDouble() * MapData.MAP_DIM_SIZE, (0.8 + 0.1 * random.nextDouble()) * MapData.MAP_DIM_SIZE
         );
       } else {
         cubicCurve = new CubicCurve2D.Double(
-            this.random.nextDouble() * 0.1 * MapData.MAP_DIM_SIZE, this.random.nextDouble() * MapData.MAP_DIM_SIZE,
-            this.random.nextDouble() * MapData.MAP_DIM_SIZE, this.random.nextDouble() * MapData.MAP_DIM_SIZE,
-            this.random.nextDouble() * MapData.MAP_DIM_SIZE, this.random.nextDouble() * MapData.MAP_DIM_SIZE,
-            (0.8 + 0.1 * this.random.nextDouble()) * MapData.MAP_DIM_SIZE, this.random.nextDouble() * MapData.MAP_DIM_SIZE
+            random.nextDouble() * 0.1 * MapData.MAP_DIM_SIZE, random.nextDouble() * MapData.MAP_DIM_SIZE,
+            random.nextDouble() * MapData.MAP_DIM_SIZE, random.nextDouble() * MapData.MAP_DIM_SIZE,
+            random.nextDouble() * MapData.MAP_DIM_SIZE, random.nextDouble() * MapData.MAP_DIM_SIZE,
+            (0.8 + 0.1 * random.nextDouble()) * MapData.MAP_DIM_SIZE, random.nextDouble() * MapData.MAP_DIM_SIZE
         );
       }
 
@@ -223,7 +238,7 @@ public class CaptchaPainter {
       Point2D.Double prev = new Point2D.Double(coords[0], coords[1]);
       pathIterator.next();
 
-      graphics.setStroke(new BasicStroke(Settings.IMP.MAIN.CAPTCHA_GENERATOR.CURVE_SIZE));
+      graphics.setStroke(new BasicStroke(this.settings.CURVE_SIZE));
 
       while (!pathIterator.isDone()) {
         int currentSegment = pathIterator.currentSegment(coords);
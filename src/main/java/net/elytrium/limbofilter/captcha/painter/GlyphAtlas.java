@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2021 - 2022 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limbofilter.captcha.painter;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.font.FontRenderContext;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.util.concurrent.ThreadLocalRandom;
+import net.elytrium.limboapi.api.protocol.packets.data.MapData;
+import net.elytrium.limbofilter.Settings;
+
+/**
+ * Every pattern character of one font, pre-rasterized into alpha masks at several rotations and scales.
+ * Captchas are composed by blending the masks into the image raster, without the Java2D text layout and rasterization per image.
+ */
+public class GlyphAtlas {
+
+  private static final int ROTATIONS = 9;
+  private static final double MAX_ROTATION = Math.PI / 6;
+  private static final double[] SCALES = {0.6, 0.7, 0.8, 0.9, 1.0};
+  private static final int PADDING = 2;
+
+  private final Settings.MAIN.CAPTCHA_GENERATOR settings;
+  private final String pattern;
+  private final Glyph[][][] glyphs;
+
+  public GlyphAtlas(Font font, Settings.MAIN.CAPTCHA_GENERATOR settings) {
+    this.settings = settings;
+    this.pattern = settings.PATTERN;
+
+    FontRenderContext context = new FontRenderContext(null, true, true);
+    Shape[] shapes = new Shape[this.pattern.length()];
+    double widthSum = 0;
+    double maxHeight = 1;
+    for (int i = 0; i < shapes.length; ++i) {
+      shapes[i] = font.createGlyphVector(context, String.valueOf(this.pattern.charAt(i))).getGlyphOutline(0);
+      Rectangle bounds = shapes[i].getBounds();
+      widthSum += bounds.getWidth();
+      maxHeight = Math.max(maxHeight, bounds.getHeight());
+    }
+
+    // Same proportions as the Java2D layout: the text fills ~92% of the width and ~75% of the height of the map.
+    int length = Math.max(1, settings.LENGTH);
+    double overlap = settings.FONT_ROTATE ? 0.295 : 0.125;
+    double textWidth = Math.max(1, widthSum / shapes.length) * (length - (length - 1) * overlap);
+    double scaleX = MapData.MAP_DIM_SIZE * (settings.FONT_OUTLINE ? 0.9 : 0.93) / textWidth;
+    double scaleY = MapData.MAP_DIM_SIZE * (settings.FONT_OUTLINE ? 0.7 : 0.77) / maxHeight;
+
+    int rotations = settings.FONT_ROTATE ? ROTATIONS : 1;
+    this.glyphs = new Glyph[shapes.length][rotations][SCALES.length];
+    for (int i = 0; i < shapes.length; ++i) {
+      for (int rotation = 0; rotation < rotations; ++rotation) {
+        for (int scale = 0; scale < SCALES.length; ++scale) {
+          AffineTransform transform = AffineTransform.getRotateInstance(rotations == 1 ? 0 : this.getAngle(rotation));
+          transform.scale(scaleX * SCALES[scale], scaleY * SCALES[scale]);
+          this.glyphs[i][rotation][scale] = new Glyph(transform.createTransformedShape(shapes[i]), settings.FONT_OUTLINE);
+        }
+      }
+    }
+  }
+
+  public BufferedImage compose(String text, Color foreground) {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int rotations = this.glyphs.length == 0 ? 1 : this.glyphs[0].length;
+
+    int[] indices = new int[text.length()];
+    int[] angles = new int[text.length()];
+    double rotateCur = (random.nextDouble() - 0.5) * Math.PI / 8;
+    double rotateStep = Math.signum(rotateCur) * (random.nextDouble() * 3 * Math.PI / 8 / indices.length);
+    for (int i = 0; i < indices.length; ++i) {
+      indices[i] = this.pattern.indexOf(text.charAt(i));
+      if (indices[i] == -1) {
+        throw new IllegalArgumentException("Character " + text.charAt(i) + " is not in the pattern");
+      }
+
+      angles[i] = rotations == 1 ? 0 : this.getRotation(rotateCur);
+      if (random.nextDouble() < 0.25) {
+        rotateStep *= -1;
+      }
+
+      rotateCur += rotateStep;
+    }
+
+    // Rotated glyphs are wider, so the largest scale that fits the map is used.
+    Glyph[] line = new Glyph[indices.length];
+    int[] positions = new int[indices.length];
+    int top;
+    int bottom;
+    int cursor;
+    int scale = SCALES.length - 1 - random.nextInt(2);
+    double overlap = this.settings.FONT_ROTATE ? 0.27 : 0.1;
+    do {
+      top = Integer.MAX_VALUE;
+      bottom = Integer.MIN_VALUE;
+      cursor = 0;
+      for (int i = 0; i < line.length; ++i) {
+        Glyph glyph = this.glyphs[indices[i]][angles[i]][scale];
+        if (i != 0) {
+          cursor -= (int) (Math.min(line[i - 1].width, glyph.width) * (random.nextDouble() / 20 + overlap));
+        }
+
+        line[i] = glyph;
+        positions[i] = cursor;
+        cursor += glyph.width;
+        top = Math.min(top, glyph.offsetY);
+        bottom = Math.max(bottom, glyph.offsetY + glyph.height);
+      }
+    } while (cursor > MapData.MAP_DIM_SIZE && scale-- > 0);
+
+    BufferedImage image = new BufferedImage(MapData.MAP_DIM_SIZE, MapData.MAP_DIM_SIZE, BufferedImage.TYPE_INT_ARGB);
+    int[] raster = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    int rgb = foreground.getRGB() & 0xFFFFFF;
+    int startX = (MapData.MAP_DIM_SIZE - cursor) / 2;
+    int baseline = (MapData.MAP_DIM_SIZE - (bottom - top)) / 2 - top;
+
+    if (this.settings.FONT_OUTLINE) {
+      int outlineX = (random.nextBoolean() ? 1 : -1) * MapData.MAP_DIM_SIZE / 200;
+      int outlineY = (random.nextBoolean() ? 1 : -1) * MapData.MAP_DIM_SIZE / 70;
+      for (int i = 0; i < line.length; ++i) {
+        Glyph glyph = line[i];
+        blend(raster, glyph.outline, glyph.width, glyph.height, startX + positions[i] + outlineX, baseline + glyph.offsetY + outlineY, rgb);
+      }
+    }
+
+    for (int i = 0; i < line.length; ++i) {
+      Glyph glyph = line[i];
+      blend(raster, glyph.mask, glyph.width, glyph.height, startX + positions[i], baseline + glyph.offsetY, rgb);
+    }
+
+    return image;
+  }
+
+  private double getAngle(int rotation) {
+    return -MAX_ROTATION + 2 * MAX_ROTATION * rotation / (ROTATIONS - 1);
+  }
+
+  private int getRotation(double angle) {
+    int rotation = (int) Math.round((angle + MAX_ROTATION) / (2 * MAX_ROTATION) * (ROTATIONS - 1));
+    return Math.max(0, Math.min(ROTATIONS - 1, rotation));
+  }
+
+  public long getMemoryUsage() {
+    long usage = 0;
+    for (Glyph[][] rotations : this.glyphs) {
+      for (Glyph[] scales : rotations) {
+        for (Glyph glyph : scales) {
+          usage += glyph.mask.length + (glyph.outline == null ? 0 : glyph.outline.length);
+        }
+      }
+    }
+
+    return usage;
+  }
+
+  private static void blend(int[] raster, byte[] mask, int width, int height, int x, int y, int rgb) {
+    int fromX = Math.max(0, -x);
+    int toX = Math.min(width, MapData.MAP_DIM_SIZE - x);
+    int fromY = Math.max(0, -y);
+    int toY = Math.min(height, MapData.MAP_DIM_SIZE - y);
+    for (int maskY = fromY; maskY < toY; ++maskY) {
+      int maskOffset = maskY * width;
+      int rasterOffset = (y + maskY) * MapData.MAP_DIM_SIZE + x;
+      for (int maskX = fromX; maskX < toX; ++maskX) {
+        int alpha = mask[maskOffset + maskX] & 0xFF;
+        if (alpha != 0 && alpha > raster[rasterOffset + maskX] >>> 24) {
+          raster[rasterOffset + maskX] = alpha << 24 | rgb;
+        }
+      }
+    }
+  }
+
+  private static class Glyph {
+
+    private final int width;
+    private final int height;
+    private final int offsetY;
+    private final byte[] mask;
+    private final byte[] outline;
+
+    private Glyph(Shape shape, boolean outline) {
+      Rectangle bounds = shape.getBounds();
+      this.width = bounds.width + PADDING * 2;
+      this.height = bounds.height + PADDING * 2;
+      this.offsetY = bounds.y - PADDING;
+
+      AffineTransform translate = AffineTransform.getTranslateInstance(PADDING - bounds.x, PADDING - bounds.y);
+      Shape translated = translate.createTransformedShape(shape);
+      this.mask = rasterize(translated, this.width, this.height, true);
+      this.outline = outline ? rasterize(translated, this.width, this.height, false) : null;
+    }
+
+    private static byte[] rasterize(Shape shape, int width, int height, boolean fill) {
+      BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+      Graphics2D graphics = image.createGraphics();
+      graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+      graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+      graphics.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
+      graphics.setColor(Color.WHITE);
+      if (fill) {
+        graphics.fill(shape);
+      } else {
+        graphics.setStroke(new BasicStroke(2));
+        graphics.draw(shape);
+      }
+
+      graphics.dispose();
+      return ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+    }
+  }
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright (C) 2021 - 2022 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limbofilter.cluster;
+
+import com.google.common.net.HostAndPort;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import net.elytrium.limbofilter.LimboFilter;
+
+/**
+ * UDP transport between the proxies of one fleet. Every datagram is signed with the shared secret.
+ *
+ * <p>Datagram layout: magic, type, sender node id, sequence, timestamp, payload, truncated HMAC-SHA256 of everything before it.
+ * Datagrams with a bad signature, from this node, with a timestamp too far from the local clock, or with a sequence
+ * that was already received from the sender (replays) are dropped.
+ */
+public class ClusterNode implements Closeable {
+
+  public static final int MAX_PAYLOAD_SIZE = 1200;
+
+  private static final int MAGIC = 0x4C464332; // LFC2
+  private static final int HEADER_SIZE = 4 + 1 + 8 + 8 + 8;
+  private static final int MAC_SIZE = 16;
+  private static final long MAX_CLOCK_SKEW = 30000;
+  // Datagrams can be reordered, so a sequence up to this far behind the highest one is still accepted once.
+  private static final int REPLAY_WINDOW = 64;
+  // Older datagrams are rejected by their timestamp, so the sequences of silent senders can be forgotten.
+  private static final long SENDER_EXPIRE_MILLIS = MAX_CLOCK_SKEW * 3;
+
+  private final MessageHandler[] handlers = new MessageHandler[Byte.MAX_VALUE + 1];
+  private final long nodeId = ThreadLocalRandom.current().nextLong();
+  private final AtomicLong sequence = new AtomicLong();
+  // Only accessed by the receive thread.
+  private final Map<Long, ReplayWindow> senders = new HashMap<>();
+  private final List<InetSocketAddress> peers = new ArrayList<>();
+  private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(task -> new Thread(task, "limbofilter-cluster"));
+  private final DatagramChannel channel;
+  private final Mac sendMac;
+  private final Mac receiveMac;
+
+  private volatile boolean closed;
+
+  public ClusterNode(String bindAddress, int port, List<String> peers, String secret) throws IOException {
+    for (String peer : peers) {
+      try {
+        HostAndPort hostAndPort = HostAndPort.fromString(peer.strip());
+        this.peers.add(new InetSocketAddress(hostAndPort.getHost(), hostAndPort.getPortOrDefault(port)));
+      } catch (IllegalArgumentException e) {
+        LimboFilter.getLogger().warn("Invalid cluster peer \"" + peer + "\": " + e.getMessage());
+      }
+    }
+
+    try {
+      SecretKeySpec key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256");
+      this.sendMac = Mac.getInstance("HmacSHA256");
+      this.sendMac.init(key);
+      this.receiveMac = Mac.getInstance("HmacSHA256");
+      this.receiveMac.init(key);
+    } catch (GeneralSecurityException e) {
+      throw new IOException(e);
+    }
+
+    this.channel = DatagramChannel.open();
+    this.channel.bind(new InetSocketAddress(bindAddress, port));
+
+    Thread receiveThread = new Thread(this::receive, "limbofilter-cluster-receive");
+    receiveThread.setDaemon(true);
+    receiveThread.start();
+  }
+
+  public void setHandler(byte type, MessageHandler handler) {
+    this.handlers[type] = handler;
+  }
+
+  /**
+   * Signs the payload and sends it to every peer.
+   *
+   * @param payload at most {@link #MAX_PAYLOAD_SIZE} bytes, from position to limit
+   */
+  public void broadcast(byte type, ByteBuffer payload) {
+    if (this.closed || this.peers.isEmpty()) {
+      return;
+    }
+
+    ByteBuffer datagram = ByteBuffer.allocate(HEADER_SIZE + payload.remaining() + MAC_SIZE);
+    datagram.putInt(MAGIC).put(type).putLong(this.nodeId).putLong(this.sequence.incrementAndGet()).putLong(System.currentTimeMillis()).put(payload);
+
+    synchronized (this.sendMac) {
+      this.sendMac.update(datagram.array(), 0, datagram.position());
+      datagram.put(this.sendMac.doFinal(), 0, MAC_SIZE);
+    }
+
+    datagram.flip();
+    for (InetSocketAddress peer : this.peers) {
+      try {
+        this.channel.send(datagram.duplicate(), peer);
+      } catch (IOException e) {
+        LimboFilter.getLogger().warn("Unable to send the cluster message to " + peer + ": " + e.getMessage());
+      }
+    }
+  }
+
+  private void receive() {
+    ByteBuffer datagram = ByteBuffer.allocate(HEADER_SIZE + MAX_PAYLOAD_SIZE + MAC_SIZE);
+    while (!this.closed) {
+      try {
+        datagram.clear();
+        SocketAddress sender = this.channel.receive(datagram);
+        datagram.flip();
+
+        int length = datagram.limit() - MAC_SIZE;
+        if (length < HEADER_SIZE || datagram.getInt(0) != MAGIC) {
+          continue;
+        }
+
+        this.receiveMac.update(datagram.array(), 0, length);
+        byte[] expected = this.receiveMac.doFinal();
+        byte[] actual = new byte[MAC_SIZE];
+        datagram.position(length);
+        datagram.get(actual);
+        if (!MessageDigest.isEqual(actual, Arrays.copyOf(expected, MAC_SIZE))) {
+          continue;
+        }
+
+        datagram.position(4);
+        byte type = datagram.get();
+        long senderId = datagram.getLong();
+        long sequence = datagram.getLong();
+        long timestamp = datagram.getLong();
+        long now = System.currentTimeMillis();
+        if (senderId == this.nodeId || type < 0 || Math.abs(now - timestamp) > MAX_CLOCK_SKEW || !this.acceptSequence(senderId, sequence, now)) {
+          continue;
+        }
+
+        MessageHandler handler = this.handlers[type];
+        if (handler != null) {
+          handler.handle(senderId, sender, datagram.limit(length).slice());
+        }
+      } catch (ClosedChannelException e) {
+        return;
+      } catch (Throwable t) {
+        if (!this.closed) {
+          LimboFilter.getLogger().warn("Invalid cluster message: " + t);
+        }
+      }
+    }
+  }
+
+  private boolean acceptSequence(long senderId, long sequence, long now) {
+    if (this.senders.size() > 1024) {
+      Iterator<ReplayWindow> iterator = this.senders.values().iterator();
+      while (iterator.hasNext()) {
+        if (now - iterator.next().lastSeen > SENDER_EXPIRE_MILLIS) {
+          iterator.remove();
+        }
+      }
+    }
+
+    ReplayWindow window = this.senders.get(senderId);
+    if (window == null || now - window.lastSeen > SENDER_EXPIRE_MILLIS) {
+      window = new ReplayWindow();
+      this.senders.put(senderId, window);
+    }
+
+    return window.accept(sequence, now);
+  }
+
+  public ScheduledExecutorService getExecutor() {
+    return this.executor;
+  }
+
+  @Override
+  public void close() {
+    this.closed = true;
+    this.executor.shutdownNow();
+    try {
+      this.channel.close();
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  private static class ReplayWindow {
+
+    private long highest;
+    // Bit i is set if the sequence highest - i was received.
+    private long received;
+    private long lastSeen;
+
+    boolean accept(long sequence, long now) {
+      if (sequence > this.highest) {
+        long shift = sequence - this.highest;
+        this.received = shift >= REPLAY_WINDOW ? 1 : (this.received << shift) | 1;
+        this.highest = sequence;
+      } else {
+        long offset = this.highest - sequence;
+        if (offset >= REPLAY_WINDOW || (this.received & (1L << offset)) != 0) {
+          return false;
+        }
+
+        this.received |= 1L << offset;
+      }
+
+      this.lastSeen = now;
+      return true;
+    }
+  }
+
+  public interface MessageHandler {
+
+    void handle(long senderId, SocketAddress sender, ByteBuffer payload);
+  }
+}
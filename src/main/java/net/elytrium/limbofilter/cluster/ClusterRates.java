@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2021 - 2022 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limbofilter.cluster;
+
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import net.elytrium.limbofilter.stats.Statistics;
+
+/**
+ * Aggregates connections and pings rates of the whole fleet for the auto toggles.
+ *
+ * <p>Every second each proxy sends the amount of connections and pings it got during the last second.
+ * Peers keep these deltas in per-second rings, the sums are recalculated once per second,
+ * so the auto toggles only read the last snapshot.
+ */
+public class ClusterRates {
+
+  public static final byte TYPE = 2;
+
+  private final Map<Long, PeerRates> peers = new ConcurrentHashMap<>();
+  private final ClusterNode node;
+  private final Statistics statistics;
+  private volatile int cpsWindow;
+  private volatile int ppsWindow;
+  private volatile long staleMillis;
+
+  private long lastConnections;
+  private long lastPings;
+  private volatile long remoteConnections;
+  private volatile long remotePings;
+
+  public ClusterRates(ClusterNode node, Statistics statistics, int cpsWindow, int ppsWindow, long staleMillis) {
+    this.node = node;
+    this.statistics = statistics;
+    this.setWindows(cpsWindow, ppsWindow, staleMillis);
+    this.lastConnections = statistics.getConnectionsCounter();
+    this.lastPings = statistics.getPingsCounter();
+
+    this.node.setHandler(TYPE, this::receive);
+    this.node.getExecutor().scheduleAtFixedRate(this::tick, 1, 1, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Applies new windows on reload, the collected peer rates are kept.
+   */
+  public void setWindows(int cpsWindow, int ppsWindow, long staleMillis) {
+    this.cpsWindow = Math.max(1, cpsWindow);
+    this.ppsWindow = Math.max(1, ppsWindow);
+    this.staleMillis = staleMillis;
+  }
+
+  private void tick() {
+    long connections = this.statistics.getConnectionsCounter();
+    long pings = this.statistics.getPingsCounter();
+    ByteBuffer payload = ByteBuffer.allocate(8);
+    payload.putInt((int) Math.min(Integer.MAX_VALUE, connections - this.lastConnections));
+    payload.putInt((int) Math.min(Integer.MAX_VALUE, pings - this.lastPings));
+    this.lastConnections = connections;
+    this.lastPings = pings;
+    // Sent even if nothing has changed, so peers know that we are alive.
+    this.node.broadcast(TYPE, payload.flip());
+
+    long now = System.currentTimeMillis();
+    long second = now / 1000;
+    int cpsWindow = this.cpsWindow;
+    int ppsWindow = this.ppsWindow;
+    long staleMillis = this.staleMillis;
+    long connectionsSum = 0;
+    long pingsSum = 0;
+    for (Map.Entry<Long, PeerRates> peer : this.peers.entrySet()) {
+      PeerRates rates = peer.getValue();
+      if (now - rates.lastSeen > staleMillis) {
+        this.peers.remove(peer.getKey());
+      } else {
+        rates.ensureWindow(Math.max(cpsWindow, ppsWindow));
+        connectionsSum += rates.sumConnections(second, cpsWindow);
+        pingsSum += rates.sumPings(second, ppsWindow);
+      }
+    }
+
+    this.remoteConnections = connectionsSum;
+    this.remotePings = pingsSum;
+  }
+
+  private void receive(long senderId, SocketAddress sender, ByteBuffer payload) {
+    int connections = payload.getInt();
+    int pings = payload.getInt();
+    this.peers.computeIfAbsent(senderId, id -> new PeerRates(Math.max(this.cpsWindow, this.ppsWindow)))
+        .add(System.currentTimeMillis(), connections, pings);
+  }
+
+  /**
+   * @return connections of the other proxies during the CPS unit of time
+   */
+  public long getRemoteConnections() {
+    return this.remoteConnections;
+  }
+
+  /**
+   * @return pings of the other proxies during the PPS unit of time
+   */
+  public long getRemotePings() {
+    return this.remotePings;
+  }
+
+  private static class PeerRates {
+
+    private long[] seconds;
+    private int[] connections;
+    private int[] pings;
+    private volatile long lastSeen;
+
+    PeerRates(int window) {
+      this.seconds = new long[window];
+      this.connections = new int[window];
+      this.pings = new int[window];
+    }
+
+    /**
+     * Grows the rings if the window was increased on reload, the seconds already collected are kept.
+     */
+    synchronized void ensureWindow(int window) {
+      if (this.seconds.length >= window) {
+        return;
+      }
+
+      long[] seconds = new long[window];
+      int[] connections = new int[window];
+      int[] pings = new int[window];
+      for (int i = 0; i < this.seconds.length; ++i) {
+        int index = (int) (this.seconds[i] % window);
+        seconds[index] = this.seconds[i];
+        connections[index] = this.connections[i];
+        pings[index] = this.pings[i];
+      }
+
+      this.seconds = seconds;
+      this.connections = connections;
+      this.pings = pings;
+    }
+
+    synchronized void add(long now, int connections, int pings) {
+      long second = now / 1000;
+      int index = (int) (second % this.seconds.length);
+      if (this.seconds[index] != second) {
+        this.seconds[index] = second;
+        this.connections[index] = 0;
+        this.pings[index] = 0;
+      }
+
+      this.connections[index] += connections;
+      this.pings[index] += pings;
+      this.lastSeen = now;
+    }
+
+    synchronized long sumConnections(long second, int window) {
+      return this.sum(this.connections, second, window);
+    }
+
+    synchronized long sumPings(long second, int window) {
+      return this.sum(this.pings, second, window);
+    }
+
+    private long sum(int[] values, long second, int window) {
+      long sum = 0;
+      for (int i = 0; i < this.seconds.length; ++i) {
+        if (second - this.seconds[i] < window) {
+          sum += values[i];
+        }
+      }
+
+      return sum;
+    }
+  }
+}
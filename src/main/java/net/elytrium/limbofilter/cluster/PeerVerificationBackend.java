@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2021 - 2022 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limbofilter.cluster;
+
+import java.net.InetAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import net.elytrium.limbofilter.utils.AddressUtils;
+
+/**
+ * Replicates verifications to the other proxies of the fleet. New verifications are queued and sent in batches,
+ * entries contain the remaining time to live instead of the expiration time to not depend on the peers clocks.
+ *
+ * <p>Entry layout: username length, username (UTF-8), address (IPv6 form), time to live in milliseconds.
+ */
+public class PeerVerificationBackend implements VerificationBackend {
+
+  public static final byte TYPE = 1;
+
+  private static final int MAX_USERNAME_LENGTH = 64;
+
+  private final Queue<Verification> pending = new ConcurrentLinkedQueue<>();
+  private final ClusterNode node;
+  private final Listener listener;
+
+  private long flushIntervalMillis;
+  private ScheduledFuture<?> flushTask;
+
+  public PeerVerificationBackend(ClusterNode node, Listener listener, long flushIntervalMillis) {
+    this.node = node;
+    this.listener = listener;
+
+    this.node.setHandler(TYPE, this::receive);
+    this.setFlushInterval(flushIntervalMillis);
+  }
+
+  /**
+   * Reschedules the flush task if the interval has changed on reload.
+   */
+  public synchronized void setFlushInterval(long flushIntervalMillis) {
+    if (this.flushTask != null) {
+      if (this.flushIntervalMillis == flushIntervalMillis) {
+        return;
+      }
+
+      this.flushTask.cancel(false);
+    }
+
+    this.flushIntervalMillis = flushIntervalMillis;
+    this.flushTask = this.node.getExecutor().scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public void publish(String username, InetAddress address, long checkTime) {
+    byte[] usernameBytes = username.getBytes(StandardCharsets.UTF_8);
+    if (usernameBytes.length <= MAX_USERNAME_LENGTH) {
+      this.pending.add(new Verification(usernameBytes, address, checkTime));
+    }
+  }
+
+  private void flush() {
+    ByteBuffer payload = ByteBuffer.allocate(ClusterNode.MAX_PAYLOAD_SIZE);
+    long now = System.currentTimeMillis();
+    Verification verification;
+    while ((verification = this.pending.poll()) != null) {
+      if (payload.remaining() < 1 + verification.username.length + 16 + 8) {
+        this.node.broadcast(TYPE, payload.flip());
+        payload.clear();
+      }
+
+      payload.put((byte) verification.username.length);
+      payload.put(verification.username);
+      payload.putLong(AddressUtils.getHigh(verification.address));
+      payload.putLong(AddressUtils.getLow(verification.address));
+      payload.putLong(Math.max(0, verification.checkTime - now));
+    }
+
+    if (payload.position() != 0) {
+      this.node.broadcast(TYPE, payload.flip());
+    }
+  }
+
+  private void receive(long senderId, SocketAddress sender, ByteBuffer payload) {
+    long now = System.currentTimeMillis();
+    while (payload.hasRemaining()) {
+      byte[] username = new byte[payload.get() & 0xFF];
+      payload.get(username);
+      InetAddress address = AddressUtils.toInetAddress(payload.getLong(), payload.getLong());
+      long timeToLive = payload.getLong();
+      if (timeToLive > 0) {
+        this.listener.onVerified(new String(username, StandardCharsets.UTF_8), address, now + timeToLive);
+      }
+    }
+  }
+
+  @Override
+  public void close() {
+    this.flush();
+  }
+
+  private static class Verification {
+
+    private final byte[] username;
+    private final InetAddress address;
+    private final long checkTime;
+
+    private Verification(byte[] username, InetAddress address, long checkTime) {
+      this.username = username;
+      this.address = address;
+      this.checkTime = checkTime;
+    }
+  }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2021 - 2022 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limbofilter.cluster;
+
+import java.net.InetAddress;
+
+/**
+ * Where verifications are shared. Lookups are always served from the local cache of LimboFilter,
+ * backends only propagate new verifications to it and from it.
+ */
+public interface VerificationBackend {
+
+  VerificationBackend LOCAL = new VerificationBackend() {
+
+    @Override
+    public void publish(String username, InetAddress address, long checkTime) {
+
+    }
+
+    @Override
+    public void close() {
+
+    }
+  };
+
+  /**
+   * Called on the check path, must not block.
+   *
+   * @param checkTime the time when the verification expires
+   */
+  void publish(String username, InetAddress address, long checkTime);
+
+  void close();
+
+  interface Listener {
+
+    void onVerified(String username, InetAddress address, long checkTime);
+  }
+}
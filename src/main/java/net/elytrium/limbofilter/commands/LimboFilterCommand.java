@@ -20,20 +20,37 @@ package net.elytrium.limbofilter.commands;
 import com.google.common.collect.ImmutableList;
 import com.velocitypowered.api.command.CommandSource;
 import com.velocitypowered.api.command.SimpleCommand;
+import com.velocitypowered.api.network.ProtocolVersion;
 import com.velocitypowered.api.proxy.Player;
 import com.velocitypowered.api.proxy.ProxyServer;
 import com.velocitypowered.api.scheduler.ScheduledTask;
+import java.io.IOException;
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import net.elytrium.java.commons.mc.serialization.Serializer;
+import net.elytrium.limbofilter.FilterGeneration;
 import net.elytrium.limbofilter.LimboFilter;
 import net.elytrium.limbofilter.Settings;
+import net.elytrium.limbofilter.cache.captcha.CachedCaptcha;
+import net.elytrium.limbofilter.cache.captcha.CaptchaFootprint;
+import net.elytrium.limbofilter.cache.captcha.CaptchaPools;
+import net.elytrium.limbofilter.captcha.CaptchaTier;
+import net.elytrium.limbofilter.handler.BotFilterSessionHandler;
+import net.elytrium.limbofilter.protocol.FrameValidator;
+import net.elytrium.limbofilter.stats.HeavyHitters;
 import net.elytrium.limbofilter.stats.Statistics;
+import net.elytrium.limbofilter.stats.VerdictCounters;
+import net.elytrium.limbofilter.stats.VerdictReason;
+import net.elytrium.limbofilter.stats.audit.AuditLog;
+import net.elytrium.limbofilter.stats.audit.AuditQuery;
+import net.elytrium.limbofilter.stats.audit.AuditRecord;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.format.NamedTextColor;
 
@@ -57,11 +74,39 @@ public class LimboFilterCommand implements SimpleCommand {
           Component.text("  /limbofilter reload", NamedTextColor.GREEN),
           Component.text(" - ", NamedTextColor.DARK_GRAY),
           Component.text("Reload config.", NamedTextColor.YELLOW)
+      ),
+      "audit", Component.textOfChildren(
+          Component.text("  /limbofilter audit", NamedTextColor.GREEN),
+          Component.text(" - ", NamedTextColor.DARK_GRAY),
+          Component.text("Search the verdict audit log.", NamedTextColor.YELLOW)
+      ),
+      "verdicts", Component.textOfChildren(
+          Component.text("  /limbofilter verdicts", NamedTextColor.GREEN),
+          Component.text(" - ", NamedTextColor.DARK_GRAY),
+          Component.text("Show verdicts by reason, protocol version and check state.", NamedTextColor.YELLOW)
+      ),
+      "top", Component.textOfChildren(
+          Component.text("  /limbofilter top", NamedTextColor.GREEN),
+          Component.text(" - ", NamedTextColor.DARK_GRAY),
+          Component.text("Show the subnets and networks with the most connections and failures in the last minute.", NamedTextColor.YELLOW)
+      ),
+      "memory", Component.textOfChildren(
+          Component.text("  /limbofilter memory", NamedTextColor.GREEN),
+          Component.text(" - ", NamedTextColor.DARK_GRAY),
+          Component.text("Show the memory used by the captcha pools.", NamedTextColor.YELLOW)
       )
   );
   private static final Component AVAILABLE_SUBCOMMANDS_MESSAGE = Component.text("Available subcommands:", NamedTextColor.WHITE);
   private static final Component NO_AVAILABLE_SUBCOMMANDS_MESSAGE = Component.text("There is no available subcommands for you.", NamedTextColor.WHITE);
 
+  private static final List<BotFilterSessionHandler.CheckState> VERDICT_STATES = new ArrayList<>();
+
+  static {
+    VERDICT_STATES.addAll(List.of(BotFilterSessionHandler.CheckState.values()));
+    // Verdicts given before the check has started.
+    VERDICT_STATES.add(null);
+  }
+
   private static ScheduledTask STATS_TASK;
 
   private final LimboFilter plugin;
@@ -116,16 +161,32 @@ public class LimboFilterCommand implements SimpleCommand {
     CommandSource source = invocation.source();
     String[] args = invocation.arguments();
 
+    if (args.length >= 1 && args[0].equalsIgnoreCase("audit") && source.hasPermission("limbofilter.admin.audit")) {
+      this.searchAuditLog(source, args);
+      return;
+    }
+
+    if (args.length >= 1 && args[0].equalsIgnoreCase("verdicts") && source.hasPermission("limbofilter.admin.verdicts")) {
+      this.showVerdicts(source, args);
+      return;
+    }
+
+    if (args.length >= 1 && args[0].equalsIgnoreCase("top") && source.hasPermission("limbofilter.admin.top")) {
+      this.showTop(source, args);
+      return;
+    }
+
     if (args.length == 1) {
       String command = args[0];
       if (command.equalsIgnoreCase("reload") && source.hasPermission("limbofilter.admin.reload")) {
-        try {
-          this.plugin.reload();
-          source.sendMessage(this.reload);
-        } catch (Exception e) {
-          e.printStackTrace();
-          source.sendMessage(this.reloadFailed);
-        }
+        this.plugin.reload().whenComplete((generation, throwable) -> {
+          if (throwable == null) {
+            source.sendMessage(this.reload);
+          } else {
+            throwable.printStackTrace();
+            source.sendMessage(this.reloadFailed);
+          }
+        });
 
         return;
       } else if (command.equalsIgnoreCase("stats") && source.hasPermission("limbofilter.admin.stats")) {
@@ -143,6 +204,9 @@ public class LimboFilterCommand implements SimpleCommand {
           source.sendMessage(this.createStatsComponent(-1));
         }
 
+        return;
+      } else if (command.equalsIgnoreCase("memory") && source.hasPermission("limbofilter.admin.memory")) {
+        this.showMemory(source);
         return;
       }
     }
@@ -150,6 +214,205 @@ public class LimboFilterCommand implements SimpleCommand {
     this.showHelp(source);
   }
 
+  private void showTop(CommandSource source, String[] args) {
+    Serializer serializer = LimboFilter.getSerializer();
+    Settings.MAIN.STRINGS strings = Settings.IMP.MAIN.STRINGS;
+    int limit = 5;
+    if (args.length == 2) {
+      try {
+        limit = Integer.parseInt(args[1]);
+      } catch (NumberFormatException e) {
+        limit = 0;
+      }
+    }
+
+    if (args.length > 2 || limit <= 0) {
+      source.sendMessage(serializer.deserialize(strings.TOP_USAGE));
+      return;
+    }
+
+    HeavyHitters heavyHitters = this.plugin.getHeavyHitters();
+    for (HeavyHitters.Metric metric : HeavyHitters.Metric.values()) {
+      this.showTop(source, strings.TOP_SUBNETS, metric, heavyHitters.getTopSubnets(metric, limit));
+      this.showTop(source, strings.TOP_NETWORKS, metric, heavyHitters.getTopNetworks(metric, limit));
+    }
+  }
+
+  private void showTop(CommandSource source, String header, HeavyHitters.Metric metric, List<HeavyHitters.Entry> entries) {
+    Serializer serializer = LimboFilter.getSerializer();
+    source.sendMessage(serializer.deserialize(MessageFormat.format(header, metric.name().toLowerCase(Locale.ROOT))));
+    if (entries.isEmpty()) {
+      source.sendMessage(serializer.deserialize(Settings.IMP.MAIN.STRINGS.TOP_EMPTY));
+    }
+
+    for (HeavyHitters.Entry entry : entries) {
+      source.sendMessage(serializer.deserialize(MessageFormat.format(Settings.IMP.MAIN.STRINGS.TOP_ENTRY, entry.getName(), entry.getCount())));
+    }
+  }
+
+  private void showMemory(CommandSource source) {
+    Serializer serializer = LimboFilter.getSerializer();
+    Settings.MAIN.STRINGS strings = Settings.IMP.MAIN.STRINGS;
+    FilterGeneration generation = this.plugin.getGeneration();
+    if (generation == null) {
+      return;
+    }
+
+    CaptchaPools pools = generation.getCaptchaPools();
+    String budget = pools.getMemoryBudget();
+    Runtime runtime = Runtime.getRuntime();
+    source.sendMessage(serializer.deserialize(MessageFormat.format(
+        strings.MEMORY_SUMMARY,
+        CaptchaFootprint.format(pools.getTotalBytes()),
+        budget.isEmpty() ? "-" : budget,
+        CaptchaFootprint.format(runtime.totalMemory() - runtime.freeMemory()),
+        CaptchaFootprint.format(runtime.maxMemory())
+    )));
+
+    for (CaptchaTier tier : CaptchaTier.values()) {
+      CachedCaptcha pool = pools.getPool(tier);
+      if (pool != null) {
+        source.sendMessage(serializer.deserialize(MessageFormat.format(
+            strings.MEMORY_POOL,
+            tier,
+            String.valueOf(pool.getCount()),
+            pool.isPrepared() ? "prepared" : "raw",
+            CaptchaFootprint.format(pool.getTotalBytes()),
+            CaptchaFootprint.format(pool.getCanvasBytes()),
+            CaptchaFootprint.format(pool.getColumnsBytes()),
+            CaptchaFootprint.format(pool.getPreparedBytes()),
+            pools.getSizing(tier)
+        )));
+      }
+    }
+  }
+
+  private void showVerdicts(CommandSource source, String[] args) {
+    Serializer serializer = LimboFilter.getSerializer();
+    Settings.MAIN.STRINGS strings = Settings.IMP.MAIN.STRINGS;
+    Statistics statistics = this.plugin.getStatistics();
+    VerdictCounters.Snapshot snapshot = statistics.getVerdicts().snapshot();
+
+    if (args.length == 2) {
+      VerdictReason reason;
+      try {
+        reason = VerdictReason.valueOf(args[1].toUpperCase(Locale.ROOT));
+      } catch (IllegalArgumentException e) {
+        source.sendMessage(serializer.deserialize(strings.VERDICTS_USAGE));
+        return;
+      }
+
+      source.sendMessage(serializer.deserialize(MessageFormat.format(strings.AUDIT_REASON, reason, snapshot.get(reason))));
+      if (reason == VerdictReason.USERNAME_PATTERN) {
+        statistics.getUsernameMatches().forEach((pattern, matches) ->
+            source.sendMessage(serializer.deserialize(MessageFormat.format(strings.VERDICTS_CELL, "pattern", pattern, matches.sum())))
+        );
+      } else if (reason == VerdictReason.INVALID_FRAME) {
+        for (FrameValidator.Rule rule : FrameValidator.Rule.values()) {
+          source.sendMessage(serializer.deserialize(MessageFormat.format(
+              strings.VERDICTS_CELL, "rule", rule.getDescription(), statistics.getFrameRejections(rule)
+          )));
+        }
+      }
+      for (ProtocolVersion version : ProtocolVersion.values()) {
+        for (BotFilterSessionHandler.CheckState state : VERDICT_STATES) {
+          long count = snapshot.get(reason, version, state);
+          if (count != 0) {
+            source.sendMessage(serializer.deserialize(MessageFormat.format(
+                strings.VERDICTS_CELL, version.getVersionIntroducedIn(), state == null ? "-" : state, count
+            )));
+          }
+        }
+      }
+      return;
+    } else if (args.length != 1) {
+      source.sendMessage(serializer.deserialize(strings.VERDICTS_USAGE));
+      return;
+    }
+
+    source.sendMessage(serializer.deserialize(MessageFormat.format(
+        strings.VERDICTS_SUMMARY, statistics.getPassedConnections(), statistics.getBlockedConnections()
+    )));
+    for (VerdictReason reason : VerdictReason.values()) {
+      long count = snapshot.get(reason);
+      if (count == 0) {
+        continue;
+      }
+
+      Map<String, Long> versions = new HashMap<>();
+      for (ProtocolVersion version : ProtocolVersion.values()) {
+        versions.put(version.getVersionIntroducedIn(), snapshot.get(reason, version));
+      }
+      Map<String, Long> states = new HashMap<>();
+      for (BotFilterSessionHandler.CheckState state : VERDICT_STATES) {
+        states.put(state == null ? "-" : state.name(), snapshot.get(reason, state));
+      }
+
+      source.sendMessage(serializer.deserialize(MessageFormat.format(
+          strings.VERDICTS_REASON, reason, count, formatTop(versions), formatTop(states)
+      )));
+    }
+  }
+
+  private static String formatTop(Map<String, Long> counts) {
+    return counts.entrySet().stream()
+        .filter(entry -> entry.getValue() != 0)
+        .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+        .limit(3)
+        .map(entry -> entry.getKey() + " " + entry.getValue())
+        .collect(Collectors.joining(", "));
+  }
+
+  private void searchAuditLog(CommandSource source, String[] args) {
+    Serializer serializer = LimboFilter.getSerializer();
+    Settings.MAIN.STRINGS strings = Settings.IMP.MAIN.STRINGS;
+    AuditLog auditLog = this.plugin.getAuditLog();
+    if (auditLog == null) {
+      source.sendMessage(serializer.deserialize(strings.AUDIT_DISABLED));
+      return;
+    }
+
+    AuditQuery query;
+    try {
+      query = AuditQuery.parse(args, 1, Settings.IMP.MAIN.AUDIT.QUERY_LIMIT);
+    } catch (IllegalArgumentException e) {
+      source.sendMessage(serializer.deserialize(strings.AUDIT_USAGE));
+      return;
+    }
+
+    // Big logs can take a while to scan, so don't block the command thread.
+    this.plugin.getServer().getScheduler().buildTask(this.plugin, () -> {
+      AuditLog.Result result;
+      try {
+        result = auditLog.query(query);
+      } catch (IOException e) {
+        e.printStackTrace();
+        source.sendMessage(serializer.deserialize(strings.AUDIT_FAILED));
+        return;
+      }
+
+      source.sendMessage(serializer.deserialize(MessageFormat.format(strings.AUDIT_SUMMARY, result.getMatched(), result.getBlocked())));
+      for (VerdictReason reason : VerdictReason.values()) {
+        long count = result.getReasonCount(reason);
+        if (count != 0) {
+          source.sendMessage(serializer.deserialize(MessageFormat.format(strings.AUDIT_REASON, reason, count)));
+        }
+      }
+
+      for (AuditRecord record : result.getLatest()) {
+        source.sendMessage(serializer.deserialize(MessageFormat.format(
+            strings.AUDIT_RECORD,
+            record.getTimestamp(),
+            record.getAddress().getHostAddress(),
+            record.getReason(),
+            record.getCheckState(),
+            ProtocolVersion.getProtocolVersion(record.getProtocol()).getVersionIntroducedIn(),
+            record.getDuration()
+        )));
+      }
+    }).schedule();
+  }
+
   private void showHelp(CommandSource source) {
     HELP_MESSAGE.forEach(source::sendMessage);
     List<Map.Entry<String, Component>> availableSubcommands = SUBCOMMANDS.entrySet().stream()
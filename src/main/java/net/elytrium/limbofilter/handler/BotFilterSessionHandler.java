@@ -20,11 +20,11 @@ package net.elytrium.limbofilter.handler;
 import com.velocitypowered.api.network.ProtocolVersion;
 import com.velocitypowered.api.proxy.Player;
 import com.velocitypowered.api.scheduler.ScheduledTask;
+import com.velocitypowered.proxy.connection.client.ConnectedPlayer;
 import com.velocitypowered.proxy.protocol.MinecraftPacket;
 import com.velocitypowered.proxy.protocol.packet.ClientSettings;
 import com.velocitypowered.proxy.protocol.packet.PluginMessage;
 import com.velocitypowered.proxy.protocol.util.PluginMessageUtil;
-import java.text.MessageFormat;
 import java.util.List;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
@@ -35,105 +35,130 @@ import net.elytrium.limboapi.api.chunk.VirtualChunk;
 import net.elytrium.limboapi.api.player.LimboPlayer;
 import net.elytrium.limboapi.api.protocol.PreparedPacket;
 import net.elytrium.limboapi.api.protocol.packets.BuiltInPackets;
+import net.elytrium.limbofilter.FilterGeneration;
 import net.elytrium.limbofilter.LimboFilter;
 import net.elytrium.limbofilter.Settings;
 import net.elytrium.limbofilter.cache.CachedPackets;
 import net.elytrium.limbofilter.captcha.CaptchaHolder;
+import net.elytrium.limbofilter.policy.FilterPolicy;
+import net.elytrium.limbofilter.policy.FilterToggle;
+import net.elytrium.limbofilter.policy.NetworkPolicy;
+import net.elytrium.limbofilter.policy.SessionLimiter;
+import net.elytrium.limbofilter.stats.HeavyHitters;
 import net.elytrium.limbofilter.stats.Statistics;
+import net.elytrium.limbofilter.stats.VerdictReason;
+import net.elytrium.limbofilter.stats.audit.AuditLog;
 
 public class BotFilterSessionHandler implements LimboSessionHandler {
 
-  private static final double[] LOADED_CHUNK_SPEED_CACHE = new double[Settings.IMP.MAIN.FALLING_CHECK_TICKS];
-  private static long FALLING_CHECK_TOTAL_TIME;
+  private static final double[] LOADED_CHUNK_SPEED_CACHE = new double[256];
+  private static final CheckState[] CHECK_STATES = CheckState.values();
 
   private final Player proxyPlayer;
   private final ProtocolVersion version;
   private final LimboFilter plugin;
+  private final FilterGeneration generation;
+  private final Settings.MAIN settings;
   private final Statistics statistics;
   private final CachedPackets packets;
+  private final boolean admitted;
+  private final int limitPrefix;
 
-  private final MinecraftPacket fallingCheckPos;
-  private final MinecraftPacket fallingCheckChunk;
-  private final MinecraftPacket fallingCheckView;
+  // Numeric check state lives in the slab, see SessionSlab.
+  private final SessionSlab slab;
+  private final int slot;
+  // Only set if the shared slab is disabled, the sweep covers the shared one.
+  private final ScheduledTask timeoutTask;
 
-  private final int validX;
-  private final int validY;
-  private final int validZ;
-  private final int validTeleportId;
-
-  private double posX;
-  private double posY;
-  private double lastY;
-  private double posZ;
-  private int waitingTeleportId;
-  private boolean onGround;
-
-  private int ticks = 1;
-  private int ignoredTicks;
-
-  private long joinTime;
-  private ScheduledTask filterMainTask;
-
-  private CheckState state;
-  private LimboPlayer player;
+  private volatile LimboPlayer player;
   private Limbo server;
   private String captchaAnswer;
-  private int attempts = Settings.IMP.MAIN.CAPTCHA_ATTEMPTS;
-  private int nonValidPacketsSize;
-  private boolean startedListening;
-  private boolean checkedBySettings;
-  private boolean checkedByBrand;
 
-  public BotFilterSessionHandler(Player proxyPlayer, LimboFilter plugin) {
+  /**
+   * @param generation the generation retained for this session, released when the session ends
+   * @param admitted whether the session holds an admission permit, which is returned when the session ends
+   * @param limitPrefix the prefix returned by {@link SessionLimiter#tryAcquire}, the session is released from the limiter when it ends
+   */
+  public BotFilterSessionHandler(Player proxyPlayer, LimboFilter plugin, FilterGeneration generation, boolean admitted, int limitPrefix) {
     this.proxyPlayer = proxyPlayer;
     this.version = this.proxyPlayer.getProtocolVersion();
     this.plugin = plugin;
+    this.generation = generation;
+    this.settings = generation.getSettings().MAIN;
 
     this.statistics = this.plugin.getStatistics();
-    this.packets = this.plugin.getPackets();
+    this.packets = generation.getPackets();
+    this.admitted = admitted;
+    this.limitPrefix = limitPrefix;
+
+    SessionSlab sharedSlab = plugin.getSessionSlab();
+    SessionSlab slab = sharedSlab;
+    int slot;
+    if (sharedSlab == null) {
+      // The shared slab is disabled, the session gets a slab of its own and its own timeout task.
+      slab = new SessionSlab(1);
+      slot = slab.allocate(this);
+      this.timeoutTask = plugin.getServer().getScheduler().buildTask(plugin, () -> this.sweep(System.currentTimeMillis()))
+          .delay(1, TimeUnit.SECONDS).repeat(1, TimeUnit.SECONDS).schedule();
+    } else {
+      slot = slab.allocate(this);
+      while (slot == -1) {
+        slab = slab.next();
+        if (slab == null) {
+          // The slab was unlinked by the sweep.
+          slab = sharedSlab;
+        }
+        slot = slab.allocate(this);
+      }
+      this.timeoutTask = null;
+    }
+    this.slab = slab;
+    this.slot = slot;
 
     ThreadLocalRandom random = ThreadLocalRandom.current();
-    this.validX = random.nextInt(256, 16384);
+    slab.validX[slot] = random.nextInt(256, 16384);
     // See https://media.discordapp.net/attachments/878241549857738793/915165038464098314/unknown.png
-    this.validY = random.nextInt(256 + (this.version.compareTo(ProtocolVersion.MINECRAFT_1_8) < 0 ? 250 : 0), 512);
-    this.validZ = random.nextInt(256, 16384);
-    this.validTeleportId = random.nextInt(65535);
-
-    this.posX = this.validX;
-    this.posY = this.validY;
-    this.posZ = this.validZ;
-
-    this.state = plugin.checkCpsLimit(Settings.IMP.MAIN.FILTER_AUTO_TOGGLE.CHECK_STATE_TOGGLE)
-        ? CheckState.valueOf(Settings.IMP.MAIN.CHECK_STATE)
-        : CheckState.valueOf(Settings.IMP.MAIN.CHECK_STATE_NON_TOGGLED);
-
-    Settings.MAIN.COORDS coords = Settings.IMP.MAIN.COORDS;
-    this.fallingCheckPos = this.createPlayerPosAndLook(
-        this.plugin.getFactory(),
-        this.validX, this.validY, this.validZ,
-        (float) (this.state == CheckState.CAPTCHA_POSITION ? coords.CAPTCHA_YAW : coords.FALLING_CHECK_YAW),
-        (float) (this.state == CheckState.CAPTCHA_POSITION ? coords.CAPTCHA_PITCH : coords.FALLING_CHECK_PITCH)
-    );
-    this.fallingCheckChunk = this.createChunkData(
-        this.plugin.getFactory(), this.plugin.getFactory().createVirtualChunk(this.validX >> 4, this.validZ >> 4)
-    );
-    this.fallingCheckView = this.createUpdateViewPosition(this.plugin.getFactory(), this.validX, this.validZ);
+    slab.validY[slot] = random.nextInt(256 + (this.version.compareTo(ProtocolVersion.MINECRAFT_1_8) < 0 ? 250 : 0), 512);
+    slab.validZ[slot] = random.nextInt(256, 16384);
+    slab.validTeleportId[slot] = random.nextInt(65535);
+
+    slab.posX[slot] = slab.validX[slot];
+    slab.posY[slot] = slab.validY[slot];
+    slab.posZ[slot] = slab.validZ[slot];
+    slab.ticks[slot] = 1;
+    slab.attempts[slot] = this.settings.CAPTCHA_ATTEMPTS;
+    slab.joinTime[slot] = System.currentTimeMillis();
+
+    NetworkPolicy.Rule rule = generation.getNetworkPolicy().getRule(proxyPlayer.getRemoteAddress().getAddress());
+    if (rule != null && rule.getCheckState() != null) {
+      this.setState(rule.getCheckState());
+    } else {
+      this.setState(plugin.getPolicy().isEngaged(FilterToggle.CHECK_STATE_TOGGLE)
+          ? CheckState.valueOf(this.settings.CHECK_STATE)
+          : CheckState.valueOf(this.settings.CHECK_STATE_NON_TOGGLED));
+    }
   }
 
   @Override
   public void onSpawn(Limbo server, LimboPlayer player) {
     this.server = server;
     this.player = player;
+    this.statistics.addSession();
+    if (!this.checkOwner()) {
+      return;
+    }
 
-    this.joinTime = System.currentTimeMillis();
-    if (this.state == CheckState.ONLY_CAPTCHA) {
+    this.slab.joinTime[this.slot] = System.currentTimeMillis();
+    this.slab.windowStart[this.slot] = this.slab.joinTime[this.slot];
+    CheckState state = this.getState();
+    if (state == CheckState.ONLY_CAPTCHA) {
       this.sendCaptcha();
-    } else if (this.state == CheckState.CAPTCHA_POSITION) {
+    } else if (state == CheckState.CAPTCHA_POSITION) {
       this.sendFallingCheckPackets();
       this.sendCaptcha();
-    } else if (this.state == CheckState.ONLY_POSITION || this.state == CheckState.CAPTCHA_ON_POSITION_FAILED) {
+    } else if (state == CheckState.ONLY_POSITION || state == CheckState.CAPTCHA_ON_POSITION_FAILED) {
       if (this.proxyPlayer.getProtocolVersion().compareTo(ProtocolVersion.MINECRAFT_1_8) >= 0) {
-        if (!Settings.IMP.MAIN.STRINGS.CHECKING_TITLE.isEmpty() && !Settings.IMP.MAIN.STRINGS.CHECKING_SUBTITLE.isEmpty()) {
+        if (!this.settings.STRINGS.CHECKING_TITLE.isEmpty() && !this.settings.STRINGS.CHECKING_SUBTITLE.isEmpty()) {
           this.player.writePacket(this.packets.getCheckingTitle());
         }
       }
@@ -142,212 +167,388 @@ public class BotFilterSessionHandler implements LimboSessionHandler {
     }
 
     this.player.flushPackets();
+  }
+
+  /**
+   * Called by {@link SessionSlab#sweep()} or the own timeout task,
+   * passes the sessions that may have timed out to {@link #checkTimeout} on their event loop, so the slot is only modified by one thread.
+   */
+  void sweep(long now) {
+    // Racy reads, the check is repeated on the event loop.
+    SessionSlab slab = this.slab;
+    int slot = this.slot;
+    Settings.MAIN.PACKET_RATE packetRate = this.settings.PACKET_RATE;
+    if (now - slab.joinTime[slot] > this.getTimeout()
+        || (this.player != null && packetRate.ENABLED && now - slab.windowStart[slot] >= packetRate.WINDOW_MILLIS * 2L)) {
+      ((ConnectedPlayer) this.proxyPlayer).getConnection().eventLoop().execute(() -> this.checkTimeout(now));
+    }
+  }
 
-    this.filterMainTask = this.plugin.getServer().getScheduler().buildTask(this.plugin, () -> {
-      if (System.currentTimeMillis() - this.joinTime > this.getTimeout()) {
-        this.disconnect(this.packets.getTimesUp(), true);
+  private void checkTimeout(long now) {
+    if (!this.slab.isOwner(this.slot, this) || this.hasFlag(SessionSlab.FLAG_CLOSED)) {
+      return;
+    }
+
+    // Verified players waiting in the release queue don't time out.
+    if (this.getState() != CheckState.SUCCESSFUL && now - this.slab.joinTime[this.slot] > this.getTimeout()) {
+      if (this.player == null) {
+        // Never spawned, so onDisconnect won't be called either. If it spawns later, onSpawn closes it.
+        this.statistics.addVerdict(VerdictReason.TIMEOUT, this.version, this.getState());
+        this.writeVerdict(VerdictReason.TIMEOUT);
+        this.release();
+      } else {
+        this.disconnect(this.packets.getTimesUp(), VerdictReason.TIMEOUT);
       }
-    }).delay(1, TimeUnit.SECONDS).repeat(1, TimeUnit.SECONDS).schedule();
+      return;
+    }
+
+    // Silent sessions don't roll their packet rate window, so it is checked here.
+    Settings.MAIN.PACKET_RATE packetRate = this.settings.PACKET_RATE;
+    long elapsed = now - this.slab.windowStart[this.slot];
+    if (this.player != null && packetRate.ENABLED && elapsed >= packetRate.WINDOW_MILLIS * 2L) {
+      this.checkMinPacketRate(now, elapsed);
+    }
+  }
+
+  /**
+   * Counts the packet in the current window of the packet rate envelope, disconnects the player if it is outside the envelope.
+   *
+   * @return false if the packet shouldn't be handled
+   */
+  private boolean checkPacketRate(int[] packets, double maxPerSecond) {
+    if (this.hasFlag(SessionSlab.FLAG_CLOSED)) {
+      return false;
+    }
+
+    Settings.MAIN.PACKET_RATE packetRate = this.settings.PACKET_RATE;
+    if (!packetRate.ENABLED) {
+      return true;
+    }
+
+    SessionSlab slab = this.slab;
+    int slot = this.slot;
+    long now = System.currentTimeMillis();
+    long elapsed = now - slab.windowStart[slot];
+    if (elapsed >= packetRate.WINDOW_MILLIS) {
+      if (!this.checkMinPacketRate(now, elapsed)) {
+        return false;
+      }
+
+      slab.movePackets[slot] = 0;
+      slab.chatPackets[slot] = 0;
+      slab.otherPackets[slot] = 0;
+      slab.windowStart[slot] = now;
+    }
+
+    if (++packets[slot] > maxPerSecond * packetRate.WINDOW_MILLIS / 1000) {
+      this.disconnect(this.packets.getPacketRateKick(), VerdictReason.PACKET_RATE);
+      return false;
+    }
+
+    return true;
+  }
+
+  private boolean checkMinPacketRate(long now, long elapsed) {
+    // The first window includes the world loading, and verified players can idle in the release queue.
+    if (now - this.slab.joinTime[this.slot] < this.settings.PACKET_RATE.WINDOW_MILLIS * 2L || this.getState() == CheckState.SUCCESSFUL) {
+      return true;
+    }
+
+    if (this.slab.movePackets[this.slot] * 1000.0 / elapsed < this.settings.PACKET_RATE.MIN_MOVE) {
+      this.disconnect(this.packets.getPacketRateKick(), VerdictReason.PACKET_RATE);
+      return false;
+    }
+
+    return true;
   }
 
   private void sendFallingCheckPackets() {
-    this.player.writePacket(this.fallingCheckPos);
+    // Sent once per session, so the packets aren't kept in the handler.
+    LimboFactory factory = this.plugin.getFactory();
+    int validX = this.slab.validX[this.slot];
+    int validY = this.slab.validY[this.slot];
+    int validZ = this.slab.validZ[this.slot];
+    Settings.MAIN.COORDS coords = this.settings.COORDS;
+    boolean captchaPosition = this.getState() == CheckState.CAPTCHA_POSITION;
+    this.player.writePacket(this.createPlayerPosAndLook(
+        factory,
+        validX, validY, validZ,
+        (float) (captchaPosition ? coords.CAPTCHA_YAW : coords.FALLING_CHECK_YAW),
+        (float) (captchaPosition ? coords.CAPTCHA_PITCH : coords.FALLING_CHECK_PITCH)
+    ));
 
     ProtocolVersion playerVersion = this.proxyPlayer.getProtocolVersion();
     if (playerVersion.compareTo(ProtocolVersion.MINECRAFT_1_14) >= 0) {
-      this.player.writePacket(this.fallingCheckView);
+      this.player.writePacket(this.createUpdateViewPosition(factory, validX, validZ));
     }
 
     if (playerVersion.compareTo(ProtocolVersion.MINECRAFT_1_17) < 0) {
-      this.player.writePacket(this.fallingCheckChunk);
+      this.player.writePacket(this.createChunkData(factory, factory.createVirtualChunk(validX >> 4, validZ >> 4)));
+    }
+  }
+
+  /**
+   * The slot is released if the session times out before spawning, and can be given to another session afterwards.
+   * Sessions that don't own their slot anymore are closed, so they don't write over the state of the new owner.
+   *
+   * @return whether the session still owns its slot
+   */
+  private boolean checkOwner() {
+    if (this.slab.isOwner(this.slot, this)) {
+      return true;
     }
+
+    if (this.player != null) {
+      this.player.closeWith(this.packets.getTimesUp());
+    }
+
+    return false;
   }
 
   @Override
   public void onMove(double x, double y, double z) {
+    // Movement packets are counted in onGround, which is called for every movement packet, including the ones without a position.
+    if (!this.checkOwner() || this.hasFlag(SessionSlab.FLAG_CLOSED)) {
+      return;
+    }
+
+    SessionSlab slab = this.slab;
+    int slot = this.slot;
+    int validX = slab.validX[slot];
+    int validY = slab.validY[slot];
+    int validZ = slab.validZ[slot];
     if (this.version.compareTo(ProtocolVersion.MINECRAFT_1_8) <= 0
-        && x == this.validX && y == this.validY && z == this.validZ && this.waitingTeleportId == this.validTeleportId) {
-      this.ticks = 1;
-      this.posY = -1;
-      this.waitingTeleportId = -1;
+        && x == validX && y == validY && z == validZ && slab.waitingTeleportId[slot] == slab.validTeleportId[slot]) {
+      slab.ticks[slot] = 1;
+      slab.posY[slot] = -1;
+      slab.waitingTeleportId[slot] = -1;
     }
 
-    this.posX = x;
-    this.lastY = this.posY;
-    this.posY = y;
-    this.posZ = z;
+    slab.posX[slot] = x;
+    slab.lastY[slot] = slab.posY[slot];
+    slab.posY[slot] = y;
+    slab.posZ[slot] = z;
 
-    if (Settings.IMP.MAIN.FALLING_CHECK_DEBUG) {
+    if (this.settings.FALLING_CHECK_DEBUG) {
       this.logPosition();
     }
-    if (!this.startedListening && this.state != CheckState.ONLY_CAPTCHA) {
-      if (this.posX == this.validX && this.posZ == this.validZ) {
-        this.startedListening = true;
+    CheckState state = this.getState();
+    if (!this.hasFlag(SessionSlab.FLAG_STARTED_LISTENING) && state != CheckState.ONLY_CAPTCHA) {
+      if (x == validX && z == validZ) {
+        this.setFlag(SessionSlab.FLAG_STARTED_LISTENING);
       }
-      if (this.nonValidPacketsSize > Settings.IMP.MAIN.NON_VALID_POSITION_XZ_ATTEMPTS) {
-        this.fallingCheckFailed("A lot of non-valid XZ attempts");
+      if (slab.nonValidPacketsSize[slot] > this.settings.NON_VALID_POSITION_XZ_ATTEMPTS) {
+        this.fallingCheckFailed(VerdictReason.FALLING_CHECK_XZ);
         return;
       }
 
-      this.lastY = this.validY;
-      ++this.nonValidPacketsSize;
+      slab.lastY[slot] = validY;
+      ++slab.nonValidPacketsSize[slot];
     }
-    if (this.startedListening && this.state != CheckState.SUCCESSFUL) {
-      if (this.lastY == Settings.IMP.MAIN.COORDS.CAPTCHA_Y || this.onGround) {
+    if (this.hasFlag(SessionSlab.FLAG_STARTED_LISTENING) && state != CheckState.SUCCESSFUL) {
+      double lastY = slab.lastY[slot];
+      if (lastY == this.settings.COORDS.CAPTCHA_Y || this.hasFlag(SessionSlab.FLAG_ON_GROUND)) {
         return;
       }
-      if (this.state == CheckState.ONLY_CAPTCHA) {
-        if (this.lastY != this.posY && this.waitingTeleportId == -1) {
+      if (state == CheckState.ONLY_CAPTCHA) {
+        if (lastY != y && slab.waitingTeleportId[slot] == -1) {
           this.setCaptchaPositionAndDisableFalling();
         }
         return;
       }
-      if (this.lastY - this.posY == 0) {
-        ++this.ignoredTicks;
+      if (lastY - y == 0) {
+        ++slab.ignoredTicks[slot];
         return;
       }
-      if (this.ticks >= Settings.IMP.MAIN.FALLING_CHECK_TICKS) {
-        if (this.state == CheckState.CAPTCHA_POSITION) {
+      if (slab.ticks[slot] >= this.settings.FALLING_CHECK_TICKS) {
+        if (state == CheckState.CAPTCHA_POSITION) {
           this.changeStateToCaptcha();
         } else {
           this.finishCheck();
         }
         return;
       }
-      if (this.ignoredTicks > Settings.IMP.MAIN.NON_VALID_POSITION_Y_ATTEMPTS) {
-        this.fallingCheckFailed("A lot of non-valid Y attempts");
+      if (slab.ignoredTicks[slot] > this.settings.NON_VALID_POSITION_Y_ATTEMPTS) {
+        this.fallingCheckFailed(VerdictReason.FALLING_CHECK_Y);
         return;
       }
-      if ((this.posX != this.validX && this.posZ != this.validZ) || this.checkY()) {
-        this.fallingCheckFailed("Non-valid X, Z or Velocity");
+      if ((x != validX && z != validZ) || this.checkY()) {
+        this.fallingCheckFailed(VerdictReason.FALLING_CHECK_VELOCITY);
         return;
       }
-      PreparedPacket expBuf = this.packets.getExperience().get(this.ticks);
+      PreparedPacket expBuf = this.packets.getExperience().get(slab.ticks[slot]);
       if (expBuf != null) {
         this.player.writePacketAndFlush(expBuf);
       }
 
-      ++this.ticks;
+      ++slab.ticks[slot];
     }
   }
 
-  private void fallingCheckFailed(String reason) {
-    if (Settings.IMP.MAIN.FALLING_CHECK_DEBUG) {
-      LimboFilter.getLogger().info(reason);
+  private void fallingCheckFailed(VerdictReason reason) {
+    if (this.settings.FALLING_CHECK_DEBUG) {
+      LimboFilter.getLogger().info(reason.getDescription());
       this.logPosition();
     }
 
-    if (this.state == CheckState.CAPTCHA_ON_POSITION_FAILED) {
+    if (this.getState() == CheckState.CAPTCHA_ON_POSITION_FAILED) {
       List<PreparedPacket> expList = this.packets.getExperience();
       this.player.writePacketAndFlush(expList.get(expList.size() - 1));
       this.changeStateToCaptcha();
     } else {
-      this.disconnect(this.packets.getFallingCheckFailed(), true);
+      this.disconnect(this.packets.getFallingCheckFailed(), reason);
     }
   }
 
   private void logPosition() {
+    SessionSlab slab = this.slab;
+    int slot = this.slot;
     LimboFilter.getLogger().info(
-        "lastY=" + this.lastY + "; y=" + this.posY + "; diff=" + (this.lastY - this.posY) + "; need=" + getLoadedChunkSpeed(this.ticks)
-        + "; x=" + this.posX + "; z=" + this.posZ + "; validX=" + this.validX  + "; validY=" + this.validY + "; validZ=" + this.validZ
-        + "; ticks=" + this.ticks + "; ignoredTicks=" + this.ignoredTicks + "; state=" + this.state
+        "lastY=" + slab.lastY[slot] + "; y=" + slab.posY[slot] + "; diff=" + (slab.lastY[slot] - slab.posY[slot])
+        + "; need=" + getLoadedChunkSpeed(slab.ticks[slot]) + "; x=" + slab.posX[slot] + "; z=" + slab.posZ[slot]
+        + "; validX=" + slab.validX[slot]  + "; validY=" + slab.validY[slot] + "; validZ=" + slab.validZ[slot]
+        + "; ticks=" + slab.ticks[slot] + "; ignoredTicks=" + slab.ignoredTicks[slot] + "; state=" + this.getState()
     );
   }
 
   private boolean checkY() {
-    return Math.abs(this.lastY - this.posY - getLoadedChunkSpeed(this.ticks)) > Settings.IMP.MAIN.MAX_VALID_POSITION_DIFFERENCE;
+    SessionSlab slab = this.slab;
+    int slot = this.slot;
+    return Math.abs(slab.lastY[slot] - slab.posY[slot] - getLoadedChunkSpeed(slab.ticks[slot])) > this.settings.MAX_VALID_POSITION_DIFFERENCE;
   }
 
   @Override
   public void onGround(boolean onGround) {
-    this.onGround = onGround;
+    if (!this.checkOwner() || !this.checkPacketRate(this.slab.movePackets, this.settings.PACKET_RATE.MAX_MOVE)) {
+      return;
+    }
+
+    if (onGround) {
+      this.setFlag(SessionSlab.FLAG_ON_GROUND);
+    } else {
+      this.clearFlag(SessionSlab.FLAG_ON_GROUND);
+    }
   }
 
   @Override
   public void onTeleport(int teleportId) {
-    if (teleportId == this.waitingTeleportId) {
-      this.ticks = 1;
-      this.posY = -1;
-      this.lastY = -1;
-      this.waitingTeleportId = -1;
+    if (!this.checkOwner() || !this.checkPacketRate(this.slab.otherPackets, this.settings.PACKET_RATE.MAX_OTHER)) {
+      return;
+    }
+
+    SessionSlab slab = this.slab;
+    int slot = this.slot;
+    if (teleportId == slab.waitingTeleportId[slot]) {
+      slab.ticks[slot] = 1;
+      slab.posY[slot] = -1;
+      slab.lastY[slot] = -1;
+      slab.waitingTeleportId[slot] = -1;
     }
   }
 
   @Override
   public void onChat(String message) {
-    if (this.state == CheckState.CAPTCHA_POSITION || this.state == CheckState.ONLY_CAPTCHA) {
+    if (!this.checkOwner() || !this.checkPacketRate(this.slab.chatPackets, this.settings.PACKET_RATE.MAX_CHAT)) {
+      return;
+    }
+
+    CheckState state = this.getState();
+    if (state == CheckState.CAPTCHA_POSITION || state == CheckState.ONLY_CAPTCHA) {
       if (message.equals(this.captchaAnswer)) {
         this.player.writePacketAndFlush(this.packets.getResetSlot());
         this.finishCheck();
-      } else if (--this.attempts != 0) {
+      } else if (--this.slab.attempts[this.slot] != 0) {
         this.sendCaptcha();
       } else {
-        this.disconnect(this.packets.getCaptchaFailed(), true);
+        this.disconnect(this.packets.getCaptchaFailed(), VerdictReason.CAPTCHA);
       }
     }
   }
 
   @Override
   public void onGeneric(Object packet) {
+    if (!this.checkOwner() || !this.checkPacketRate(this.slab.otherPackets, this.settings.PACKET_RATE.MAX_OTHER)) {
+      return;
+    }
+
     if (packet instanceof PluginMessage) {
       PluginMessage pluginMessage = (PluginMessage) packet;
-      if (PluginMessageUtil.isMcBrand(pluginMessage) && !this.checkedByBrand) {
+      if (PluginMessageUtil.isMcBrand(pluginMessage) && !this.hasFlag(SessionSlab.FLAG_CHECKED_BY_BRAND)) {
         String brand = PluginMessageUtil.readBrandMessage(pluginMessage.content());
         LimboFilter.getLogger().info("{} has client brand {}", this.proxyPlayer, brand);
-        if (!Settings.IMP.MAIN.BLOCKED_CLIENT_BRANDS.contains(brand)) {
-          this.checkedByBrand = true;
+        if (!this.settings.BLOCKED_CLIENT_BRANDS.contains(brand)) {
+          this.setFlag(SessionSlab.FLAG_CHECKED_BY_BRAND);
         }
       }
     } else if (packet instanceof ClientSettings) {
-      if (Settings.IMP.MAIN.CHECK_CLIENT_SETTINGS && !this.checkedBySettings) {
-        this.checkedBySettings = true;
+      if (this.settings.CHECK_CLIENT_SETTINGS && !this.hasFlag(SessionSlab.FLAG_CHECKED_BY_SETTINGS)) {
+        this.setFlag(SessionSlab.FLAG_CHECKED_BY_SETTINGS);
       }
     }
   }
 
   @Override
   public void onDisconnect() {
-    this.filterMainTask.cancel();
+    this.statistics.removeSession();
+    this.release();
+  }
+
+  public void release() {
+    if (this.slab.release(this.slot, this)) {
+      if (this.timeoutTask != null) {
+        this.timeoutTask.cancel();
+      }
+      this.generation.release();
+      this.plugin.getSessionLimiter().release(this.proxyPlayer.getRemoteAddress().getAddress(), this.limitPrefix);
+      if (this.admitted) {
+        this.plugin.getAdmissionController().release();
+      }
+    }
   }
 
   private void finishCheck() {
-    if (System.currentTimeMillis() - this.joinTime < FALLING_CHECK_TOTAL_TIME && this.state != CheckState.ONLY_CAPTCHA) {
-      if (this.state == CheckState.CAPTCHA_POSITION && this.ticks < Settings.IMP.MAIN.FALLING_CHECK_TICKS) {
-        this.state = CheckState.ONLY_POSITION;
+    CheckState state = this.getState();
+    long joinTime = this.slab.joinTime[this.slot];
+    if (System.currentTimeMillis() - joinTime < this.settings.FALLING_CHECK_TICKS * 50L && state != CheckState.ONLY_CAPTCHA) {
+      if (state == CheckState.CAPTCHA_POSITION && this.slab.ticks[this.slot] < this.settings.FALLING_CHECK_TICKS) {
+        this.setState(CheckState.ONLY_POSITION);
       } else {
-        if (this.state == CheckState.CAPTCHA_ON_POSITION_FAILED) {
+        if (state == CheckState.CAPTCHA_ON_POSITION_FAILED) {
           this.changeStateToCaptcha();
         } else {
-          this.disconnect(this.packets.getFallingCheckFailed(), true);
+          this.disconnect(this.packets.getFallingCheckFailed(), VerdictReason.FALLING_CHECK_TOO_FAST);
         }
       }
       return;
     }
 
-    if (Settings.IMP.MAIN.CHECK_CLIENT_SETTINGS && !this.checkedBySettings) {
-      this.disconnect(this.packets.getKickClientCheckSettings(), true);
+    if (this.settings.CHECK_CLIENT_SETTINGS && !this.hasFlag(SessionSlab.FLAG_CHECKED_BY_SETTINGS)) {
+      this.disconnect(this.packets.getKickClientCheckSettings(), VerdictReason.CLIENT_SETTINGS);
       return;
     }
 
-    if (Settings.IMP.MAIN.CHECK_CLIENT_BRAND && !this.checkedByBrand) {
-      this.disconnect(this.packets.getKickClientCheckBrand(), true);
+    if (this.settings.CHECK_CLIENT_BRAND && !this.hasFlag(SessionSlab.FLAG_CHECKED_BY_BRAND)) {
+      this.disconnect(this.packets.getKickClientCheckBrand(), VerdictReason.CLIENT_BRAND);
       return;
     }
 
-    this.state = CheckState.SUCCESSFUL;
+    this.setState(CheckState.SUCCESSFUL);
     this.plugin.cacheFilterUser(this.proxyPlayer);
+    this.statistics.addVerdict(VerdictReason.PASSED, this.version, CheckState.SUCCESSFUL);
+    this.writeVerdict(VerdictReason.PASSED);
 
-    if (this.plugin.checkCpsLimit(Settings.IMP.MAIN.FILTER_AUTO_TOGGLE.ONLINE_MODE_VERIFY)
-        || this.plugin.checkCpsLimit(Settings.IMP.MAIN.FILTER_AUTO_TOGGLE.NEED_TO_RECONNECT)) {
-      this.disconnect(this.packets.getSuccessfulBotFilterDisconnect(), false);
+    FilterPolicy policy = this.plugin.getPolicy();
+    if (policy.isEngaged(FilterToggle.ONLINE_MODE_VERIFY) || policy.isEngaged(FilterToggle.NEED_TO_RECONNECT)) {
+      this.player.closeWith(this.packets.getSuccessfulBotFilterDisconnect());
     } else {
       this.player.writePacketAndFlush(this.packets.getSuccessfulBotFilterChat());
-      this.player.disconnect();
+      // Releases the player directly if the queue is disabled.
+      this.plugin.getReleaseQueue().enqueue(this.player);
     }
   }
 
   private void changeStateToCaptcha() {
-    this.state = CheckState.ONLY_CAPTCHA;
+    this.setState(CheckState.ONLY_CAPTCHA);
     //this.joinTime = System.currentTimeMillis() + this.fallingCheckTotalTime;
     this.setCaptchaPositionAndDisableFalling();
     if (this.captchaAnswer == null) {
@@ -359,33 +560,22 @@ public class BotFilterSessionHandler implements LimboSessionHandler {
     this.server.respawnPlayer(this.proxyPlayer);
     this.player.writePacketAndFlush(this.packets.getNoAbilities());
 
-    this.waitingTeleportId = this.validTeleportId;
+    this.slab.waitingTeleportId[this.slot] = this.slab.validTeleportId[this.slot];
   }
 
   private void sendCaptcha() {
     ProtocolVersion version = this.proxyPlayer.getProtocolVersion();
-    CaptchaHolder captchaHolder = this.plugin.getCachedCaptcha().randomCaptcha();
+    CaptchaHolder captchaHolder = this.generation.getCaptchaPools().get(this.plugin.getPolicy().getCaptchaTier()).randomCaptcha();
     this.captchaAnswer = captchaHolder.getAnswer();
-    Settings.MAIN.STRINGS strings = Settings.IMP.MAIN.STRINGS;
-    if (this.attempts == Settings.IMP.MAIN.CAPTCHA_ATTEMPTS) {
-      this.player.writePacket(
-          this.packets.createChatPacket(this.plugin.getFactory(), MessageFormat.format(strings.CHECKING_CAPTCHA_CHAT, this.attempts))
-      );
-      if (version.compareTo(ProtocolVersion.MINECRAFT_1_8) >= 0) {
-        if (!strings.CHECKING_CAPTCHA_TITLE.isEmpty() && !strings.CHECKING_CAPTCHA_SUBTITLE.isEmpty()) {
-          this.player.writePacket(
-              this.packets.createTitlePacket(
-                  this.plugin.getFactory(),
-                  MessageFormat.format(strings.CHECKING_CAPTCHA_TITLE, this.attempts),
-                  MessageFormat.format(strings.CHECKING_CAPTCHA_SUBTITLE, this.attempts)
-              )
-          );
-        }
+    int attempts = this.slab.attempts[this.slot];
+    if (attempts == this.settings.CAPTCHA_ATTEMPTS) {
+      this.player.writePacket(this.packets.getCheckingCaptchaChat());
+      PreparedPacket captchaTitle = this.packets.getCheckingCaptchaTitle();
+      if (captchaTitle != null && version.compareTo(ProtocolVersion.MINECRAFT_1_8) >= 0) {
+        this.player.writePacket(captchaTitle);
       }
     } else {
-      this.player.writePacket(
-          this.packets.createChatPacket(this.plugin.getFactory(), MessageFormat.format(strings.CHECKING_WRONG_CAPTCHA_CHAT, this.attempts))
-      );
+      this.player.writePacket(this.packets.getCheckingWrongCaptchaChat(this.plugin.getFactory(), attempts));
     }
     this.player.writePacket(this.packets.getSetSlot());
     for (Object packet : captchaHolder.getMapPacket(version)) {
@@ -395,25 +585,59 @@ public class BotFilterSessionHandler implements LimboSessionHandler {
     this.player.flushPackets();
   }
 
-  private void disconnect(PreparedPacket reason, boolean blocked) {
-    this.player.closeWith(reason);
-    if (blocked) {
-      this.statistics.addBlockedConnection();
+  private CheckState getState() {
+    return CHECK_STATES[this.slab.state[this.slot]];
+  }
+
+  private void setState(CheckState state) {
+    this.slab.state[this.slot] = (byte) state.ordinal();
+  }
+
+  private boolean hasFlag(int flag) {
+    return (this.slab.flags[this.slot] & flag) != 0;
+  }
+
+  private void setFlag(int flag) {
+    this.slab.flags[this.slot] |= flag;
+  }
+
+  private void clearFlag(int flag) {
+    this.slab.flags[this.slot] &= ~flag;
+  }
+
+  private void disconnect(PreparedPacket packet, VerdictReason reason) {
+    this.setFlag(SessionSlab.FLAG_CLOSED);
+    this.player.closeWith(packet);
+    this.statistics.addVerdict(reason, this.version, this.getState());
+    this.writeVerdict(reason);
+  }
+
+  private void writeVerdict(VerdictReason reason) {
+    if (reason.isBlocked()) {
+      this.plugin.addHeavyHitter(HeavyHitters.Metric.FAILURES, this.proxyPlayer.getRemoteAddress().getAddress());
+    }
+
+    AuditLog auditLog = this.plugin.getAuditLog();
+    if (auditLog != null) {
+      auditLog.write(
+          this.proxyPlayer.getRemoteAddress().getAddress(), this.proxyPlayer.getUsername(), this.version,
+          reason, this.getState(), System.currentTimeMillis() - this.slab.joinTime[this.slot]
+      );
     }
   }
 
   private int getTimeout() {
     if (this.proxyPlayer.getRemoteAddress().getPort() == 0) {
-      return Settings.IMP.MAIN.GEYSER_TIME_OUT;
+      return this.settings.GEYSER_TIME_OUT;
     } else {
-      return Settings.IMP.MAIN.TIME_OUT;
+      return this.settings.TIME_OUT;
     }
   }
 
   private MinecraftPacket createChunkData(LimboFactory factory, VirtualChunk chunk) {
     chunk.setSkyLight(chunk.getX() & 15, 256, chunk.getZ() & 15, (byte) 1);
     return (MinecraftPacket) factory.instantiatePacket(
-        BuiltInPackets.ChunkData, chunk.getFullChunkSnapshot(), true, this.plugin.getFilterWorld().getDimension().getMaxSections()
+        BuiltInPackets.ChunkData, chunk.getFullChunkSnapshot(), true, this.generation.getFilterWorld().getDimension().getMaxSections()
     );
   }
 
@@ -426,21 +650,22 @@ public class BotFilterSessionHandler implements LimboSessionHandler {
   }
 
   static {
-    for (int i = 0; i < Settings.IMP.MAIN.FALLING_CHECK_TICKS; ++i) {
-      LOADED_CHUNK_SPEED_CACHE[i] = -((Math.pow(0.98, i) - 1) * 3.92);
+    for (int i = 0; i < LOADED_CHUNK_SPEED_CACHE.length; ++i) {
+      LOADED_CHUNK_SPEED_CACHE[i] = computeLoadedChunkSpeed(i);
     }
   }
 
+  private static double computeLoadedChunkSpeed(int ticks) {
+    return -((Math.pow(0.98, ticks) - 1) * 3.92);
+  }
+
   public static double getLoadedChunkSpeed(int ticks) {
     if (ticks == -1) {
       return 0;
     }
 
-    return LOADED_CHUNK_SPEED_CACHE[ticks];
-  }
-
-  public static void setFallingCheckTotalTime(long time) {
-    FALLING_CHECK_TOTAL_TIME = time;
+    // FALLING_CHECK_TICKS may be changed on reload, so don't rely on the cache size.
+    return ticks < LOADED_CHUNK_SPEED_CACHE.length ? LOADED_CHUNK_SPEED_CACHE[ticks] : computeLoadedChunkSpeed(ticks);
   }
 
   public enum CheckState {
@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2021 - 2022 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limbofilter.handler;
+
+import com.velocitypowered.api.network.ProtocolVersion;
+import com.velocitypowered.api.proxy.Player;
+import com.velocitypowered.api.proxy.config.ProxyConfig;
+import java.net.InetSocketAddress;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import net.elytrium.limboapi.api.player.LimboPlayer;
+import net.elytrium.limboapi.api.protocol.PreparedPacket;
+import net.elytrium.limbofilter.FilterGeneration;
+import net.elytrium.limbofilter.LimboFilter;
+import net.elytrium.limbofilter.Settings;
+import net.elytrium.limbofilter.cache.CachedPackets;
+
+/**
+ * Paces verified players leaving the filter limbo, per the server they will be sent to.
+ * Waiting players stay in the limbo and see their position, the position packets are cached per queue.
+ */
+public class ReleaseQueue {
+
+  private static final long TICK_MILLIS = 250;
+  private static final long POSITION_RESEND_MILLIS = 3000;
+  private static final int MAX_CACHED_POSITIONS = 200;
+
+  private final Map<String, ServerQueue> queues = new ConcurrentHashMap<>();
+  private final LimboFilter plugin;
+
+  private volatile Settings.MAIN.RELEASE_QUEUE settings;
+  private ScheduledExecutorService executor;
+
+  public ReleaseQueue(LimboFilter plugin) {
+    this.plugin = plugin;
+  }
+
+  public synchronized void reload(Settings.MAIN.RELEASE_QUEUE settings) {
+    this.settings = settings;
+    if (settings.ENABLED) {
+      settings.SERVERS.keySet().stream()
+          .filter(name -> this.plugin.getServer().getServer(name).isEmpty())
+          .forEach(name -> LimboFilter.getLogger().warn("Unknown server " + name + " in the release queue."));
+
+      if (this.executor == null) {
+        this.executor = Executors.newSingleThreadScheduledExecutor(task -> new Thread(task, "limbofilter-release"));
+        this.executor.scheduleAtFixedRate(this::tick, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+      }
+    } else {
+      this.stop();
+    }
+  }
+
+  public synchronized void stop() {
+    if (this.executor != null) {
+      this.executor.shutdownNow();
+      this.executor = null;
+    }
+
+    // Nobody is going to release the waiting players anymore.
+    this.queues.values().forEach(queue -> {
+      for (Entry entry = queue.players.poll(); entry != null; entry = queue.players.poll()) {
+        entry.player.disconnect();
+      }
+    });
+    this.queues.clear();
+  }
+
+  /**
+   * Synchronized with {@link #stop()}, so a player isn't queued after the queues were cleared.
+   * If the queue is stopped, the player is released directly.
+   */
+  public synchronized void enqueue(LimboPlayer player) {
+    if (this.executor == null) {
+      player.disconnect();
+      return;
+    }
+
+    String target = this.getTarget(player.getProxyPlayer());
+    this.queues.computeIfAbsent(target, ServerQueue::new).players.add(new Entry(player));
+  }
+
+  private void tick() {
+    try {
+      Settings.MAIN.RELEASE_QUEUE settings = this.settings;
+      FilterGeneration generation = this.plugin.getGeneration();
+      long now = System.currentTimeMillis();
+      for (ServerQueue queue : this.queues.values()) {
+        int perSecond = settings.SERVERS.getOrDefault(queue.name, settings.DEFAULT_PER_SECOND);
+        if (perSecond <= 0) {
+          // Not paced.
+          queue.tokens = Double.POSITIVE_INFINITY;
+        } else {
+          queue.tokens = Math.min(Math.max(1, perSecond), queue.tokens + perSecond * TICK_MILLIS / 1000.0);
+        }
+
+        int position = 0;
+        for (Iterator<Entry> iterator = queue.players.iterator(); iterator.hasNext(); ) {
+          Entry entry = iterator.next();
+          if (!entry.player.getProxyPlayer().isActive()) {
+            iterator.remove();
+          } else if (queue.tokens >= 1) {
+            iterator.remove();
+            --queue.tokens;
+            entry.player.disconnect();
+          } else {
+            ++position;
+            if (generation != null && (entry.shownPosition != position || now - entry.shownTime > POSITION_RESEND_MILLIS)) {
+              this.showPosition(queue, entry, position, generation.getPackets(), now);
+            }
+          }
+        }
+      }
+    } catch (Throwable t) {
+      t.printStackTrace();
+    }
+  }
+
+  private void showPosition(ServerQueue queue, Entry entry, int position, CachedPackets packets, long now) {
+    if (queue.packets != packets) {
+      queue.packets = packets;
+      queue.titles = new PreparedPacket[MAX_CACHED_POSITIONS + 1];
+      queue.chats = new PreparedPacket[MAX_CACHED_POSITIONS + 1];
+    }
+
+    int index = Math.min(position, MAX_CACHED_POSITIONS);
+    String shownPosition = position > MAX_CACHED_POSITIONS ? MAX_CACHED_POSITIONS + "+" : String.valueOf(position);
+    if (entry.player.getProxyPlayer().getProtocolVersion().compareTo(ProtocolVersion.MINECRAFT_1_8) >= 0) {
+      if (queue.titles[index] == null) {
+        queue.titles[index] = packets.createReleaseQueueTitle(this.plugin.getFactory(), shownPosition, queue.name);
+      }
+
+      entry.player.writePacketAndFlush(queue.titles[index]);
+    } else if (entry.shownPosition != position) {
+      if (queue.chats[index] == null) {
+        queue.chats[index] = packets.createReleaseQueueChat(this.plugin.getFactory(), shownPosition, queue.name);
+      }
+
+      entry.player.writePacketAndFlush(queue.chats[index]);
+    }
+
+    entry.shownPosition = position;
+    entry.shownTime = now;
+  }
+
+  /**
+   * The first server the player would be sent to after the limbo: forced host servers, or the attempt connection order.
+   */
+  private String getTarget(Player player) {
+    ProxyConfig config = this.plugin.getServer().getConfiguration();
+    Optional<InetSocketAddress> virtualHost = player.getVirtualHost();
+    List<String> order = virtualHost
+        .map(host -> config.getForcedHosts().get(host.getHostString().toLowerCase(Locale.ROOT)))
+        .filter(servers -> !servers.isEmpty())
+        .orElse(config.getAttemptConnectionOrder());
+
+    return order.isEmpty() ? "" : order.get(0);
+  }
+
+  private static class ServerQueue {
+
+    private final Queue<Entry> players = new ConcurrentLinkedQueue<>();
+    private final String name;
+
+    // Accessed only from the release thread.
+    private double tokens;
+    private CachedPackets packets;
+    private PreparedPacket[] titles;
+    private PreparedPacket[] chats;
+
+    private ServerQueue(String name) {
+      this.name = name;
+    }
+  }
+
+  private static class Entry {
+
+    private final LimboPlayer player;
+    private int shownPosition;
+    private long shownTime;
+
+    private Entry(LimboPlayer player) {
+      this.player = player;
+    }
+  }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2021 - 2022 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limbofilter.handler;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Numeric check state of the filter sessions, stored in preallocated arrays indexed by the session slot.
+ * Slots are recycled on disconnect, so long floods don't churn the heap with per-session state.
+ * If all slots are used, another slab of the same capacity is chained. Chained slabs are unlinked by the sweep once they are empty.
+ *
+ * <p>A slot is only accessed by the event loop of its session. {@link #sweep()} only reads the slots,
+ * the timeout checks are executed on the event loops.
+ */
+public class SessionSlab {
+
+  static final int FLAG_ON_GROUND = 1;
+  static final int FLAG_STARTED_LISTENING = 1 << 1;
+  static final int FLAG_CHECKED_BY_SETTINGS = 1 << 2;
+  static final int FLAG_CHECKED_BY_BRAND = 1 << 3;
+  static final int FLAG_CLOSED = 1 << 4;
+
+  final double[] posX;
+  final double[] posY;
+  final double[] lastY;
+  final double[] posZ;
+  final int[] validX;
+  final int[] validY;
+  final int[] validZ;
+  final int[] validTeleportId;
+  final int[] waitingTeleportId;
+  final int[] ticks;
+  final int[] ignoredTicks;
+  final int[] attempts;
+  final int[] nonValidPacketsSize;
+  final long[] joinTime;
+  // Packets received in the current packet rate window.
+  final int[] movePackets;
+  final int[] chatPackets;
+  final int[] otherPackets;
+  final long[] windowStart;
+  final byte[] state;
+  final byte[] flags;
+
+  private final AtomicReferenceArray<BotFilterSessionHandler> handlers;
+  private final int[] freeSlots;
+  private int freeCount;
+  private boolean retired;
+  private volatile SessionSlab next;
+
+  public SessionSlab(int capacity) {
+    this.posX = new double[capacity];
+    this.posY = new double[capacity];
+    this.lastY = new double[capacity];
+    this.posZ = new double[capacity];
+    this.validX = new int[capacity];
+    this.validY = new int[capacity];
+    this.validZ = new int[capacity];
+    this.validTeleportId = new int[capacity];
+    this.waitingTeleportId = new int[capacity];
+    this.ticks = new int[capacity];
+    this.ignoredTicks = new int[capacity];
+    this.attempts = new int[capacity];
+    this.nonValidPacketsSize = new int[capacity];
+    this.joinTime = new long[capacity];
+    this.movePackets = new int[capacity];
+    this.chatPackets = new int[capacity];
+    this.otherPackets = new int[capacity];
+    this.windowStart = new long[capacity];
+    this.state = new byte[capacity];
+    this.flags = new byte[capacity];
+
+    this.handlers = new AtomicReferenceArray<>(capacity);
+    this.freeSlots = new int[capacity];
+    for (int i = 0; i < capacity; ++i) {
+      this.freeSlots[i] = capacity - 1 - i;
+    }
+    this.freeCount = capacity;
+  }
+
+  /**
+   * @return the cleared slot, or -1 if the slab is full
+   */
+  synchronized int allocate(BotFilterSessionHandler handler) {
+    if (this.retired || this.freeCount == 0) {
+      return -1;
+    }
+
+    int slot = this.freeSlots[--this.freeCount];
+    this.posX[slot] = 0;
+    this.posY[slot] = 0;
+    this.lastY[slot] = 0;
+    this.posZ[slot] = 0;
+    this.validX[slot] = 0;
+    this.validY[slot] = 0;
+    this.validZ[slot] = 0;
+    this.validTeleportId[slot] = 0;
+    this.waitingTeleportId[slot] = 0;
+    this.ticks[slot] = 0;
+    this.ignoredTicks[slot] = 0;
+    this.attempts[slot] = 0;
+    this.nonValidPacketsSize[slot] = 0;
+    this.joinTime[slot] = 0;
+    this.movePackets[slot] = 0;
+    this.chatPackets[slot] = 0;
+    this.otherPackets[slot] = 0;
+    this.windowStart[slot] = 0;
+    this.state[slot] = 0;
+    this.flags[slot] = 0;
+    this.handlers.set(slot, handler);
+    return slot;
+  }
+
+  /**
+   * @return the next slab of the chain, created if needed, or null if this slab was unlinked and the chain should be walked again
+   */
+  synchronized SessionSlab next() {
+    if (this.retired) {
+      return null;
+    }
+
+    if (this.next == null) {
+      this.next = new SessionSlab(this.freeSlots.length);
+    }
+
+    return this.next;
+  }
+
+  /**
+   * @return false if the slot was already released
+   */
+  synchronized boolean release(int slot, BotFilterSessionHandler handler) {
+    if (this.handlers.get(slot) == handler) {
+      this.handlers.set(slot, null);
+      this.freeSlots[this.freeCount++] = slot;
+      return true;
+    } else {
+      return false;
+    }
+  }
+
+  boolean isOwner(int slot, BotFilterSessionHandler handler) {
+    return this.handlers.get(slot) == handler;
+  }
+
+  /**
+   * Disconnects the sessions that exceeded the check time or went silent, unlinks the chained slabs that are empty.
+   */
+  public void sweep() {
+    long now = System.currentTimeMillis();
+    this.sweepSlots(now);
+    SessionSlab previous = this;
+    SessionSlab slab = this.next;
+    while (slab != null) {
+      if (previous.unlinkIfEmpty(slab)) {
+        slab = previous.next;
+      } else {
+        slab.sweepSlots(now);
+        previous = slab;
+        slab = slab.next;
+      }
+    }
+  }
+
+  private void sweepSlots(long now) {
+    for (int slot = 0; slot < this.handlers.length(); ++slot) {
+      BotFilterSessionHandler handler = this.handlers.get(slot);
+      if (handler != null) {
+        handler.sweep(now);
+      }
+    }
+  }
+
+  /**
+   * Locks are always taken from the head of the chain to its tail, so this can't deadlock with {@link #next()}.
+   *
+   * @return true if the next slab was empty and got unlinked
+   */
+  private synchronized boolean unlinkIfEmpty(SessionSlab slab) {
+    synchronized (slab) {
+      if (slab.freeCount != slab.freeSlots.length) {
+        return false;
+      }
+
+      // A retired slab doesn't chain new slabs, so its next reference is final from here.
+      slab.retired = true;
+      this.next = slab.next;
+      return true;
+    }
+  }
+
+  public int getCapacity() {
+    int capacity = 0;
+    for (SessionSlab slab = this; slab != null; slab = slab.next) {
+      capacity += slab.handlers.length();
+    }
+
+    return capacity;
+  }
+
+  public int getUsed() {
+    int used = 0;
+    for (SessionSlab slab = this; slab != null; slab = slab.next) {
+      synchronized (slab) {
+        used += slab.handlers.length() - slab.freeCount;
+      }
+    }
+
+    return used;
+  }
+}
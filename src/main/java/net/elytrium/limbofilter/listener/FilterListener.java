@@ -22,40 +22,108 @@ import com.velocitypowered.api.event.Subscribe;
 import com.velocitypowered.api.event.connection.PreLoginEvent;
 import com.velocitypowered.api.event.proxy.ProxyPingEvent;
 import com.velocitypowered.api.event.query.ProxyQueryEvent;
+import com.velocitypowered.api.proxy.InboundConnection;
 import com.velocitypowered.api.proxy.Player;
+import java.net.InetAddress;
 import net.elytrium.limboapi.api.event.LoginLimboRegisterEvent;
+import net.elytrium.limbofilter.FilterGeneration;
 import net.elytrium.limbofilter.LimboFilter;
 import net.elytrium.limbofilter.Settings;
+import net.elytrium.limbofilter.policy.AdmissionController;
+import net.elytrium.limbofilter.policy.FilterToggle;
+import net.elytrium.limbofilter.policy.NetworkPolicy;
+import net.elytrium.limbofilter.policy.UsernameFilter;
+import net.elytrium.limbofilter.stats.HeavyHitters;
+import net.elytrium.limbofilter.stats.VerdictReason;
+import net.kyori.adventure.text.Component;
 
 public class FilterListener {
 
   private final LimboFilter plugin;
+  private final Settings.MAIN.PING_CHECK pingCheck;
+  private final Component pingCheckKick;
 
-  public FilterListener(LimboFilter plugin) {
+  public FilterListener(LimboFilter plugin, Settings.MAIN settings) {
     this.plugin = plugin;
+    this.pingCheck = settings.PING_CHECK;
+    this.pingCheckKick = LimboFilter.getSerializer().deserialize(settings.STRINGS.PING_CHECK_KICK);
   }
 
   @Subscribe(order = PostOrder.FIRST)
   public void onProxyConnect(PreLoginEvent event) {
     this.plugin.getStatistics().addConnection();
 
-    if (this.plugin.checkCpsLimit(Settings.IMP.MAIN.FILTER_AUTO_TOGGLE.ONLINE_MODE_VERIFY)
-        && this.plugin.shouldCheck(event.getUsername(), event.getConnection().getRemoteAddress().getAddress())) {
+    InetAddress address = event.getConnection().getRemoteAddress().getAddress();
+    this.plugin.addHeavyHitter(HeavyHitters.Metric.CONNECTIONS, address);
+    FilterGeneration generation = this.plugin.getGeneration();
+    if (generation != null && generation.getAddressLists().isDenied(address)) {
+      this.deny(event, VerdictReason.ADDRESS_DENIED, generation.getAddressLists().getDenyReason());
+      return;
+    }
+
+    if (generation != null && generation.getUsernameFilter().match(event.getUsername()) != UsernameFilter.NO_MATCH) {
+      this.deny(event, VerdictReason.USERNAME_PATTERN, generation.getUsernameFilter().getBlockReason());
+      return;
+    }
+
+    if (!this.plugin.shouldCheck(event.getUsername(), address)) {
+      return;
+    }
+
+    if (this.pingCheck.ENABLED && this.plugin.checkCpsLimit(this.pingCheck.MIN_CPS)
+        && !this.plugin.getPingTable().hasPinged(address, this.pingCheck.MAX_AGE_SECONDS)) {
+      this.deny(event, VerdictReason.NO_PING, this.pingCheckKick);
+      return;
+    }
+
+    if (generation != null) {
+      NetworkPolicy networkPolicy = generation.getNetworkPolicy();
+      NetworkPolicy.Rule rule = networkPolicy.getRule(address);
+      if (rule != null && !rule.tryAcquire()) {
+        this.deny(event, VerdictReason.NETWORK_LIMIT, networkPolicy.getLimitReason());
+        return;
+      }
+    }
+
+    if (this.plugin.getPolicy().isEngaged(FilterToggle.ONLINE_MODE_VERIFY)) {
       event.setResult(PreLoginEvent.PreLoginComponentResult.forceOfflineMode());
     }
   }
 
+  private void deny(PreLoginEvent event, VerdictReason reason, Component kickReason) {
+    InboundConnection connection = event.getConnection();
+    this.plugin.getStatistics().addVerdict(reason, connection.getProtocolVersion(), null);
+    this.plugin.writeVerdict(connection.getRemoteAddress().getAddress(), event.getUsername(), connection.getProtocolVersion(), reason);
+    event.setResult(PreLoginEvent.PreLoginComponentResult.denied(kickReason));
+  }
+
   @Subscribe(order = PostOrder.FIRST)
   public void onLogin(LoginLimboRegisterEvent event) {
     Player player = event.getPlayer();
     if (this.plugin.shouldCheck(player)) {
-      event.addCallback(() -> this.plugin.sendToFilterServer(player));
+      event.addCallback(() -> this.admit(player));
+    }
+  }
+
+  // The permit is taken right before spawning, so it can't leak if the player leaves before the callback.
+  private void admit(Player player) {
+    AdmissionController admissionController = this.plugin.getAdmissionController();
+    if (admissionController.tryAdmit(player.getRemoteAddress().getAddress())) {
+      this.plugin.sendToFilterServer(player, true);
+    } else {
+      this.plugin.getStatistics().addVerdict(VerdictReason.ADMISSION_SHED, player.getProtocolVersion(), null);
+      this.plugin.writeVerdict(player, VerdictReason.ADMISSION_SHED);
+      admissionController.shed(player);
     }
   }
 
   @Subscribe(order = PostOrder.LAST)
   public void onPing(ProxyPingEvent event) {
-    if (this.plugin.checkPpsLimit(Settings.IMP.MAIN.FILTER_AUTO_TOGGLE.DISABLE_MOTD_PICTURE)) {
+    if (this.pingCheck.ENABLED) {
+      this.plugin.getPingTable().record(event.getConnection().getRemoteAddress().getAddress());
+    }
+
+    if (this.plugin.getPolicy().isEngaged(FilterToggle.DISABLE_MOTD_PICTURE)) {
       event.setPing(event.getPing().asBuilder().clearFavicon().build());
     }
 
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2021 - 2022 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limbofilter.policy;
+
+import com.google.common.net.InetAddresses;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import net.elytrium.limbofilter.LimboFilter;
+import net.elytrium.limbofilter.Settings;
+import net.elytrium.limbofilter.utils.AddressTrie;
+import net.elytrium.limbofilter.utils.AddressUtils;
+import net.kyori.adventure.text.Component;
+
+/**
+ * Allowed and denied address ranges, the most specific range wins.
+ */
+public class AddressLists {
+
+  public static final byte ALLOW = 1;
+  public static final byte DENY = 2;
+
+  private final AddressTrie trie = new AddressTrie(1024);
+  private final Component denyReason;
+  private int ranges;
+
+  public AddressLists(Path dataDirectory, Settings.MAIN.ADDRESS_LISTS settings, Component denyReason) {
+    this.denyReason = denyReason;
+
+    // Deny first, so the allowed range wins if the same range is listed twice.
+    this.addRanges(settings.DENY, DENY);
+    this.addFiles(dataDirectory, settings.DENY_FILES, DENY);
+    this.addRanges(settings.ALLOW, ALLOW);
+    this.addFiles(dataDirectory, settings.ALLOW_FILES, ALLOW);
+    this.trie.trim();
+    if (this.ranges != 0) {
+      LimboFilter.getLogger().info("Loaded " + this.ranges + " address ranges, " + this.trie.getMemoryUsage() / 1024 + " KiB.");
+    }
+  }
+
+  public boolean isAllowed(InetAddress address) {
+    return this.trie.lookup(address) == ALLOW;
+  }
+
+  public boolean isDenied(InetAddress address) {
+    return this.trie.lookup(address) == DENY;
+  }
+
+  public Component getDenyReason() {
+    return this.denyReason;
+  }
+
+  public int getRanges() {
+    return this.ranges;
+  }
+
+  private void addRanges(List<String> ranges, byte value) {
+    for (String range : ranges) {
+      if (!range.isBlank()) {
+        try {
+          this.addRange(range.strip(), value);
+        } catch (IllegalArgumentException e) {
+          LimboFilter.getLogger().warn("Invalid address range \"" + range + "\": " + e.getMessage());
+        }
+      }
+    }
+  }
+
+  private void addFiles(Path dataDirectory, List<String> files, byte value) {
+    for (String file : files) {
+      if (file.isBlank()) {
+        continue;
+      }
+
+      Path path = dataDirectory.resolve(file);
+      int invalid = 0;
+      try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          int comment = line.indexOf('#');
+          String range = (comment == -1 ? line : line.substring(0, comment)).strip();
+          if (!range.isEmpty()) {
+            try {
+              this.addRange(range, value);
+            } catch (IllegalArgumentException e) {
+              ++invalid;
+            }
+          }
+        }
+      } catch (IOException e) {
+        LimboFilter.getLogger().error("Unable to read the address list " + path + ".", e);
+      }
+
+      if (invalid != 0) {
+        LimboFilter.getLogger().warn("Skipped " + invalid + " invalid address ranges in " + path + ".");
+      }
+    }
+  }
+
+  private void addRange(String range, byte value) {
+    int slash = range.indexOf('/');
+    // Only literal addresses are accepted, hostnames are never resolved.
+    InetAddress address = InetAddresses.forString(slash == -1 ? range : range.substring(0, slash));
+    int maxLength = address instanceof Inet4Address ? 32 : 128;
+    int length = maxLength;
+    if (slash != -1) {
+      try {
+        length = Integer.parseInt(range.substring(slash + 1));
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("Invalid prefix length");
+      }
+
+      if (length < 0 || length > maxLength) {
+        throw new IllegalArgumentException("Invalid prefix length");
+      }
+    }
+
+    if (address instanceof Inet4Address) {
+      length += AddressUtils.IPV4_MAPPED_BITS;
+    }
+
+    this.trie.insert(AddressUtils.getHigh(address), AddressUtils.getLow(address), length, value);
+    ++this.ranges;
+  }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2021 - 2022 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limbofilter.policy;
+
+import com.velocitypowered.api.proxy.Player;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.elytrium.limbofilter.Settings;
+import net.elytrium.limbofilter.cache.CachedDisconnect;
+import net.elytrium.limbofilter.utils.AddressUtils;
+import net.kyori.adventure.text.Component;
+
+/**
+ * Bounds the amount of concurrent filter sessions and their spawn rate, so admitted sessions get the latency they need to pass.
+ *
+ * <p>Connections above the limits are kicked before spawning, with disconnect packets encoded once per protocol version.
+ * Connections from a subnet with a recent successful check have priority: they can use the reserved part of the cap,
+ * and they ignore the spawn rate.
+ */
+public class AdmissionController {
+
+  private final AtomicInteger sessions = new AtomicInteger();
+  private final Map<Long, Long> prioritySubnets = new ConcurrentHashMap<>();
+
+  private volatile Settings.MAIN.ADMISSION settings;
+  private volatile CachedDisconnect kick;
+
+  private double tokens;
+  private long lastRefill;
+
+  public void reload(Settings.MAIN.ADMISSION settings, Component kickReason) {
+    this.settings = settings;
+    this.kick = new CachedDisconnect(kickReason);
+    synchronized (this) {
+      this.tokens = settings.SPAWN_BURST;
+      this.lastRefill = System.nanoTime();
+    }
+  }
+
+  /**
+   * Takes a session permit, which must be returned with {@link #release()} when the session ends.
+   *
+   * @return false if the connection should be shed
+   */
+  public boolean tryAdmit(InetAddress address) {
+    Settings.MAIN.ADMISSION settings = this.settings;
+    if (settings == null || !settings.ENABLED) {
+      this.sessions.incrementAndGet();
+      return true;
+    }
+
+    boolean priority = this.isPriority(address);
+    int cap = priority ? settings.MAX_SESSIONS : (int) (settings.MAX_SESSIONS * (1 - settings.PRIORITY_RESERVE));
+    int current;
+    do {
+      current = this.sessions.get();
+      if (current >= cap) {
+        return false;
+      }
+    } while (!this.sessions.compareAndSet(current, current + 1));
+
+    if (!priority && !this.takeToken(settings)) {
+      this.sessions.decrementAndGet();
+      return false;
+    }
+
+    return true;
+  }
+
+  public void release() {
+    this.sessions.decrementAndGet();
+  }
+
+  /**
+   * Kicks the player with the pre-encoded disconnect packet.
+   */
+  public void shed(Player player) {
+    this.kick.disconnect(player);
+  }
+
+  /**
+   * Gives the subnet of a successfully checked player priority for {@code priority-millis}.
+   */
+  public void addPriority(InetAddress address) {
+    Settings.MAIN.ADMISSION settings = this.settings;
+    if (settings != null && settings.ENABLED) {
+      this.prioritySubnets.put(this.getSubnetKey(settings, address), System.currentTimeMillis() + settings.PRIORITY_MILLIS);
+    }
+  }
+
+  public void purgeExpired() {
+    long now = System.currentTimeMillis();
+    this.prioritySubnets.values().removeIf(expiry -> expiry <= now);
+  }
+
+  public int getSessions() {
+    return this.sessions.get();
+  }
+
+  private boolean isPriority(InetAddress address) {
+    Long expiry = this.prioritySubnets.get(this.getSubnetKey(this.settings, address));
+    return expiry != null && expiry > System.currentTimeMillis();
+  }
+
+  private synchronized boolean takeToken(Settings.MAIN.ADMISSION settings) {
+    long now = System.nanoTime();
+    this.tokens = Math.min(settings.SPAWN_BURST, this.tokens + (now - this.lastRefill) * settings.SPAWNS_PER_SECOND / 1_000_000_000.0);
+    this.lastRefill = now;
+    if (this.tokens < 1) {
+      return false;
+    }
+
+    --this.tokens;
+    return true;
+  }
+
+  private long getSubnetKey(Settings.MAIN.ADMISSION settings, InetAddress address) {
+    if (address instanceof Inet4Address) {
+      // The low part holds the IPv4 address in its last 32 bits.
+      return AddressUtils.getLow(address) & AddressUtils.mask(32 + settings.PRIORITY_IPV4_PREFIX);
+    } else {
+      return AddressUtils.getHigh(address) & AddressUtils.mask(settings.PRIORITY_IPV6_PREFIX);
+    }
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2021 - 2022 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limbofilter.policy;
+
+import java.net.InetAddress;
+import java.util.concurrent.atomic.AtomicLongArray;
+import net.elytrium.limbofilter.utils.AddressUtils;
+
+/**
+ * Connections per second of recent addresses, in a fixed-size table.
+ *
+ * <p>Entries hold a 32-bit fingerprint of the address, the current second and the connections count during it.
+ * Like in {@link PingTable}, every address has two candidate entries and a new address replaces the stale or the less active one.
+ */
+public class ConnectionRateTable {
+
+  private static final int TABLE_BITS = 16;
+  private static final int TABLE_MASK = (1 << TABLE_BITS) - 1;
+  private static final long MAX_COUNT = 0xFFFF;
+
+  private final AtomicLongArray entries = new AtomicLongArray(1 << TABLE_BITS);
+
+  /**
+   * Counts the connection of the address.
+   *
+   * @return the connections count of the address during the current second, including this one
+   */
+  public int acquire(InetAddress address) {
+    long hash = AddressUtils.mix(AddressUtils.getHigh(address) * 0x9E3779B97F4A7C15L ^ AddressUtils.getLow(address));
+    long fingerprint = hash & 0xFFFFFFFF00000000L;
+    long second = (System.currentTimeMillis() / 1000) & 0xFFFF;
+    int first = (int) hash & TABLE_MASK;
+    int alternative = (int) (hash >>> TABLE_BITS) & TABLE_MASK;
+
+    while (true) {
+      long firstEntry = this.entries.get(first);
+      long alternativeEntry = this.entries.get(alternative);
+      int index;
+      long entry;
+      if ((firstEntry & 0xFFFFFFFF00000000L) == fingerprint) {
+        index = first;
+        entry = firstEntry;
+      } else if ((alternativeEntry & 0xFFFFFFFF00000000L) == fingerprint) {
+        index = alternative;
+        entry = alternativeEntry;
+      } else {
+        index = count(firstEntry, second) <= count(alternativeEntry, second) ? first : alternative;
+        entry = index == first ? firstEntry : alternativeEntry;
+      }
+
+      long count = (entry & 0xFFFFFFFF00000000L) == fingerprint ? count(entry, second) : 0;
+      if (count == MAX_COUNT) {
+        return (int) MAX_COUNT;
+      }
+
+      if (this.entries.compareAndSet(index, entry, fingerprint | second << 16 | (count + 1))) {
+        return (int) (count + 1);
+      }
+    }
+  }
+
+  private static long count(long entry, long second) {
+    return ((entry >>> 16) & 0xFFFF) == second ? entry & 0xFFFF : 0;
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2021 - 2022 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limbofilter.policy;
+
+import net.elytrium.limbofilter.captcha.CaptchaTier;
+
+/**
+ * Immutable snapshot of the filter auto toggles, published by {@link PolicyController}.
+ */
+public class FilterPolicy {
+
+  public static final FilterPolicy INITIAL = new FilterPolicy(0, false, CaptchaTier.DEFAULT, 0, 0, 0, 0);
+
+  private final int engaged;
+  private final boolean underAttack;
+  private final CaptchaTier captchaTier;
+  private final double connections;
+  private final double pings;
+  private final double failRatio;
+  private final double sessions;
+
+  public FilterPolicy(int engaged, boolean underAttack, CaptchaTier captchaTier, double connections, double pings, double failRatio, double sessions) {
+    this.engaged = engaged;
+    this.underAttack = underAttack;
+    this.captchaTier = captchaTier;
+    this.connections = connections;
+    this.pings = pings;
+    this.failRatio = failRatio;
+    this.sessions = sessions;
+  }
+
+  public boolean isEngaged(FilterToggle toggle) {
+    return (this.engaged & (1 << toggle.ordinal())) != 0;
+  }
+
+  public boolean isUnderAttack() {
+    return this.underAttack;
+  }
+
+  public CaptchaTier getCaptchaTier() {
+    return this.captchaTier;
+  }
+
+  public double getConnections() {
+    return this.connections;
+  }
+
+  public double getPings() {
+    return this.pings;
+  }
+
+  public double getFailRatio() {
+    return this.failRatio;
+  }
+
+  public double getSessions() {
+    return this.sessions;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder("FilterPolicy{engaged=[");
+    for (FilterToggle toggle : FilterToggle.values()) {
+      if (this.isEngaged(toggle)) {
+        builder.append(toggle).append(' ');
+      }
+    }
+
+    return builder.append("], underAttack=").append(this.underAttack)
+        .append(", captchaTier=").append(this.captchaTier)
+        .append(String.format(", cps=%.1f, pps=%.1f, failRatio=%.2f, sessions=%.1f}", this.connections, this.pings, this.failRatio, this.sessions))
+        .toString();
+  }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2021 - 2022 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limbofilter.policy;
+
+import java.util.function.ToIntFunction;
+import net.elytrium.limbofilter.Settings;
+
+public enum FilterToggle {
+
+  ALL_BYPASS(toggles -> toggles.ALL_BYPASS, false),
+  ONLINE_MODE_BYPASS(toggles -> toggles.ONLINE_MODE_BYPASS, false),
+  ONLINE_MODE_VERIFY(toggles -> toggles.ONLINE_MODE_VERIFY, false),
+  CHECK_STATE_TOGGLE(toggles -> toggles.CHECK_STATE_TOGGLE, false),
+  NEED_TO_RECONNECT(toggles -> toggles.NEED_TO_RECONNECT, false),
+  DISABLE_MOTD_PICTURE(toggles -> toggles.DISABLE_MOTD_PICTURE, true);
+
+  private final ToIntFunction<Settings.MAIN.FILTER_AUTO_TOGGLE> limit;
+  private final boolean pings;
+
+  FilterToggle(ToIntFunction<Settings.MAIN.FILTER_AUTO_TOGGLE> limit, boolean pings) {
+    this.limit = limit;
+    this.pings = pings;
+  }
+
+  /**
+   * @return the limit from the config, -1 if the toggle is disabled
+   */
+  public int getLimit(Settings.MAIN.FILTER_AUTO_TOGGLE toggles) {
+    return this.limit.applyAsInt(toggles);
+  }
+
+  /**
+   * @return true if the limit is compared with pings per unit of time, false if with connections
+   */
+  public boolean isPings() {
+    return this.pings;
+  }
+}
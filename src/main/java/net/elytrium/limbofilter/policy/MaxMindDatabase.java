@@ -0,0 +1,361 @@
+/*
+ * Copyright (C) 2021 - 2022 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limbofilter.policy;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import net.elytrium.limbofilter.utils.AddressUtils;
+
+/**
+ * Reader of MaxMind DB files (GeoLite2-ASN, GeoLite2-Country and compatible), memory-mapped and read in place.
+ * Lookups and field reads don't allocate and can run concurrently.
+ *
+ * <p>See https://maxmind.github.io/MaxMind-DB/ for the format.
+ */
+public class MaxMindDatabase {
+
+  public static final int NOT_FOUND = -1;
+
+  private static final byte[] METADATA_MARKER = {(byte) 0xAB, (byte) 0xCD, (byte) 0xEF, 'M', 'a', 'x', 'M', 'i', 'n', 'd', '.', 'c', 'o', 'm'};
+  private static final int METADATA_MAX_SIZE = 128 * 1024;
+  private static final int DATA_SEPARATOR_SIZE = 16;
+
+  private static final int TYPE_EXTENDED = 0;
+  private static final int TYPE_POINTER = 1;
+  private static final int TYPE_STRING = 2;
+  private static final int TYPE_DOUBLE = 3;
+  private static final int TYPE_UINT16 = 5;
+  private static final int TYPE_UINT32 = 6;
+  private static final int TYPE_MAP = 7;
+  private static final int TYPE_INT32 = 8;
+  private static final int TYPE_UINT64 = 9;
+  private static final int TYPE_UINT128 = 10;
+  private static final int TYPE_ARRAY = 11;
+  private static final int TYPE_BOOLEAN = 14;
+  private static final int TYPE_FLOAT = 15;
+
+  private final ByteBuffer buffer;
+  private final int nodeCount;
+  private final int recordSize;
+  private final int ipVersion;
+  private final int dataStart;
+  private final int ipv4Start;
+
+  public MaxMindDatabase(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException("The database is too big");
+      }
+
+      this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+
+    int metadata = this.findMetadata();
+    long nodeCount = this.readUnsigned(this.findKey(metadata, "node_count"));
+    long recordSize = this.readUnsigned(this.findKey(metadata, "record_size"));
+    long ipVersion = this.readUnsigned(this.findKey(metadata, "ip_version"));
+    if (nodeCount <= 0 || (recordSize != 24 && recordSize != 28 && recordSize != 32) || (ipVersion != 4 && ipVersion != 6)) {
+      throw new IOException("Unsupported database metadata");
+    }
+
+    this.nodeCount = (int) nodeCount;
+    this.recordSize = (int) recordSize;
+    this.ipVersion = (int) ipVersion;
+    this.dataStart = (int) (nodeCount * recordSize / 4) + DATA_SEPARATOR_SIZE;
+
+    // IPv4 addresses are looked up in the ::/96 subtree of IPv6 databases.
+    int node = 0;
+    if (ipVersion == 6) {
+      for (int i = 0; i < AddressUtils.IPV4_MAPPED_BITS && node < this.nodeCount; ++i) {
+        node = this.readRecord(node, 0);
+      }
+    }
+    this.ipv4Start = node;
+  }
+
+  /**
+   * @return the data offset of the address record, or {@link #NOT_FOUND} in the lower 32 bits,
+   *     and the network prefix length of the record in the upper 32 bits (IPv4 prefixes are counted in the IPv6 form)
+   */
+  public long lookup(long high, long low) {
+    int node;
+    int depth;
+    if (AddressUtils.isIpv4Mapped(high, low)) {
+      node = this.ipv4Start;
+      depth = AddressUtils.IPV4_MAPPED_BITS;
+    } else if (this.ipVersion == 4) {
+      return (long) 0 << 32 | (NOT_FOUND & 0xFFFFFFFFL);
+    } else {
+      node = 0;
+      depth = 0;
+    }
+
+    while (node < this.nodeCount && depth < 128) {
+      int bit = depth < 64 ? (int) (high >>> (63 - depth)) & 1 : (int) (low >>> (127 - depth)) & 1;
+      node = this.readRecord(node, bit);
+      ++depth;
+    }
+
+    int offset = node > this.nodeCount ? this.dataStart + node - this.nodeCount - DATA_SEPARATOR_SIZE : NOT_FOUND;
+    return (long) depth << 32 | (offset & 0xFFFFFFFFL);
+  }
+
+  /**
+   * @return the offset of the value of the key in the map at the offset, or {@link #NOT_FOUND}
+   */
+  public int findKey(int offset, byte[] key) {
+    if (offset == NOT_FOUND) {
+      return NOT_FOUND;
+    }
+
+    long field = this.readControl(this.resolve(offset));
+    if (type(field) != TYPE_MAP) {
+      return NOT_FOUND;
+    }
+
+    int position = payload(field);
+    for (int i = size(field); i > 0; --i) {
+      boolean found = this.equalsString(position, key);
+      position = this.skip(position);
+      if (found) {
+        return this.resolve(position);
+      }
+
+      position = this.skip(position);
+    }
+
+    return NOT_FOUND;
+  }
+
+  private int findKey(int offset, String key) {
+    return this.findKey(offset, key.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * @return the unsigned integer value at the offset, or -1 if it is missing or isn't an integer
+   */
+  public long readUnsigned(int offset) {
+    if (offset == NOT_FOUND) {
+      return -1;
+    }
+
+    long field = this.readControl(this.resolve(offset));
+    int type = type(field);
+    if ((type != TYPE_UINT16 && type != TYPE_UINT32 && type != TYPE_INT32 && type != TYPE_UINT64) || size(field) > 7) {
+      return -1;
+    }
+
+    return this.readBytes(payload(field), size(field));
+  }
+
+  /**
+   * @return the first two bytes of the string at the offset (e.g. a country code) as one int, or 0
+   */
+  public int readShortString(int offset) {
+    if (offset == NOT_FOUND) {
+      return 0;
+    }
+
+    long field = this.readControl(this.resolve(offset));
+    if (type(field) != TYPE_STRING || size(field) != 2) {
+      return 0;
+    }
+
+    return (int) this.readBytes(payload(field), 2);
+  }
+
+  private int findMetadata() throws IOException {
+    int limit = this.buffer.limit();
+    for (int start = limit - METADATA_MARKER.length; start >= Math.max(0, limit - METADATA_MAX_SIZE); --start) {
+      boolean matches = true;
+      for (int i = 0; i < METADATA_MARKER.length && matches; ++i) {
+        matches = this.buffer.get(start + i) == METADATA_MARKER[i];
+      }
+
+      if (matches) {
+        return start + METADATA_MARKER.length;
+      }
+    }
+
+    throw new IOException("The database metadata wasn't found");
+  }
+
+  private int readRecord(int node, int bit) {
+    switch (this.recordSize) {
+      case 24: {
+        return (int) this.readBytes(node * 6 + bit * 3, 3);
+      }
+      case 28: {
+        int base = node * 7;
+        int middle = this.buffer.get(base + 3) & 0xFF;
+        if (bit == 0) {
+          return (middle & 0xF0) << 20 | (int) this.readBytes(base, 3);
+        } else {
+          return (middle & 0x0F) << 24 | (int) this.readBytes(base + 4, 3);
+        }
+      }
+      default: {
+        return (int) this.readBytes(node * 8 + bit * 4, 4);
+      }
+    }
+  }
+
+  /**
+   * Follows the pointer at the offset, pointers to pointers aren't allowed by the format.
+   */
+  private int resolve(int offset) {
+    int control = this.buffer.get(offset) & 0xFF;
+    if (control >>> 5 != TYPE_POINTER) {
+      return offset;
+    }
+
+    int size = (control >>> 3) & 0x3;
+    int value = control & 0x7;
+    int pointer;
+    switch (size) {
+      case 0: {
+        pointer = value << 8 | (int) this.readBytes(offset + 1, 1);
+        break;
+      }
+      case 1: {
+        pointer = (value << 16 | (int) this.readBytes(offset + 1, 2)) + 2048;
+        break;
+      }
+      case 2: {
+        pointer = (value << 24 | (int) this.readBytes(offset + 1, 3)) + 526336;
+        break;
+      }
+      default: {
+        pointer = (int) this.readBytes(offset + 1, 4);
+        break;
+      }
+    }
+
+    return this.dataStart + pointer;
+  }
+
+  /**
+   * @return the offset right after the field, pointers are skipped without being followed
+   */
+  private int skip(int offset) {
+    int control = this.buffer.get(offset) & 0xFF;
+    if (control >>> 5 == TYPE_POINTER) {
+      return offset + 2 + ((control >>> 3) & 0x3);
+    }
+
+    long field = this.readControl(offset);
+    int position = payload(field);
+    switch (type(field)) {
+      case TYPE_MAP: {
+        for (int i = size(field) * 2; i > 0; --i) {
+          position = this.skip(position);
+        }
+        return position;
+      }
+      case TYPE_ARRAY: {
+        for (int i = size(field); i > 0; --i) {
+          position = this.skip(position);
+        }
+        return position;
+      }
+      case TYPE_BOOLEAN: {
+        return position;
+      }
+      case TYPE_DOUBLE: {
+        return position + 8;
+      }
+      case TYPE_FLOAT: {
+        return position + 4;
+      }
+      default: {
+        return position + size(field);
+      }
+    }
+  }
+
+  private boolean equalsString(int offset, byte[] string) {
+    long field = this.readControl(this.resolve(offset));
+    if (type(field) != TYPE_STRING || size(field) != string.length) {
+      return false;
+    }
+
+    int position = payload(field);
+    for (int i = 0; i < string.length; ++i) {
+      if (this.buffer.get(position + i) != string[i]) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * @return the field type, size and payload offset, packed into one long
+   */
+  private long readControl(int offset) {
+    int control = this.buffer.get(offset++) & 0xFF;
+    int type = control >>> 5;
+    if (type == TYPE_EXTENDED) {
+      type = 7 + (this.buffer.get(offset++) & 0xFF);
+    }
+
+    int size = control & 0x1F;
+    if (size == 29) {
+      size = 29 + (int) this.readBytes(offset, 1);
+      offset += 1;
+    } else if (size == 30) {
+      size = 285 + (int) this.readBytes(offset, 2);
+      offset += 2;
+    } else if (size == 31) {
+      size = 65821 + (int) this.readBytes(offset, 3);
+      offset += 3;
+    }
+
+    if (type == TYPE_UINT128 || type > TYPE_FLOAT) {
+      // Not used by the supported databases, but still skippable by the size.
+      type = TYPE_UINT128;
+    }
+
+    return (long) type << 58 | (long) size << 32 | (offset & 0xFFFFFFFFL);
+  }
+
+  private long readBytes(int offset, int length) {
+    long value = 0;
+    for (int i = 0; i < length; ++i) {
+      value = value << 8 | (this.buffer.get(offset + i) & 0xFF);
+    }
+
+    return value;
+  }
+
+  private static int type(long field) {
+    return (int) (field >>> 58);
+  }
+
+  private static int size(long field) {
+    return (int) (field >>> 32) & 0x3FFFFFF;
+  }
+
+  private static int payload(long field) {
+    return (int) field;
+  }
+}
@@ -0,0 +1,323 @@
+/*
+ * Copyright (C) 2021 - 2022 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limbofilter.policy;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import net.elytrium.limbofilter.LimboFilter;
+import net.elytrium.limbofilter.Settings;
+import net.elytrium.limbofilter.handler.BotFilterSessionHandler;
+import net.elytrium.limbofilter.utils.AddressUtils;
+import net.kyori.adventure.text.Component;
+
+/**
+ * Per-ASN and per-country rules, resolved with local MaxMind databases.
+ *
+ * <p>Resolved rules and ASNs are cached per IPv4 /24 and IPv6 /48 in direct-mapped tables, networks smaller than that aren't cached.
+ * The ASN rule is used if both the ASN and the country have one.
+ */
+public class NetworkPolicy {
+
+  private static final byte[] ASN_KEY = "autonomous_system_number".getBytes(StandardCharsets.UTF_8);
+  private static final byte[] COUNTRY_KEY = "country".getBytes(StandardCharsets.UTF_8);
+  private static final byte[] REGISTERED_COUNTRY_KEY = "registered_country".getBytes(StandardCharsets.UTF_8);
+  private static final byte[] ISO_CODE_KEY = "iso_code".getBytes(StandardCharsets.UTF_8);
+  private static final int CACHE_BITS = 16;
+  private static final int IPV4_CACHE_PREFIX = AddressUtils.IPV4_MAPPED_BITS + 24;
+  private static final int IPV6_CACHE_PREFIX = 48;
+  private static final int NO_RULE = -1;
+
+  private final List<Rule> rules = new ArrayList<>();
+  private final MaxMindDatabase asnDatabase;
+  private final MaxMindDatabase countryDatabase;
+  private final Component limitReason;
+  // Sorted keys with the rule indexes, so resolving a rule doesn't box.
+  private final int[] asns;
+  private final int[] asnRules;
+  private final int[] countries;
+  private final int[] countryRules;
+  // Cache entries: the network bits above the rule index + 1, 0 is an empty entry.
+  private final AtomicLongArray ipv4Cache = new AtomicLongArray(1 << CACHE_BITS);
+  private final AtomicLongArray ipv6Cache = new AtomicLongArray(1 << CACHE_BITS);
+  // The ASN is resolved for every connection by the heavy hitters, so it is cached the same way.
+  private final AtomicReferenceArray<AsnEntry> ipv4AsnCache = new AtomicReferenceArray<>(1 << CACHE_BITS);
+  private final AtomicReferenceArray<AsnEntry> ipv6AsnCache = new AtomicReferenceArray<>(1 << CACHE_BITS);
+
+  public NetworkPolicy(Path dataDirectory, Settings.MAIN.NETWORK_POLICY settings, Component limitReason) {
+    this.limitReason = limitReason;
+
+    List<long[]> asns = new ArrayList<>();
+    List<long[]> countries = new ArrayList<>();
+    if (settings.ENABLED) {
+      settings.RULES.forEach((network, rule) -> {
+        try {
+          String key = network.strip().toUpperCase(Locale.ROOT);
+          if (key.startsWith("AS")) {
+            asns.add(new long[] {Long.parseLong(key.substring(2)), this.rules.size()});
+          } else if (key.length() == 2) {
+            countries.add(new long[] {key.charAt(0) << 8 | key.charAt(1), this.rules.size()});
+          } else {
+            throw new IllegalArgumentException("Unknown network");
+          }
+
+          this.rules.add(Rule.parse(rule));
+        } catch (IllegalArgumentException e) {
+          LimboFilter.getLogger().warn("Invalid network rule \"" + network + ": " + rule + "\": " + e.getMessage());
+        }
+      });
+    }
+
+    this.asns = new int[asns.size()];
+    this.asnRules = new int[asns.size()];
+    fillSorted(asns, this.asns, this.asnRules);
+    this.countries = new int[countries.size()];
+    this.countryRules = new int[countries.size()];
+    fillSorted(countries, this.countries, this.countryRules);
+
+    // The ASN database is also used by the heavy hitters, even without rules.
+    this.asnDatabase = settings.ENABLED ? openDatabase(dataDirectory, settings.ASN_DATABASE) : null;
+    this.countryDatabase = this.countries.length == 0 ? null : openDatabase(dataDirectory, settings.COUNTRY_DATABASE);
+  }
+
+  /**
+   * @return the rule of the network, or null
+   */
+  public Rule getRule(InetAddress address) {
+    if (this.asns.length == 0 && this.countryDatabase == null) {
+      return null;
+    }
+
+    long high = AddressUtils.getHigh(address);
+    long low = AddressUtils.getLow(address);
+    AtomicLongArray cache;
+    long network;
+    if (address instanceof Inet4Address) {
+      cache = this.ipv4Cache;
+      network = (low & 0xFFFFFFFFL) >>> 8;
+    } else {
+      cache = this.ipv6Cache;
+      network = high >>> (64 - IPV6_CACHE_PREFIX);
+    }
+
+    int index = (int) AddressUtils.mix(network) & ((1 << CACHE_BITS) - 1);
+    long entry = cache.get(index);
+    if (entry != 0 && entry >>> 16 == network) {
+      int rule = (int) (entry & 0xFFFF) - 1;
+      return rule == NO_RULE ? null : this.rules.get(rule);
+    }
+
+    int cachePrefix = address instanceof Inet4Address ? IPV4_CACHE_PREFIX : IPV6_CACHE_PREFIX;
+    int rule = NO_RULE;
+    boolean cacheable = true;
+    if (this.asns.length != 0 && this.asnDatabase != null) {
+      long result = this.asnDatabase.lookup(high, low);
+      cacheable = result >>> 32 <= cachePrefix;
+      long asn = this.asnDatabase.readUnsigned(this.asnDatabase.findKey((int) result, ASN_KEY));
+      if (asn >= 0 && asn <= Integer.MAX_VALUE) {
+        rule = find(this.asns, this.asnRules, (int) asn);
+      }
+    }
+
+    if (rule == NO_RULE && this.countryDatabase != null) {
+      long result = this.countryDatabase.lookup(high, low);
+      cacheable &= result >>> 32 <= cachePrefix;
+      int record = (int) result;
+      int country = this.countryDatabase.readShortString(this.countryDatabase.findKey(this.countryDatabase.findKey(record, COUNTRY_KEY), ISO_CODE_KEY));
+      if (country == 0) {
+        country = this.countryDatabase.readShortString(
+            this.countryDatabase.findKey(this.countryDatabase.findKey(record, REGISTERED_COUNTRY_KEY), ISO_CODE_KEY)
+        );
+      }
+
+      if (country != 0) {
+        rule = find(this.countries, this.countryRules, country);
+      }
+    }
+
+    if (cacheable && rule + 1 < 0xFFFF) {
+      cache.lazySet(index, network << 16 | (rule + 1));
+    }
+
+    return rule == NO_RULE ? null : this.rules.get(rule);
+  }
+
+  /**
+   * @return the autonomous system number of the address, or -1 if the ASN database isn't loaded or doesn't know the address
+   */
+  public long getAsn(InetAddress address) {
+    if (this.asnDatabase == null) {
+      return -1;
+    }
+
+    long high = AddressUtils.getHigh(address);
+    long low = AddressUtils.getLow(address);
+    AtomicReferenceArray<AsnEntry> cache;
+    long network;
+    int cachePrefix;
+    if (address instanceof Inet4Address) {
+      cache = this.ipv4AsnCache;
+      network = (low & 0xFFFFFFFFL) >>> 8;
+      cachePrefix = IPV4_CACHE_PREFIX;
+    } else {
+      cache = this.ipv6AsnCache;
+      network = high >>> (64 - IPV6_CACHE_PREFIX);
+      cachePrefix = IPV6_CACHE_PREFIX;
+    }
+
+    int index = (int) AddressUtils.mix(network) & ((1 << CACHE_BITS) - 1);
+    AsnEntry entry = cache.get(index);
+    if (entry != null && entry.network == network) {
+      return entry.asn;
+    }
+
+    long result = this.asnDatabase.lookup(high, low);
+    long asn = this.asnDatabase.readUnsigned(this.asnDatabase.findKey((int) result, ASN_KEY));
+    if (result >>> 32 <= cachePrefix) {
+      cache.lazySet(index, new AsnEntry(network, asn));
+    }
+
+    return asn;
+  }
+
+  public Component getLimitReason() {
+    return this.limitReason;
+  }
+
+  private static MaxMindDatabase openDatabase(Path dataDirectory, String path) {
+    if (path.isBlank()) {
+      return null;
+    }
+
+    try {
+      return new MaxMindDatabase(dataDirectory.resolve(path));
+    } catch (IOException e) {
+      LimboFilter.getLogger().error("Unable to open the network database " + path + ", its rules are disabled.", e);
+      return null;
+    }
+  }
+
+  private static void fillSorted(List<long[]> entries, int[] keys, int[] values) {
+    entries.sort((a, b) -> Long.compare(a[0], b[0]));
+    for (int i = 0; i < keys.length; ++i) {
+      keys[i] = (int) entries.get(i)[0];
+      values[i] = (int) entries.get(i)[1];
+    }
+  }
+
+  private static int find(int[] keys, int[] values, int key) {
+    int index = Arrays.binarySearch(keys, key);
+    return index < 0 ? NO_RULE : values[index];
+  }
+
+  public static class Rule {
+
+    private final boolean bypass;
+    private final BotFilterSessionHandler.CheckState checkState;
+    private final int connectionsPerSecond;
+
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+
+    private Rule(boolean bypass, BotFilterSessionHandler.CheckState checkState, int connectionsPerSecond) {
+      this.bypass = bypass;
+      this.checkState = checkState;
+      this.connectionsPerSecond = connectionsPerSecond;
+      this.tokens = connectionsPerSecond;
+    }
+
+    /**
+     * @param rule "&lt;check state, BYPASS or DEFAULT&gt;[, &lt;connections per second&gt;]"
+     */
+    public static Rule parse(String rule) {
+      String[] parts = rule.split(",");
+      if (parts.length > 2) {
+        throw new IllegalArgumentException("Too many values");
+      }
+
+      String state = parts[0].strip().toUpperCase(Locale.ROOT);
+      int connectionsPerSecond = parts.length == 2 ? Integer.parseInt(parts[1].strip()) : -1;
+      if (state.equals("BYPASS")) {
+        return new Rule(true, null, connectionsPerSecond);
+      } else if (state.equals("DEFAULT")) {
+        return new Rule(false, null, connectionsPerSecond);
+      }
+
+      BotFilterSessionHandler.CheckState checkState = BotFilterSessionHandler.CheckState.valueOf(state);
+      if (checkState == BotFilterSessionHandler.CheckState.SUCCESSFUL) {
+        throw new IllegalArgumentException("SUCCESSFUL can't be used as the check state");
+      }
+
+      return new Rule(false, checkState, connectionsPerSecond);
+    }
+
+    /**
+     * @return whether players from the network skip the filter
+     */
+    public boolean isBypass() {
+      return this.bypass;
+    }
+
+    /**
+     * @return the check state for players from the network, or null to use the default one
+     */
+    public BotFilterSessionHandler.CheckState getCheckState() {
+      return this.checkState;
+    }
+
+    /**
+     * Takes a token of the network connection rate, the rate is shared by the whole network.
+     *
+     * @return false if the network has exceeded its rate
+     */
+    public synchronized boolean tryAcquire() {
+      if (this.connectionsPerSecond == -1) {
+        return true;
+      }
+
+      long now = System.nanoTime();
+      this.tokens = Math.min(this.connectionsPerSecond, this.tokens + (now - this.lastRefill) * this.connectionsPerSecond / 1_000_000_000.0);
+      this.lastRefill = now;
+      if (this.tokens < 1) {
+        return false;
+      }
+
+      --this.tokens;
+      return true;
+    }
+  }
+
+  private static class AsnEntry {
+
+    private final long network;
+    private final long asn;
+
+    private AsnEntry(long network, long asn) {
+      this.network = network;
+      this.asn = asn;
+    }
+  }
+}
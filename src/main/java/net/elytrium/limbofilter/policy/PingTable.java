@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2021 - 2022 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limbofilter.policy;
+
+import java.net.InetAddress;
+import java.util.concurrent.atomic.AtomicLongArray;
+import net.elytrium.limbofilter.utils.AddressUtils;
+
+/**
+ * The last server list ping time of recent addresses, in a fixed-size table.
+ *
+ * <p>Every address has two candidate entries, holding a 32-bit fingerprint of the address and the ping time in seconds.
+ * A new address replaces the older of both entries, so old pings age out without a cleanup task.
+ * Fingerprint collisions can only let a connection through, never kick a player that has pinged.
+ */
+public class PingTable {
+
+  private static final int TABLE_BITS = 17;
+  private static final int TABLE_MASK = (1 << TABLE_BITS) - 1;
+
+  private final AtomicLongArray entries = new AtomicLongArray(1 << TABLE_BITS);
+
+  public void record(InetAddress address) {
+    long hash = hash(address);
+    long entry = (hash & 0xFFFFFFFF00000000L) | (System.currentTimeMillis() / 1000);
+    int first = (int) hash & TABLE_MASK;
+    int second = (int) (hash >>> TABLE_BITS) & TABLE_MASK;
+
+    long firstEntry = this.entries.get(first);
+    long secondEntry = this.entries.get(second);
+    int index;
+    if (sameAddress(firstEntry, hash)) {
+      index = first;
+    } else if (sameAddress(secondEntry, hash)) {
+      index = second;
+    } else {
+      index = (firstEntry & 0xFFFFFFFFL) <= (secondEntry & 0xFFFFFFFFL) ? first : second;
+    }
+
+    // Lost updates between concurrent pings are harmless, the entry gets the next ping.
+    this.entries.lazySet(index, entry);
+  }
+
+  /**
+   * @return whether the address has pinged in the last {@code maxAgeSeconds}
+   */
+  public boolean hasPinged(InetAddress address, int maxAgeSeconds) {
+    long hash = hash(address);
+    long now = System.currentTimeMillis() / 1000;
+    return isRecent(this.entries.get((int) hash & TABLE_MASK), hash, now, maxAgeSeconds)
+        || isRecent(this.entries.get((int) (hash >>> TABLE_BITS) & TABLE_MASK), hash, now, maxAgeSeconds);
+  }
+
+  private static boolean isRecent(long entry, long hash, long now, int maxAgeSeconds) {
+    return sameAddress(entry, hash) && now - (entry & 0xFFFFFFFFL) <= maxAgeSeconds;
+  }
+
+  private static boolean sameAddress(long entry, long hash) {
+    return entry != 0 && (entry >>> 32) == (hash >>> 32);
+  }
+
+  private static long hash(InetAddress address) {
+    return AddressUtils.mix(AddressUtils.getHigh(address) * 0x9E3779B97F4A7C15L ^ AddressUtils.getLow(address));
+  }
+}
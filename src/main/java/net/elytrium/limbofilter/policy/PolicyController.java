@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2021 - 2022 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limbofilter.policy;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import net.elytrium.limbofilter.FilterGeneration;
+import net.elytrium.limbofilter.LimboFilter;
+import net.elytrium.limbofilter.Settings;
+import net.elytrium.limbofilter.captcha.CaptchaTier;
+import net.elytrium.limbofilter.stats.Statistics;
+
+/**
+ * Decides which auto toggles are enabled once per second.
+ *
+ * <p>The rates are smoothed with EWMA. A toggle is enabled when its smoothed rate reaches the limit,
+ * and disabled only when the rate goes below limit * exit-factor, each state is kept for at least the minimum dwell time.
+ * If a lot of checks are failed while there are a lot of players in the filter, all toggles are enabled at once.
+ */
+public class PolicyController {
+
+  private static final FilterToggle[] TOGGLES = FilterToggle.values();
+
+  private final long[] lastTransition = new long[TOGGLES.length];
+  private final LimboFilter plugin;
+  private final Statistics statistics;
+
+  private ScheduledExecutorService executor;
+  private volatile FilterPolicy policy = FilterPolicy.INITIAL;
+
+  private boolean initialized;
+  private int engaged;
+  private boolean underAttack;
+  private long lastAttackTransition;
+  private CaptchaTier captchaTier = CaptchaTier.DEFAULT;
+  private long lastTierTransition;
+  private double connections;
+  private double pings;
+  private double failRatio;
+  private double sessions;
+  private long lastBlocked;
+  private long lastPassed;
+
+  public PolicyController(LimboFilter plugin) {
+    this.plugin = plugin;
+    this.statistics = plugin.getStatistics();
+  }
+
+  public synchronized void start() {
+    if (this.executor == null) {
+      this.tick();
+      this.executor = Executors.newSingleThreadScheduledExecutor(task -> new Thread(task, "limbofilter-policy"));
+      this.executor.scheduleAtFixedRate(this::tick, 1, 1, TimeUnit.SECONDS);
+    }
+  }
+
+  public synchronized void stop() {
+    if (this.executor != null) {
+      this.executor.shutdownNow();
+      this.executor = null;
+    }
+  }
+
+  private synchronized void tick() {
+    try {
+      Settings.MAIN main = this.plugin.getSettings();
+      Settings.MAIN.POLICY settings = main.POLICY;
+      long now = System.currentTimeMillis();
+
+      long blocked = this.statistics.getBlockedConnections();
+      long passed = this.statistics.getPassedConnections();
+      long verdicts = blocked - this.lastBlocked + passed - this.lastPassed;
+      final double failRatioSample = verdicts == 0 ? 0 : (double) (blocked - this.lastBlocked) / verdicts;
+      this.lastBlocked = blocked;
+      this.lastPassed = passed;
+
+      double alpha = this.initialized ? Math.max(0, Math.min(1, settings.EWMA_ALPHA)) : 1;
+      this.connections += alpha * (this.plugin.getFleetConnections() - this.connections);
+      this.pings += alpha * (this.plugin.getFleetPings() - this.pings);
+      this.failRatio += alpha * (failRatioSample - this.failRatio);
+      this.sessions += alpha * (this.statistics.getSessions() - this.sessions);
+
+      boolean attack = this.failRatio >= settings.ATTACK_FAIL_RATIO && this.sessions >= settings.ATTACK_SESSIONS;
+      if (this.underAttack) {
+        boolean calm = this.failRatio < settings.ATTACK_FAIL_RATIO * settings.EXIT_FACTOR
+            || this.sessions < settings.ATTACK_SESSIONS * settings.EXIT_FACTOR;
+        if (calm && now - this.lastAttackTransition >= settings.MIN_ENGAGED_MILLIS) {
+          this.setUnderAttack(false, now);
+        }
+      } else if (attack && settings.ATTACK_SESSIONS >= 0) {
+        this.setUnderAttack(true, now);
+      }
+
+      Settings.MAIN.FILTER_AUTO_TOGGLE toggles = main.FILTER_AUTO_TOGGLE;
+      for (FilterToggle toggle : TOGGLES) {
+        this.updateToggle(toggle, toggle.getLimit(toggles), toggle.isPings() ? this.pings : this.connections, settings, now);
+      }
+
+      this.updateCaptchaTier(main.CAPTCHA_TIERS, settings, now);
+
+      this.initialized = true;
+      this.policy = new FilterPolicy(this.engaged, this.underAttack, this.captchaTier, this.connections, this.pings, this.failRatio, this.sessions);
+
+      FilterGeneration generation = this.plugin.getGeneration();
+      if (generation != null) {
+        generation.getCaptchaPools().activate(this.captchaTier);
+      }
+    } catch (Throwable t) {
+      t.printStackTrace();
+    }
+  }
+
+  private void setUnderAttack(boolean underAttack, long now) {
+    this.underAttack = underAttack;
+    this.lastAttackTransition = now;
+    LimboFilter.getLogger().info(
+        underAttack ? "Attack detected, enabling all the filter auto toggles." : "Attack has ended, filter auto toggles are back to the limits."
+    );
+  }
+
+  private void updateToggle(FilterToggle toggle, int limit, double value, Settings.MAIN.POLICY settings, long now) {
+    int bit = 1 << toggle.ordinal();
+    boolean current = (this.engaged & bit) != 0;
+    boolean next;
+    if (limit == -1) {
+      next = false;
+    } else if (!this.initialized) {
+      next = value >= limit;
+    } else if (this.underAttack) {
+      next = true;
+    } else if (current) {
+      next = value >= limit * settings.EXIT_FACTOR || now - this.lastTransition[toggle.ordinal()] < settings.MIN_ENGAGED_MILLIS;
+    } else {
+      next = value >= limit && now - this.lastTransition[toggle.ordinal()] >= settings.MIN_DISENGAGED_MILLIS;
+    }
+
+    if (next != current) {
+      this.engaged ^= bit;
+      this.lastTransition[toggle.ordinal()] = now;
+    }
+  }
+
+  private void updateCaptchaTier(Settings.MAIN.CAPTCHA_TIERS tiers, Settings.MAIN.POLICY settings, long now) {
+    CaptchaTier target;
+    if (!tiers.ENABLED) {
+      target = CaptchaTier.DEFAULT;
+    } else if (this.underAttack || this.connections >= tiers.HARDENED_CPS) {
+      target = CaptchaTier.HARDENED;
+    } else if (this.connections >= tiers.DEFAULT_CPS) {
+      target = CaptchaTier.DEFAULT;
+    } else {
+      target = CaptchaTier.LIGHT;
+    }
+
+    if (target.compareTo(this.captchaTier) < 0 && this.initialized && tiers.ENABLED) {
+      // Step down only when the rate is well below the current tier limit.
+      int limit = this.captchaTier == CaptchaTier.HARDENED ? tiers.HARDENED_CPS : tiers.DEFAULT_CPS;
+      if (this.connections >= limit * settings.EXIT_FACTOR || now - this.lastTierTransition < settings.MIN_ENGAGED_MILLIS) {
+        return;
+      }
+    }
+
+    if (target != this.captchaTier) {
+      this.captchaTier = target;
+      this.lastTierTransition = now;
+    }
+  }
+
+  /**
+   * Hot paths should read the policy once and use the same snapshot for all decisions.
+   */
+  public FilterPolicy getPolicy() {
+    return this.policy;
+  }
+}
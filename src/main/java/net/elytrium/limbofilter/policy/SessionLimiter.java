@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2021 - 2022 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limbofilter.policy;
+
+import com.velocitypowered.api.proxy.Player;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import net.elytrium.limbofilter.Settings;
+import net.elytrium.limbofilter.cache.CachedDisconnect;
+import net.elytrium.limbofilter.utils.AddressUtils;
+import net.kyori.adventure.text.Component;
+
+/**
+ * Concurrent filter sessions per address and per subnet, counted in fixed-size striped tables,
+ * so the memory stays bounded under IPv6 address sprays.
+ *
+ * <p>Each key is counted in two cells chosen by independent hashes, and the smaller one is used (as in a count-min sketch).
+ * Collisions can only overestimate the count, and rarely do with both cells.
+ */
+public class SessionLimiter {
+
+  private static final int TABLE_BITS = 16;
+  private static final int TABLE_MASK = (1 << TABLE_BITS) - 1;
+
+  private final AtomicIntegerArray addresses = new AtomicIntegerArray(2 << TABLE_BITS);
+  private final AtomicIntegerArray subnets = new AtomicIntegerArray(2 << TABLE_BITS);
+
+  private volatile Settings.MAIN.SESSION_LIMIT settings;
+  private volatile CachedDisconnect kick;
+
+  public void reload(Settings.MAIN.SESSION_LIMIT settings, Component kickReason) {
+    this.settings = settings;
+    this.kick = new CachedDisconnect(kickReason);
+  }
+
+  public void kick(Player player) {
+    this.kick.disconnect(player);
+  }
+
+  /**
+   * Counts a new session, which must be released with {@link #release(InetAddress, int)} when it ends.
+   *
+   * @return the subnet prefix the session was counted with, or -1 if the limits are exceeded
+   */
+  public int tryAcquire(InetAddress address) {
+    Settings.MAIN.SESSION_LIMIT settings = this.settings;
+    long high = AddressUtils.getHigh(address);
+    long low = AddressUtils.getLow(address);
+    // The prefix is kept by the session, so a reload can't unbalance the counters.
+    int prefix = address instanceof Inet4Address ? AddressUtils.IPV4_MAPPED_BITS + settings.IPV4_PREFIX : settings.IPV6_PREFIX;
+
+    // Sessions are counted even if the limits are disabled, so they can be enabled by a reload.
+    if (!increment(this.addresses, high, low, settings.ENABLED ? settings.MAX_PER_ADDRESS : -1)) {
+      return -1;
+    }
+
+    int subnetLimit = settings.ENABLED ? settings.MAX_PER_SUBNET : -1;
+    if (!increment(this.subnets, high & AddressUtils.mask(prefix), low & AddressUtils.mask(prefix - 64), subnetLimit)) {
+      decrement(this.addresses, high, low);
+      return -1;
+    }
+
+    return prefix;
+  }
+
+  public void release(InetAddress address, int prefix) {
+    long high = AddressUtils.getHigh(address);
+    long low = AddressUtils.getLow(address);
+    decrement(this.addresses, high, low);
+    decrement(this.subnets, high & AddressUtils.mask(prefix), low & AddressUtils.mask(prefix - 64));
+  }
+
+  private static boolean increment(AtomicIntegerArray table, long high, long low, int limit) {
+    long hash = AddressUtils.mix(high * 0x9E3779B97F4A7C15L ^ low);
+    int first = (int) hash & TABLE_MASK;
+    int second = ((int) (hash >>> 32) & TABLE_MASK) | (1 << TABLE_BITS);
+    int count = Math.min(table.incrementAndGet(first), table.incrementAndGet(second));
+    if (limit != -1 && count > limit) {
+      table.decrementAndGet(first);
+      table.decrementAndGet(second);
+      return false;
+    }
+
+    return true;
+  }
+
+  private static void decrement(AtomicIntegerArray table, long high, long low) {
+    long hash = AddressUtils.mix(high * 0x9E3779B97F4A7C15L ^ low);
+    table.decrementAndGet((int) hash & TABLE_MASK);
+    table.decrementAndGet(((int) (hash >>> 32) & TABLE_MASK) | (1 << TABLE_BITS));
+  }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright (C) 2021 - 2022 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limbofilter.policy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import net.elytrium.limbofilter.LimboFilter;
+import net.elytrium.limbofilter.Settings;
+import net.elytrium.limbofilter.stats.Statistics;
+import net.kyori.adventure.text.Component;
+
+/**
+ * Blocked username patterns, compiled into one DFA, so a username is matched against all patterns in one pass without allocations.
+ *
+ * <p>Pattern syntax (case-insensitive): "text" matches usernames containing the text, "^" and "$" anchor it to the start and the end,
+ * "#" matches any digit and "?" matches any character.
+ */
+public class UsernameFilter {
+
+  public static final int NO_MATCH = -1;
+
+  private static final int MAX_STATES = 16384;
+  // a-z, 0-9, '_', any other character, and the end of the username.
+  private static final int DIGITS = 26;
+  private static final int UNDERSCORE = 36;
+  private static final int OTHER = 37;
+  private static final int END = 38;
+  private static final int ALPHABET = 39;
+
+  private final List<String> patterns = new ArrayList<>();
+  private final Component blockReason;
+  private final LongAdder[] matches;
+  private final int[] transitions;
+  // The first matched pattern of every state, or NO_MATCH.
+  private final int[] matched;
+
+  public UsernameFilter(Settings.MAIN.USERNAME_FILTER settings, Statistics statistics, Component blockReason) {
+    this.blockReason = blockReason;
+
+    List<Pattern> compiled = new ArrayList<>();
+    if (settings.ENABLED) {
+      for (String pattern : settings.PATTERNS) {
+        try {
+          compiled.add(new Pattern(pattern));
+          this.patterns.add(pattern);
+        } catch (IllegalArgumentException e) {
+          LimboFilter.getLogger().warn("Invalid username pattern \"" + pattern + "\": " + e.getMessage());
+        }
+      }
+    }
+
+    Automaton automaton = new Automaton(compiled);
+    if (automaton.states > MAX_STATES) {
+      LimboFilter.getLogger().error("Username patterns are too complex (more than " + MAX_STATES + " states), the username filter is disabled.");
+      this.patterns.clear();
+      automaton = new Automaton(List.of());
+    }
+
+    this.transitions = automaton.transitions;
+    this.matched = automaton.matched;
+    this.matches = new LongAdder[this.patterns.size()];
+    for (int i = 0; i < this.matches.length; ++i) {
+      this.matches[i] = statistics.getUsernameMatches(this.patterns.get(i));
+    }
+  }
+
+  /**
+   * Counts the match in the statistics.
+   *
+   * @return the index of the first matched pattern, or {@link #NO_MATCH}
+   */
+  public int match(String username) {
+    int[] transitions = this.transitions;
+    int[] matched = this.matched;
+    int state = 0;
+    for (int i = 0; i < username.length() && matched[state] == NO_MATCH; ++i) {
+      state = transitions[state * ALPHABET + symbol(username.charAt(i))];
+    }
+
+    if (matched[state] == NO_MATCH) {
+      state = transitions[state * ALPHABET + END];
+    }
+
+    int pattern = matched[state];
+    if (pattern != NO_MATCH) {
+      this.matches[pattern].increment();
+    }
+
+    return pattern;
+  }
+
+  public String getPattern(int index) {
+    return this.patterns.get(index);
+  }
+
+  public Component getBlockReason() {
+    return this.blockReason;
+  }
+
+  private static int symbol(char character) {
+    if (character >= 'a' && character <= 'z') {
+      return character - 'a';
+    } else if (character >= 'A' && character <= 'Z') {
+      return character - 'A';
+    } else if (character >= '0' && character <= '9') {
+      return DIGITS + character - '0';
+    } else if (character == '_') {
+      return UNDERSCORE;
+    } else {
+      return OTHER;
+    }
+  }
+
+  private static class Pattern {
+
+    private final boolean anchoredStart;
+    private final boolean anchoredEnd;
+    // Symbols matched at every position, as bit masks.
+    private final long[] tokens;
+
+    private Pattern(String pattern) {
+      String body = pattern.strip().toLowerCase(Locale.ROOT);
+      this.anchoredStart = body.startsWith("^");
+      this.anchoredEnd = body.endsWith("$") && body.length() > (this.anchoredStart ? 1 : 0);
+      body = body.substring(this.anchoredStart ? 1 : 0, body.length() - (this.anchoredEnd ? 1 : 0));
+      if (body.isEmpty()) {
+        throw new IllegalArgumentException("Empty pattern");
+      }
+
+      this.tokens = new long[body.length()];
+      for (int i = 0; i < body.length(); ++i) {
+        char character = body.charAt(i);
+        if (character == '?') {
+          this.tokens[i] = (1L << END) - 1;
+        } else if (character == '#') {
+          this.tokens[i] = ((1L << 10) - 1) << DIGITS;
+        } else if (symbol(character) != OTHER) {
+          this.tokens[i] = 1L << symbol(character);
+        } else {
+          throw new IllegalArgumentException("Usernames can't contain '" + character + "'");
+        }
+      }
+    }
+  }
+
+  /**
+   * Subset construction over the pattern positions. Every pattern takes tokens + 2 positions:
+   * the matched tokens count, and the position after the end of the username for patterns anchored to the end.
+   */
+  private static class Automaton {
+
+    private int[] transitions = new int[ALPHABET * 16];
+    private int[] matched = new int[16];
+    private int states;
+
+    private Automaton(List<Pattern> patterns) {
+      int[] offsets = new int[patterns.size() + 1];
+      for (int i = 0; i < patterns.size(); ++i) {
+        offsets[i + 1] = offsets[i] + patterns.get(i).tokens.length + 2;
+      }
+
+      BitSet starts = new BitSet();
+      BitSet initial = new BitSet();
+      for (int i = 0; i < patterns.size(); ++i) {
+        initial.set(offsets[i]);
+        if (!patterns.get(i).anchoredStart) {
+          starts.set(offsets[i]);
+        }
+      }
+
+      Map<BitSet, Integer> ids = new HashMap<>();
+      List<BitSet> queue = new ArrayList<>();
+      this.addState(initial, patterns, offsets, ids, queue);
+      for (int current = 0; current < queue.size() && this.states <= MAX_STATES; ++current) {
+        if (this.matched[current] != NO_MATCH) {
+          // Matching stops at the first match, so the rest of the username doesn't matter.
+          Arrays.fill(this.transitions, current * ALPHABET, (current + 1) * ALPHABET, current);
+          continue;
+        }
+
+        BitSet state = queue.get(current);
+        for (int symbol = 0; symbol < ALPHABET; ++symbol) {
+          BitSet next = new BitSet();
+          for (int pattern = 0; pattern < patterns.size(); ++pattern) {
+            long[] tokens = patterns.get(pattern).tokens;
+            for (int position = state.nextSetBit(offsets[pattern]); position != -1 && position < offsets[pattern + 1];
+                 position = state.nextSetBit(position + 1)) {
+              int index = position - offsets[pattern];
+              if (index < tokens.length && (tokens[index] & (1L << symbol)) != 0) {
+                next.set(position + 1);
+              } else if (index == tokens.length && symbol == END) {
+                next.set(position + 1);
+              }
+            }
+          }
+
+          if (symbol != END) {
+            next.or(starts);
+          }
+
+          Integer id = ids.get(next);
+          // addState may grow the arrays, so it must be called before this.transitions is read.
+          int target = id == null ? this.addState(next, patterns, offsets, ids, queue) : id;
+          this.transitions[current * ALPHABET + symbol] = target;
+        }
+      }
+
+      this.transitions = Arrays.copyOf(this.transitions, this.states * ALPHABET);
+      this.matched = Arrays.copyOf(this.matched, this.states);
+    }
+
+    private int addState(BitSet state, List<Pattern> patterns, int[] offsets, Map<BitSet, Integer> ids, List<BitSet> queue) {
+      int id = this.states++;
+      if (id == this.matched.length) {
+        this.transitions = Arrays.copyOf(this.transitions, this.transitions.length * 2);
+        this.matched = Arrays.copyOf(this.matched, this.matched.length * 2);
+      }
+
+      this.matched[id] = NO_MATCH;
+      for (int pattern = 0; pattern < patterns.size(); ++pattern) {
+        Pattern compiled = patterns.get(pattern);
+        int end = offsets[pattern] + compiled.tokens.length;
+        if (state.get(compiled.anchoredEnd ? end + 1 : end)) {
+          this.matched[id] = pattern;
+          break;
+        }
+      }
+
+      ids.put(state, id);
+      queue.add(state);
+      return id;
+    }
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2021 - 2022 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limbofilter.protocol;
+
+import com.velocitypowered.api.network.ProtocolVersion;
+import com.velocitypowered.proxy.network.Connections;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import net.elytrium.limbofilter.FilterGeneration;
+import net.elytrium.limbofilter.LimboFilter;
+import net.elytrium.limbofilter.Settings;
+import net.elytrium.limbofilter.policy.ConnectionRateTable;
+import net.elytrium.limbofilter.stats.HeavyHitters;
+import net.elytrium.limbofilter.stats.VerdictReason;
+
+/**
+ * Wraps the Velocity server channel initializer. Accepted connections from denied addresses or over the rate
+ * are closed before Velocity builds their pipeline, the rest get the {@link FrameValidator} in front of the packet decoder.
+ */
+public class FilterChannelInitializer extends ChannelInitializer<Channel> {
+
+  private static final String FRAME_VALIDATOR = "limbofilter-frame-validator";
+
+  private final ConnectionRateTable rateTable = new ConnectionRateTable();
+  private final LimboFilter plugin;
+  private final ChannelInitializer<Channel> original;
+  private final boolean proxyProtocol;
+
+  public FilterChannelInitializer(LimboFilter plugin, ChannelInitializer<Channel> original, boolean proxyProtocol) {
+    this.plugin = plugin;
+    this.original = original;
+    this.proxyProtocol = proxyProtocol;
+  }
+
+  @Override
+  protected void initChannel(Channel channel) {
+    Settings.MAIN settings = this.plugin.getSettings();
+    SocketAddress remoteAddress = channel.remoteAddress();
+    // With proxy-protocol, the real address is only known after decoding.
+    if (settings.EARLY_DROP.ENABLED && !this.proxyProtocol && remoteAddress instanceof InetSocketAddress) {
+      InetAddress address = ((InetSocketAddress) remoteAddress).getAddress();
+      VerdictReason reason = this.check(address, settings.EARLY_DROP);
+      if (reason != null) {
+        // Nothing is known about the connection yet, there is no point in writing it to the audit log.
+        this.plugin.getStatistics().addVerdict(reason, ProtocolVersion.UNKNOWN, null);
+        this.plugin.addHeavyHitter(HeavyHitters.Metric.FAILURES, address);
+        channel.close();
+        return;
+      }
+    }
+
+    // The original initializer builds the Velocity pipeline once added, as the channel is already registered.
+    channel.pipeline().addLast(this.original);
+    if (settings.FRAME_VALIDATOR.ENABLED && channel.pipeline().get(Connections.FRAME_DECODER) != null) {
+      channel.pipeline().addAfter(Connections.FRAME_DECODER, FRAME_VALIDATOR, new FrameValidator(this.plugin.getStatistics(), settings.FRAME_VALIDATOR));
+    }
+  }
+
+  private VerdictReason check(InetAddress address, Settings.MAIN.EARLY_DROP earlyDrop) {
+    FilterGeneration generation = this.plugin.getGeneration();
+    if (generation != null && earlyDrop.DROP_DENIED_ADDRESSES && generation.getAddressLists().isDenied(address)) {
+      return VerdictReason.ADDRESS_DENIED;
+    }
+
+    if (earlyDrop.MAX_CONNECTIONS_PER_SECOND > 0 && this.rateTable.acquire(address) > earlyDrop.MAX_CONNECTIONS_PER_SECOND
+        && (generation == null || !generation.getAddressLists().isAllowed(address))) {
+      return VerdictReason.CONNECTION_RATE;
+    }
+
+    return null;
+  }
+}
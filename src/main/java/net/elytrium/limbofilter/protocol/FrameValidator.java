@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2021 - 2022 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limbofilter.protocol;
+
+import com.velocitypowered.api.network.ProtocolVersion;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.util.ReferenceCountUtil;
+import net.elytrium.limbofilter.Settings;
+import net.elytrium.limbofilter.stats.Statistics;
+
+/**
+ * Validates the raw handshake and login start frames before Velocity decodes them, and removes itself afterwards.
+ * Fields are read in place, so valid frames are passed on untouched and no strings are allocated.
+ */
+public class FrameValidator extends ChannelInboundHandlerAdapter {
+
+  private static final int HANDSHAKE_ID = 0x00;
+  private static final int LOGIN_START_ID = 0x00;
+  private static final int STATE_STATUS = 1;
+  private static final int STATE_LOGIN = 2;
+  private static final int MAX_USERNAME_LENGTH = 16;
+  private static final long MALFORMED = Long.MIN_VALUE;
+
+  private final Statistics statistics;
+  private final Settings.MAIN.FRAME_VALIDATOR settings;
+
+  private boolean login;
+  private boolean rejected;
+  private int position;
+
+  public FrameValidator(Statistics statistics, Settings.MAIN.FRAME_VALIDATOR settings) {
+    this.statistics = statistics;
+    this.settings = settings;
+  }
+
+  @Override
+  public void channelRead(ChannelHandlerContext ctx, Object msg) {
+    if (this.rejected) {
+      // The rest of the frames decoded before the channel got closed.
+      ReferenceCountUtil.release(msg);
+      return;
+    }
+
+    if (!(msg instanceof ByteBuf)) {
+      ctx.fireChannelRead(msg);
+      return;
+    }
+
+    ByteBuf frame = (ByteBuf) msg;
+    this.position = frame.readerIndex();
+    boolean handshake = !this.login;
+    Rule rule = handshake ? this.validateHandshake(frame) : this.validateLoginStart(frame);
+    if (rule != null) {
+      this.rejected = true;
+      this.statistics.addFrameRejection(rule);
+      ReferenceCountUtil.release(frame);
+      ctx.close();
+      return;
+    }
+
+    // After a login handshake, the login start frame is validated too.
+    if (!handshake || !this.login) {
+      ctx.pipeline().remove(this);
+    }
+
+    ctx.fireChannelRead(frame);
+  }
+
+  private Rule validateHandshake(ByteBuf frame) {
+    if (this.readVarInt(frame) != HANDSHAKE_ID) {
+      return Rule.PACKET_ID;
+    }
+
+    long protocol = this.readVarInt(frame);
+    long hostnameLength = this.readVarInt(frame);
+    if (protocol == MALFORMED || hostnameLength == MALFORMED) {
+      return Rule.MALFORMED;
+    }
+
+    if (hostnameLength <= 0 || hostnameLength > this.settings.MAX_HOSTNAME_LENGTH) {
+      return Rule.HOSTNAME;
+    }
+
+    // The hostname and the port.
+    this.position += hostnameLength + 2;
+    long nextState = this.readVarInt(frame);
+    if (nextState == MALFORMED || this.position != frame.writerIndex()) {
+      return Rule.MALFORMED;
+    }
+
+    if (nextState == STATE_LOGIN) {
+      if (this.settings.CHECK_PROTOCOL_VERSION && !ProtocolVersion.isSupported((int) protocol)) {
+        return Rule.PROTOCOL_VERSION;
+      }
+
+      // The login start frame is validated next.
+      this.login = true;
+    } else if (nextState != STATE_STATUS) {
+      return Rule.NEXT_STATE;
+    }
+
+    return null;
+  }
+
+  private Rule validateLoginStart(ByteBuf frame) {
+    if (this.readVarInt(frame) != LOGIN_START_ID) {
+      return Rule.PACKET_ID;
+    }
+
+    long usernameLength = this.readVarInt(frame);
+    if (usernameLength == MALFORMED || this.position + usernameLength > frame.writerIndex()) {
+      return Rule.MALFORMED;
+    }
+
+    if (usernameLength <= 0 || usernameLength > (this.settings.STRICT_USERNAMES ? MAX_USERNAME_LENGTH : MAX_USERNAME_LENGTH * 3)) {
+      return Rule.USERNAME;
+    }
+
+    if (this.settings.STRICT_USERNAMES) {
+      for (int i = 0; i < usernameLength; ++i) {
+        byte character = frame.getByte(this.position + i);
+        if (!(character >= 'a' && character <= 'z' || character >= 'A' && character <= 'Z' || character >= '0' && character <= '9' || character == '_')) {
+          return Rule.USERNAME;
+        }
+      }
+    }
+
+    // Fields after the username differ between versions, Velocity validates them.
+    return null;
+  }
+
+  /**
+   * @return the VarInt at the current position, or {@link #MALFORMED} if it doesn't fit into the frame or is too long
+   */
+  private long readVarInt(ByteBuf frame) {
+    int value = 0;
+    for (int i = 0; i < 5; ++i) {
+      if (this.position >= frame.writerIndex()) {
+        return MALFORMED;
+      }
+
+      byte part = frame.getByte(this.position++);
+      value |= (part & 0x7F) << (i * 7);
+      if ((part & 0x80) == 0) {
+        return value;
+      }
+    }
+
+    return MALFORMED;
+  }
+
+  public enum Rule {
+
+    MALFORMED("Truncated frame or invalid VarInt"),
+    PACKET_ID("Unexpected packet id"),
+    PROTOCOL_VERSION("Unsupported protocol version"),
+    HOSTNAME("Empty or too long hostname"),
+    NEXT_STATE("Unknown next state"),
+    USERNAME("Invalid username length or characters");
+
+    private final String description;
+
+    Rule(String description) {
+      this.description = description;
+    }
+
+    public String getDescription() {
+      return this.description;
+    }
+  }
+}
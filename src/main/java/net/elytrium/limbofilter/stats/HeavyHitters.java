@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2021 - 2022 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limbofilter.stats;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import net.elytrium.limbofilter.utils.AddressUtils;
+
+/**
+ * Subnets and networks with the most connections and failures during about the last minute, in constant memory.
+ *
+ * <p>Every tracker is a Count-Min sketch split into time slices, with a table of top candidates.
+ * Candidates are kept in two hashed slots instead of the Space-Saving heap, so counting doesn't need a lock:
+ * a new key takes the weaker slot once its estimate is higher. Counts can be overestimated, never underestimated.
+ */
+public class HeavyHitters {
+
+  private static final int SLICES = 6;
+  private static final long SLICE_MILLIS = 10000;
+  private static final int DEPTH = 4;
+  private static final int WIDTH = 2048;
+  private static final int CANDIDATES = 1024;
+  private static final long IPV4_KEY = 1L << 62;
+  private static final long IPV6_KEY = 2L << 62;
+  private static final long ASN_KEY = 3L << 62;
+  private static final long VALUE_MASK = (1L << 62) - 1;
+  private static final int IPV4_PREFIX = 24;
+  private static final int IPV6_PREFIX = 48;
+
+  private final Tracker[] subnets = new Tracker[Metric.values().length];
+  private final Tracker[] networks = new Tracker[Metric.values().length];
+
+  public HeavyHitters() {
+    for (int i = 0; i < this.subnets.length; ++i) {
+      this.subnets[i] = new Tracker();
+      this.networks[i] = new Tracker();
+    }
+  }
+
+  /**
+   * @param asn the autonomous system number of the address, or -1 if unknown
+   */
+  public void add(Metric metric, InetAddress address, long asn) {
+    long high = AddressUtils.getHigh(address);
+    long low = AddressUtils.getLow(address);
+    long subnet;
+    if (AddressUtils.isIpv4Mapped(high, low)) {
+      subnet = IPV4_KEY | (low & 0xFFFFFFFFL) >>> (32 - IPV4_PREFIX);
+    } else {
+      subnet = IPV6_KEY | high >>> (64 - IPV6_PREFIX);
+    }
+
+    long epoch = System.currentTimeMillis() / SLICE_MILLIS;
+    this.subnets[metric.ordinal()].add(subnet, epoch);
+    if (asn >= 0) {
+      this.networks[metric.ordinal()].add(ASN_KEY | asn, epoch);
+    }
+  }
+
+  public List<Entry> getTopSubnets(Metric metric, int limit) {
+    return this.subnets[metric.ordinal()].getTop(System.currentTimeMillis() / SLICE_MILLIS, limit);
+  }
+
+  public List<Entry> getTopNetworks(Metric metric, int limit) {
+    return this.networks[metric.ordinal()].getTop(System.currentTimeMillis() / SLICE_MILLIS, limit);
+  }
+
+  private static String toString(long key) {
+    long value = key & VALUE_MASK;
+    if ((key & ~VALUE_MASK) == IPV4_KEY) {
+      return AddressUtils.toInetAddress(0, AddressUtils.IPV4_MAPPED_PREFIX | value << (32 - IPV4_PREFIX)).getHostAddress() + "/" + IPV4_PREFIX;
+    } else if ((key & ~VALUE_MASK) == IPV6_KEY) {
+      return AddressUtils.toInetAddress(value << (64 - IPV6_PREFIX), 0).getHostAddress() + "/" + IPV6_PREFIX;
+    } else {
+      return "AS" + value;
+    }
+  }
+
+  public enum Metric {
+
+    CONNECTIONS,
+    FAILURES
+  }
+
+  private static class Tracker {
+
+    private final AtomicLongArray counters = new AtomicLongArray(SLICES * DEPTH * WIDTH);
+    private final AtomicLongArray sliceEpochs = new AtomicLongArray(SLICES);
+    private final AtomicLongArray keys = new AtomicLongArray(CANDIDATES);
+    // The epoch of the last update above the estimate at that time.
+    private final AtomicLongArray scores = new AtomicLongArray(CANDIDATES);
+
+    private void add(long key, long epoch) {
+      int slice = (int) (epoch % SLICES);
+      long sliceEpoch = this.sliceEpochs.get(slice);
+      if (sliceEpoch < epoch && this.sliceEpochs.compareAndSet(slice, sliceEpoch, epoch)) {
+        // Counts added by other threads while clearing can be lost, which only matters at the slice start.
+        for (int i = slice * DEPTH * WIDTH; i < (slice + 1) * DEPTH * WIDTH; ++i) {
+          this.counters.lazySet(i, 0);
+        }
+      }
+
+      long hash = AddressUtils.mix(key);
+      for (int row = 0; row < DEPTH; ++row) {
+        this.counters.incrementAndGet((slice * DEPTH + row) * WIDTH + column(hash, row));
+      }
+
+      long estimate = this.estimate(hash, epoch);
+      long candidateHash = AddressUtils.mix(hash);
+      int first = (int) candidateHash & (CANDIDATES - 1);
+      int second = (int) (candidateHash >>> 32) & (CANDIDATES - 1);
+      long score = epoch << 40 | Math.min(estimate, (1L << 40) - 1);
+      if (this.keys.get(first) == key) {
+        this.scores.lazySet(first, score);
+      } else if (this.keys.get(second) == key) {
+        this.scores.lazySet(second, score);
+      } else {
+        int weaker = this.getScore(first, epoch) <= this.getScore(second, epoch) ? first : second;
+        long weakerKey = this.keys.get(weaker);
+        if (estimate > this.getScore(weaker, epoch) && this.keys.compareAndSet(weaker, weakerKey, key)) {
+          this.scores.lazySet(weaker, score);
+        }
+      }
+    }
+
+    private List<Entry> getTop(long epoch, int limit) {
+      List<Entry> entries = new ArrayList<>();
+      for (int i = 0; i < CANDIDATES; ++i) {
+        long key = this.keys.get(i);
+        if (key != 0) {
+          long count = this.estimate(AddressUtils.mix(key), epoch);
+          if (count != 0) {
+            entries.add(new Entry(HeavyHitters.toString(key), count));
+          }
+        }
+      }
+
+      entries.sort(Comparator.comparingLong(Entry::getCount).reversed());
+      return entries.subList(0, Math.min(limit, entries.size()));
+    }
+
+    private long estimate(long hash, long epoch) {
+      long estimate = Long.MAX_VALUE;
+      for (int row = 0; row < DEPTH; ++row) {
+        int column = column(hash, row);
+        long sum = 0;
+        for (int slice = 0; slice < SLICES; ++slice) {
+          if (epoch - this.sliceEpochs.get(slice) < SLICES) {
+            sum += this.counters.get((slice * DEPTH + row) * WIDTH + column);
+          }
+        }
+
+        estimate = Math.min(estimate, sum);
+      }
+
+      return estimate;
+    }
+
+    private long getScore(int candidate, long epoch) {
+      long score = this.scores.get(candidate);
+      return epoch - (score >>> 40) < SLICES ? score & ((1L << 40) - 1) : 0;
+    }
+
+    private static int column(long hash, int row) {
+      return (int) (hash >>> (row * 16)) & (WIDTH - 1);
+    }
+  }
+
+  public static class Entry {
+
+    private final String name;
+    private final long count;
+
+    private Entry(String name, long count) {
+      this.name = name;
+      this.count = count;
+    }
+
+    public String getName() {
+      return this.name;
+    }
+
+    public long getCount() {
+      return this.count;
+    }
+  }
+}
@@ -17,64 +17,168 @@
 
 package net.elytrium.limbofilter.stats;
 
+import com.velocitypowered.api.network.ProtocolVersion;
+import java.util.Map;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import net.elytrium.limbofilter.Settings;
+import net.elytrium.limbofilter.handler.BotFilterSessionHandler;
+import net.elytrium.limbofilter.protocol.FrameValidator;
 
 public class Statistics {
 
   private final AtomicLong blockedConnections = new AtomicLong();
+  private final AtomicLong passedConnections = new AtomicLong();
+  private final AtomicLong sessions = new AtomicLong();
   private final AtomicLong connections = new AtomicLong();
   private final AtomicLong pings = new AtomicLong();
   private final AtomicLong interpolatedCpsBefore = new AtomicLong();
   private final AtomicLong interpolatedPpsBefore = new AtomicLong();
+  private final AtomicLong connectionsCounter = new AtomicLong();
+  private final AtomicLong pingsCounter = new AtomicLong();
+  private final VerdictCounters verdicts = new VerdictCounters();
+  private final Map<String, LongAdder> usernameMatches = new ConcurrentHashMap<>();
+  private final LongAdder[] frameRejections = new LongAdder[FrameValidator.Rule.values().length];
+
+  private Timer timer;
+  private volatile int unitOfTimeCps = 1;
+  private volatile int unitOfTimePps = 1;
+
+  public Statistics() {
+    for (int i = 0; i < this.frameRejections.length; ++i) {
+      this.frameRejections[i] = new LongAdder();
+    }
+  }
+
+  /**
+   * Counts the verdict as a blocked or passed connection, and in the verdict breakdown.
+   *
+   * @param state the check state when the verdict was given, or null if the player wasn't checked yet
+   */
+  public void addVerdict(VerdictReason reason, ProtocolVersion version, BotFilterSessionHandler.CheckState state) {
+    if (reason.isBlocked()) {
+      this.blockedConnections.incrementAndGet();
+    } else {
+      this.passedConnections.incrementAndGet();
+    }
+
+    this.verdicts.add(reason, version, state);
+  }
 
-  public void addBlockedConnection() {
-    this.blockedConnections.incrementAndGet();
+  public void addSession() {
+    this.sessions.incrementAndGet();
+  }
+
+  public void removeSession() {
+    this.sessions.decrementAndGet();
   }
 
   public void addConnection() {
-    this.connections.addAndGet(Settings.IMP.MAIN.UNIT_OF_TIME_CPS * 2L);
+    this.connections.addAndGet(this.unitOfTimeCps * 2L);
+    this.connectionsCounter.incrementAndGet();
   }
 
   public void addPing() {
-    this.pings.addAndGet(Settings.IMP.MAIN.UNIT_OF_TIME_CPS * 2L);
+    this.pings.addAndGet(this.unitOfTimeCps * 2L);
+    this.pingsCounter.incrementAndGet();
   }
 
   public long getBlockedConnections() {
     return this.blockedConnections.get();
   }
 
+  public long getPassedConnections() {
+    return this.passedConnections.get();
+  }
+
+  public VerdictCounters getVerdicts() {
+    return this.verdicts;
+  }
+
+  public void addFrameRejection(FrameValidator.Rule rule) {
+    this.frameRejections[rule.ordinal()].increment();
+    this.addVerdict(VerdictReason.INVALID_FRAME, ProtocolVersion.UNKNOWN, null);
+  }
+
+  public long getFrameRejections(FrameValidator.Rule rule) {
+    return this.frameRejections[rule.ordinal()].sum();
+  }
+
+  /**
+   * @return the match counter of the username pattern, kept across reloads
+   */
+  public LongAdder getUsernameMatches(String pattern) {
+    return this.usernameMatches.computeIfAbsent(pattern, key -> new LongAdder());
+  }
+
+  public Map<String, LongAdder> getUsernameMatches() {
+    return this.usernameMatches;
+  }
+
+  /**
+   * @return amount of players in the filter limbo right now
+   */
+  public long getSessions() {
+    return this.sessions.get();
+  }
+
   public long getConnections() {
-    return this.connections.get() / Settings.IMP.MAIN.UNIT_OF_TIME_CPS / 2L;
+    return this.connections.get() / this.unitOfTimeCps / 2L;
   }
 
   public long getPings() {
-    return this.pings.get() / Settings.IMP.MAIN.UNIT_OF_TIME_CPS / 2L;
+    return this.pings.get() / this.unitOfTimeCps / 2L;
+  }
+
+  /**
+   * @return amount of connections since the start, never decreases
+   */
+  public long getConnectionsCounter() {
+    return this.connectionsCounter.get();
+  }
+
+  /**
+   * @return amount of pings since the start, never decreases
+   */
+  public long getPingsCounter() {
+    return this.pingsCounter.get();
   }
 
   public long getTotalConnection() {
     return this.getPings() + this.getConnections();
   }
 
-  public void startUpdating() {
-    this.startUpdatingCps();
-    this.startUpdatingPps();
+  public synchronized void startUpdating(Settings.MAIN settings) {
+    this.stopUpdating();
+    this.unitOfTimeCps = settings.UNIT_OF_TIME_CPS;
+    this.unitOfTimePps = settings.UNIT_OF_TIME_PPS;
+    this.timer = new Timer("limbofilter-statistics", true);
+    this.startUpdatingCps(this.timer);
+    this.startUpdatingPps(this.timer);
+  }
+
+  public synchronized void stopUpdating() {
+    if (this.timer != null) {
+      this.timer.cancel();
+      this.timer = null;
+    }
   }
 
-  private void startUpdatingCps() {
-    long delayInterpolate = Settings.IMP.MAIN.UNIT_OF_TIME_CPS * 1000L;
+  private void startUpdatingCps(Timer timer) {
+    long delayInterpolate = this.unitOfTimeCps * 1000L;
 
-    new Timer().scheduleAtFixedRate(new TimerTask() {
+    timer.scheduleAtFixedRate(new TimerTask() {
       public void run() {
-        Statistics.this.interpolatedCpsBefore.set(Statistics.this.connections.get() / Settings.IMP.MAIN.UNIT_OF_TIME_CPS / 2L);
+        Statistics.this.interpolatedCpsBefore.set(Statistics.this.connections.get() / Statistics.this.unitOfTimeCps / 2L);
       }
     }, delayInterpolate, delayInterpolate);
 
-    long delay = delayInterpolate / Settings.IMP.MAIN.UNIT_OF_TIME_CPS / 2L;
+    long delay = delayInterpolate / this.unitOfTimeCps / 2L;
 
-    new Timer().scheduleAtFixedRate(new TimerTask() {
+    timer.scheduleAtFixedRate(new TimerTask() {
       public void run() {
         long current = Statistics.this.connections.get();
         long before = Statistics.this.interpolatedCpsBefore.get();
@@ -86,18 +190,18 @@ public class Statistics {
     }, delay, delay);
   }
 
-  private void startUpdatingPps() {
-    long delayInterpolate = Settings.IMP.MAIN.UNIT_OF_TIME_PPS * 1000L;
+  private void startUpdatingPps(Timer timer) {
+    long delayInterpolate = this.unitOfTimePps * 1000L;
 
-    new Timer().scheduleAtFixedRate(new TimerTask() {
+    timer.scheduleAtFixedRate(new TimerTask() {
       public void run() {
-        Statistics.this.interpolatedPpsBefore.set(Statistics.this.pings.get() / Settings.IMP.MAIN.UNIT_OF_TIME_PPS / 2L);
+        Statistics.this.interpolatedPpsBefore.set(Statistics.this.pings.get() / Statistics.this.unitOfTimePps / 2L);
       }
     }, delayInterpolate, delayInterpolate);
 
-    long delay = delayInterpolate / Settings.IMP.MAIN.UNIT_OF_TIME_PPS / 2L;
+    long delay = delayInterpolate / this.unitOfTimePps / 2L;
 
-    new Timer().scheduleAtFixedRate(new TimerTask() {
+    timer.scheduleAtFixedRate(new TimerTask() {
       public void run() {
         long current = Statistics.this.pings.get();
         long before = Statistics.this.interpolatedPpsBefore.get();
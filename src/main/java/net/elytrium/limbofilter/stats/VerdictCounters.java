@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2021 - 2022 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limbofilter.stats;
+
+import com.velocitypowered.api.network.ProtocolVersion;
+import java.util.concurrent.atomic.LongAdder;
+import net.elytrium.limbofilter.handler.BotFilterSessionHandler;
+
+/**
+ * Verdicts counted by reason, protocol version and check state, since the start.
+ * All counters are allocated up front, so counting a verdict doesn't allocate.
+ */
+public class VerdictCounters {
+
+  private static final VerdictReason[] REASONS = VerdictReason.values();
+  private static final ProtocolVersion[] VERSIONS = ProtocolVersion.values();
+  private static final BotFilterSessionHandler.CheckState[] STATES = BotFilterSessionHandler.CheckState.values();
+  // The last state column is used for verdicts given before the check has started.
+  private static final int STATES_COUNT = STATES.length + 1;
+
+  private final LongAdder[] counters = new LongAdder[REASONS.length * VERSIONS.length * STATES_COUNT];
+
+  public VerdictCounters() {
+    for (int i = 0; i < this.counters.length; ++i) {
+      this.counters[i] = new LongAdder();
+    }
+  }
+
+  /**
+   * @param state the check state when the verdict was given, or null if the player wasn't checked yet
+   */
+  public void add(VerdictReason reason, ProtocolVersion version, BotFilterSessionHandler.CheckState state) {
+    this.counters[index(reason.ordinal(), version.ordinal(), state == null ? STATES.length : state.ordinal())].increment();
+  }
+
+  public Snapshot snapshot() {
+    long[] values = new long[this.counters.length];
+    for (int i = 0; i < values.length; ++i) {
+      values[i] = this.counters[i].sum();
+    }
+
+    return new Snapshot(values);
+  }
+
+  private static int index(int reason, int version, int state) {
+    return (reason * VERSIONS.length + version) * STATES_COUNT + state;
+  }
+
+  public static class Snapshot {
+
+    private final long[] values;
+
+    private Snapshot(long[] values) {
+      this.values = values;
+    }
+
+    /**
+     * @param state the check state, or null for verdicts given before the check has started
+     */
+    public long get(VerdictReason reason, ProtocolVersion version, BotFilterSessionHandler.CheckState state) {
+      return this.values[index(reason.ordinal(), version.ordinal(), state == null ? STATES.length : state.ordinal())];
+    }
+
+    public long get(VerdictReason reason) {
+      long sum = 0;
+      int from = index(reason.ordinal(), 0, 0);
+      for (int i = from; i < from + VERSIONS.length * STATES_COUNT; ++i) {
+        sum += this.values[i];
+      }
+
+      return sum;
+    }
+
+    public long get(VerdictReason reason, ProtocolVersion version) {
+      long sum = 0;
+      int from = index(reason.ordinal(), version.ordinal(), 0);
+      for (int i = from; i < from + STATES_COUNT; ++i) {
+        sum += this.values[i];
+      }
+
+      return sum;
+    }
+
+    public long get(VerdictReason reason, BotFilterSessionHandler.CheckState state) {
+      long sum = 0;
+      for (ProtocolVersion version : VERSIONS) {
+        sum += this.get(reason, version, state);
+      }
+
+      return sum;
+    }
+  }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2021 - 2022 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limbofilter.stats;
+
+// Ordinals are written to the audit log, so new reasons should only be appended.
+public enum VerdictReason {
+
+  PASSED("Passed all checks"),
+  FALLING_CHECK_XZ("A lot of non-valid XZ attempts"),
+  FALLING_CHECK_Y("A lot of non-valid Y attempts"),
+  FALLING_CHECK_VELOCITY("Non-valid X, Z or Velocity"),
+  FALLING_CHECK_TOO_FAST("Falling check was finished too fast"),
+  CAPTCHA("Captcha attempts exceeded"),
+  CLIENT_SETTINGS("Client settings packet wasn't sent"),
+  CLIENT_BRAND("Client brand wasn't sent or is blocked"),
+  TIMEOUT("Check time exceeded"),
+  ADMISSION_SHED("Shed by the admission control"),
+  SESSION_LIMIT("Too many sessions from the address or subnet"),
+  ADDRESS_DENIED("The address is in a denied range"),
+  NETWORK_LIMIT("The network has exceeded its connection rate"),
+  USERNAME_PATTERN("The username matches a blocked pattern"),
+  NO_PING("The server list wasn't pinged before joining"),
+  PACKET_RATE("Packets were sent at a rate outside the limits"),
+  CONNECTION_RATE("Too many connections per second from the address"),
+  INVALID_FRAME("Malformed or implausible handshake or login start");
+
+  private static final VerdictReason[] VALUES = values();
+
+  private final String description;
+
+  VerdictReason(String description) {
+    this.description = description;
+  }
+
+  public String getDescription() {
+    return this.description;
+  }
+
+  public boolean isBlocked() {
+    return this != PASSED;
+  }
+
+  public static VerdictReason fromOrdinal(int ordinal) {
+    return ordinal >= 0 && ordinal < VALUES.length ? VALUES[ordinal] : null;
+  }
+}
@@ -0,0 +1,385 @@
+/*
+ * Copyright (C) 2021 - 2022 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limbofilter.stats.audit;
+
+import com.velocitypowered.api.network.ProtocolVersion;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import net.elytrium.limbofilter.LimboFilter;
+import net.elytrium.limbofilter.handler.BotFilterSessionHandler;
+import net.elytrium.limbofilter.stats.VerdictReason;
+import net.elytrium.limbofilter.utils.AddressUtils;
+
+/**
+ * Append-only verdict log, split into memory-mapped segment files with fixed-size records.
+ *
+ * <p>Segment layout: 32 bytes header (magic, record size, records count, first and last timestamps),
+ * then {@link #RECORD_SIZE} bytes per record: timestamp, address (IPv6 form), username hash, duration,
+ * protocol version, verdict reason and check state.
+ *
+ * <p>Writers reserve their record with an atomic cursor and write it without locking, only the segment rotation is synchronized.
+ * Records are written timestamp last, a zero timestamp marks a record that isn't written yet. The header count is written
+ * when the segment is closed, the live segment is scanned up to its last written record.
+ */
+public class AuditLog implements Closeable {
+
+  public static final int RECORD_SIZE = 48;
+
+  private static final long MAGIC = 0x4C46415544495431L; // LFAUDIT1
+  private static final int HEADER_SIZE = 32;
+  private static final int HEADER_COUNT = 12;
+  private static final int HEADER_FIRST_TIMESTAMP = 16;
+  private static final int HEADER_LAST_TIMESTAMP = 24;
+  private static final String SEGMENT_PREFIX = "segment-";
+  private static final String SEGMENT_SUFFIX = ".bin";
+  private static final BotFilterSessionHandler.CheckState[] CHECK_STATES = BotFilterSessionHandler.CheckState.values();
+
+  private final Path directory;
+  private final int segmentRecords;
+  private final int maxSegments;
+
+  // Writers that have passed the closed check, close waits for them.
+  private final AtomicInteger writers = new AtomicInteger();
+
+  private volatile Segment segment;
+  private volatile boolean closed;
+
+  public AuditLog(Path directory, int segmentRecords, int maxSegments) throws IOException {
+    this.directory = directory;
+    this.segmentRecords = Math.max(1, segmentRecords);
+    this.maxSegments = Math.max(1, maxSegments);
+
+    Files.createDirectories(this.directory);
+    List<Path> segments = this.listSegments();
+    if (segments.isEmpty()) {
+      this.segment = this.openSegment(this.newSegmentPath(System.currentTimeMillis()));
+    } else {
+      this.segment = this.openSegment(segments.get(segments.size() - 1));
+    }
+  }
+
+  public void write(InetAddress address, String username, ProtocolVersion version, VerdictReason reason,
+                    BotFilterSessionHandler.CheckState state, long duration) {
+    this.writers.incrementAndGet();
+    try {
+      if (this.closed) {
+        return;
+      }
+
+      long now = System.currentTimeMillis();
+      Segment segment = this.segment;
+      int index = segment.cursor.getAndIncrement();
+      while (index >= this.segmentRecords) {
+        segment = this.rotate(segment, now);
+        if (segment == null) {
+          return;
+        }
+
+        index = segment.cursor.getAndIncrement();
+      }
+
+      MappedByteBuffer buffer = segment.buffer;
+      int offset = HEADER_SIZE + index * RECORD_SIZE;
+      buffer.putLong(offset + 8, AddressUtils.getHigh(address));
+      buffer.putLong(offset + 16, AddressUtils.getLow(address));
+      buffer.putLong(offset + 24, hashUsername(username));
+      buffer.putInt(offset + 32, (int) Math.min(Integer.MAX_VALUE, duration));
+      buffer.putInt(offset + 36, version.getProtocol());
+      buffer.put(offset + 40, (byte) reason.ordinal());
+      buffer.put(offset + 41, state == null ? (byte) -1 : (byte) state.ordinal());
+      buffer.putLong(offset, now);
+
+      if (index == 0) {
+        buffer.putLong(HEADER_FIRST_TIMESTAMP, now);
+      }
+      segment.lastTimestamp.accumulateAndGet(now, Math::max);
+    } finally {
+      this.writers.decrementAndGet();
+    }
+  }
+
+  /**
+   * Scans all segments without copying them onto the heap. Segments outside the time range are skipped by their headers.
+   */
+  public Result query(AuditQuery query) throws IOException {
+    Result result = new Result(query.getLimit());
+    Path live = this.segment.path;
+    for (Path segment : this.listSegments()) {
+      try {
+        this.scan(segment, segment.equals(live), query, result);
+      } catch (NoSuchFileException e) {
+        // Deleted by a concurrent rotation after it was listed.
+      }
+    }
+
+    return result;
+  }
+
+  private void scan(Path segment, boolean live, AuditQuery query, Result result) throws IOException {
+    try (FileChannel segmentChannel = FileChannel.open(segment, StandardOpenOption.READ)) {
+      if (segmentChannel.size() < HEADER_SIZE) {
+        return;
+      }
+
+      MappedByteBuffer segmentBuffer = segmentChannel.map(FileChannel.MapMode.READ_ONLY, 0, segmentChannel.size());
+      if (segmentBuffer.getLong(0) != MAGIC || segmentBuffer.getInt(8) != RECORD_SIZE) {
+        return;
+      }
+
+      int capacity = (int) ((segmentChannel.size() - HEADER_SIZE) / RECORD_SIZE);
+      int count;
+      if (live) {
+        // The headers of the live segment aren't complete yet.
+        count = findCount(segmentBuffer, segmentBuffer.getInt(HEADER_COUNT), capacity);
+      } else {
+        count = Math.min(segmentBuffer.getInt(HEADER_COUNT), capacity);
+        if (count == 0 || !query.overlaps(segmentBuffer.getLong(HEADER_FIRST_TIMESTAMP), segmentBuffer.getLong(HEADER_LAST_TIMESTAMP))) {
+          return;
+        }
+      }
+
+      for (int i = 0; i < count; ++i) {
+        int offset = HEADER_SIZE + i * RECORD_SIZE;
+        long timestamp = segmentBuffer.getLong(offset);
+        if (timestamp == 0) {
+          continue;
+        }
+
+        long high = segmentBuffer.getLong(offset + 8);
+        long low = segmentBuffer.getLong(offset + 16);
+        long usernameHash = segmentBuffer.getLong(offset + 24);
+        int reason = segmentBuffer.get(offset + 40);
+        if (query.matches(timestamp, high, low, usernameHash, reason)) {
+          result.add(segmentBuffer, offset, reason);
+        }
+      }
+    }
+  }
+
+  /**
+   * Waits for the writers in progress, so another log opened on the same directory continues after their records.
+   */
+  @Override
+  public void close() {
+    synchronized (this) {
+      if (this.closed) {
+        return;
+      }
+
+      this.closed = true;
+    }
+
+    while (this.writers.get() != 0) {
+      Thread.onSpinWait();
+    }
+
+    synchronized (this) {
+      this.closeSegment(this.segment);
+    }
+  }
+
+  /**
+   * Replaces the full segment, only the first writer that has found it full rotates it.
+   *
+   * @return the new segment, or null if the log is closed
+   */
+  private synchronized Segment rotate(Segment full, long now) {
+    if (this.closed) {
+      return null;
+    }
+
+    if (this.segment != full) {
+      return this.segment;
+    }
+
+    // Writers that have reserved a record in the full segment still finish it, the mapping stays valid after the channel is closed.
+    this.closeSegment(full);
+    try {
+      long timestamp = now;
+      while (Files.exists(this.newSegmentPath(timestamp))) {
+        ++timestamp;
+      }
+      this.segment = this.openSegment(this.newSegmentPath(timestamp));
+
+      List<Path> segments = this.listSegments();
+      for (int i = 0; i < segments.size() - this.maxSegments; ++i) {
+        Files.deleteIfExists(segments.get(i));
+      }
+
+      return this.segment;
+    } catch (IOException e) {
+      LimboFilter.getLogger().error("Unable to rotate the audit log, disabling it.", e);
+      this.closed = true;
+      return null;
+    }
+  }
+
+  private Segment openSegment(Path path) throws IOException {
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) this.segmentRecords * RECORD_SIZE);
+    int count;
+    if (buffer.getLong(0) == MAGIC && buffer.getInt(8) == RECORD_SIZE) {
+      // The header count isn't written until the segment is closed, e.g. if the proxy has crashed.
+      count = findCount(buffer, Math.min(buffer.getInt(HEADER_COUNT), this.segmentRecords), this.segmentRecords);
+    } else {
+      buffer.putLong(0, MAGIC);
+      buffer.putInt(8, RECORD_SIZE);
+      buffer.putInt(HEADER_COUNT, 0);
+      count = 0;
+    }
+
+    return new Segment(path, channel, buffer, count, buffer.getLong(HEADER_LAST_TIMESTAMP));
+  }
+
+  private void closeSegment(Segment segment) {
+    MappedByteBuffer buffer = segment.buffer;
+    buffer.putInt(HEADER_COUNT, Math.min(segment.cursor.get(), this.segmentRecords));
+    buffer.putLong(HEADER_LAST_TIMESTAMP, segment.lastTimestamp.get());
+    try {
+      buffer.force();
+      segment.channel.close();
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * @return the index after the last written record, at least the count from the header
+   */
+  private static int findCount(MappedByteBuffer buffer, int headerCount, int capacity) {
+    for (int i = capacity - 1; i >= headerCount; --i) {
+      if (buffer.getLong(HEADER_SIZE + i * RECORD_SIZE) != 0) {
+        return i + 1;
+      }
+    }
+
+    return headerCount;
+  }
+
+  private Path newSegmentPath(long timestamp) {
+    return this.directory.resolve(String.format(Locale.ROOT, "%s%013d%s", SEGMENT_PREFIX, timestamp, SEGMENT_SUFFIX));
+  }
+
+  private List<Path> listSegments() throws IOException {
+    try (Stream<Path> files = Files.list(this.directory)) {
+      return files
+          .filter(file -> {
+            String name = file.getFileName().toString();
+            return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+          })
+          .sorted()
+          .collect(Collectors.toList());
+    }
+  }
+
+  public static long hashUsername(String username) {
+    // FNV-1a, case-insensitive because Minecraft usernames are.
+    long hash = 0xCBF29CE484222325L;
+    for (int i = 0; i < username.length(); ++i) {
+      hash ^= Character.toLowerCase(username.charAt(i));
+      hash *= 0x100000001B3L;
+    }
+
+    return hash;
+  }
+
+  private static class Segment {
+
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final AtomicInteger cursor;
+    private final AtomicLong lastTimestamp;
+
+    private Segment(Path path, FileChannel channel, MappedByteBuffer buffer, int count, long lastTimestamp) {
+      this.path = path;
+      this.channel = channel;
+      this.buffer = buffer;
+      this.cursor = new AtomicInteger(count);
+      this.lastTimestamp = new AtomicLong(lastTimestamp);
+    }
+  }
+
+  public static class Result {
+
+    private final long[] reasons = new long[VerdictReason.values().length];
+    private final Deque<AuditRecord> latest = new ArrayDeque<>();
+    private final int limit;
+    private long matched;
+
+    private Result(int limit) {
+      this.limit = limit;
+    }
+
+    private void add(MappedByteBuffer buffer, int offset, int reason) {
+      ++this.matched;
+      if (reason >= 0 && reason < this.reasons.length) {
+        ++this.reasons[reason];
+      }
+
+      if (this.limit > 0) {
+        int state = buffer.get(offset + 41);
+        this.latest.addLast(new AuditRecord(
+            buffer.getLong(offset),
+            AddressUtils.toInetAddress(buffer.getLong(offset + 8), buffer.getLong(offset + 16)),
+            buffer.getLong(offset + 24),
+            buffer.getInt(offset + 32),
+            buffer.getInt(offset + 36),
+            VerdictReason.fromOrdinal(reason),
+            state >= 0 && state < CHECK_STATES.length ? CHECK_STATES[state].name() : "-"
+        ));
+
+        if (this.latest.size() > this.limit) {
+          this.latest.removeFirst();
+        }
+      }
+    }
+
+    public long getMatched() {
+      return this.matched;
+    }
+
+    public long getBlocked() {
+      return this.matched - this.reasons[VerdictReason.PASSED.ordinal()];
+    }
+
+    public long getReasonCount(VerdictReason reason) {
+      return this.reasons[reason.ordinal()];
+    }
+
+    public List<AuditRecord> getLatest() {
+      return new ArrayList<>(this.latest);
+    }
+  }
+}
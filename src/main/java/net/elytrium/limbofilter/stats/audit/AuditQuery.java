@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2021 - 2022 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limbofilter.stats.audit;
+
+import java.util.Locale;
+import net.elytrium.limbofilter.stats.VerdictReason;
+import net.elytrium.limbofilter.utils.Subnet;
+
+public class AuditQuery {
+
+  private long from = Long.MIN_VALUE;
+  private long to = Long.MAX_VALUE;
+  private Subnet subnet;
+  private VerdictReason reason;
+  private long usernameHash;
+  private boolean filterUsername;
+  private int limit;
+
+  public AuditQuery(int limit) {
+    this.limit = limit;
+  }
+
+  /**
+   * Parses "key=value" arguments: since=1h, until=30m, subnet=10.0.0.0/8, reason=CAPTCHA, player=Name, limit=20.
+   *
+   * @param args  command arguments
+   * @param start index of the first filter argument
+   * @param limit default amount of records to show
+   * @return the parsed query
+   * @throws IllegalArgumentException if any argument is invalid
+   */
+  public static AuditQuery parse(String[] args, int start, int limit) {
+    AuditQuery query = new AuditQuery(limit);
+    long now = System.currentTimeMillis();
+    for (int i = start; i < args.length; ++i) {
+      String argument = args[i];
+      int separator = argument.indexOf('=');
+      if (separator == -1) {
+        throw new IllegalArgumentException(argument);
+      }
+
+      String value = argument.substring(separator + 1);
+      switch (argument.substring(0, separator).toLowerCase(Locale.ROOT)) {
+        case "since": {
+          query.from = now - parseDuration(value);
+          break;
+        }
+        case "until": {
+          query.to = now - parseDuration(value);
+          break;
+        }
+        case "subnet": {
+          query.subnet = Subnet.parse(value);
+          break;
+        }
+        case "reason": {
+          query.reason = VerdictReason.valueOf(value.toUpperCase(Locale.ROOT));
+          break;
+        }
+        case "player": {
+          query.usernameHash = AuditLog.hashUsername(value);
+          query.filterUsername = true;
+          break;
+        }
+        case "limit": {
+          query.limit = Integer.parseInt(value);
+          break;
+        }
+        default: {
+          throw new IllegalArgumentException(argument);
+        }
+      }
+    }
+
+    return query;
+  }
+
+  private static long parseDuration(String duration) {
+    if (duration.isEmpty()) {
+      throw new IllegalArgumentException(duration);
+    }
+
+    long multiplier;
+    switch (Character.toLowerCase(duration.charAt(duration.length() - 1))) {
+      case 's': {
+        multiplier = 1000L;
+        break;
+      }
+      case 'm': {
+        multiplier = 60 * 1000L;
+        break;
+      }
+      case 'h': {
+        multiplier = 60 * 60 * 1000L;
+        break;
+      }
+      case 'd': {
+        multiplier = 24 * 60 * 60 * 1000L;
+        break;
+      }
+      default: {
+        return Long.parseLong(duration) * 1000L;
+      }
+    }
+
+    return Long.parseLong(duration.substring(0, duration.length() - 1)) * multiplier;
+  }
+
+  public boolean matchesTime(long timestamp) {
+    return timestamp >= this.from && timestamp <= this.to;
+  }
+
+  public boolean overlaps(long first, long last) {
+    return last >= this.from && first <= this.to;
+  }
+
+  public boolean matches(long timestamp, long high, long low, long usernameHash, int reason) {
+    return this.matchesTime(timestamp)
+        && (this.subnet == null || this.subnet.contains(high, low))
+        && (this.reason == null || this.reason.ordinal() == reason)
+        && (!this.filterUsername || this.usernameHash == usernameHash);
+  }
+
+  public int getLimit() {
+    return this.limit;
+  }
+}
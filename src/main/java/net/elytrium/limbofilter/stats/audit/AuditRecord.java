@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2021 - 2022 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limbofilter.stats.audit;
+
+import java.net.InetAddress;
+import net.elytrium.limbofilter.stats.VerdictReason;
+
+public class AuditRecord {
+
+  private final long timestamp;
+  private final InetAddress address;
+  private final long usernameHash;
+  private final int duration;
+  private final int protocol;
+  private final VerdictReason reason;
+  private final String checkState;
+
+  public AuditRecord(long timestamp, InetAddress address, long usernameHash, int duration, int protocol, VerdictReason reason, String checkState) {
+    this.timestamp = timestamp;
+    this.address = address;
+    this.usernameHash = usernameHash;
+    this.duration = duration;
+    this.protocol = protocol;
+    this.reason = reason;
+    this.checkState = checkState;
+  }
+
+  public long getTimestamp() {
+    return this.timestamp;
+  }
+
+  public InetAddress getAddress() {
+    return this.address;
+  }
+
+  public long getUsernameHash() {
+    return this.usernameHash;
+  }
+
+  public int getDuration() {
+    return this.duration;
+  }
+
+  public int getProtocol() {
+    return this.protocol;
+  }
+
+  public VerdictReason getReason() {
+    return this.reason;
+  }
+
+  public String getCheckState() {
+    return this.checkState;
+  }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2021 - 2022 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limbofilter.utils;
+
+import java.net.InetAddress;
+import java.util.Arrays;
+
+/**
+ * Path-compressed binary trie of 128-bit address prefixes (see {@link AddressUtils}), stored in one primitive array.
+ * Every node keeps its whole prefix, so chains of single-child nodes are never created.
+ *
+ * <p>Node layout, {@link #STRIDE} longs per node to keep it within one cache line:
+ * prefix high bits, prefix low bits, prefix length and value, both children indexes.
+ *
+ * <p>Lookups return the value of the longest matching prefix and don't allocate. Big tries also get jump tables
+ * indexed by the first 16 bits of IPv4 and IPv6 addresses, so the lookups skip the dense upper levels.
+ * Inserts must not run concurrently with other operations.
+ */
+public class AddressTrie {
+
+  public static final byte NONE = 0;
+
+  private static final int STRIDE = 4;
+  private static final int HIGH = 0;
+  private static final int LOW = 1;
+  private static final int META = 2;
+  private static final int CHILDREN = 3;
+  private static final int ROOT = 0;
+  private static final int NO_CHILD = -1;
+  private static final int JUMP_BITS = 16;
+  private static final int JUMP_THRESHOLD = 4096;
+
+  private long[] nodes;
+  private int size;
+  // Deepest node covering the whole bucket and the value found before it, packed by walk().
+  private long[] ipv4Jumps;
+  private long[] ipv6Jumps;
+
+  public AddressTrie() {
+    this(16);
+  }
+
+  public AddressTrie(int capacity) {
+    this.nodes = new long[Math.max(1, capacity) * STRIDE];
+    this.addNode(0, 0, 0, NONE);
+  }
+
+  /**
+   * Sets the value of the prefix, overriding the previous one.
+   *
+   * @param length prefix length in bits, from 0 to 128
+   * @param value any value except {@link #NONE}
+   */
+  public void insert(long high, long low, int length, byte value) {
+    if (length < 0 || length > 128) {
+      throw new IllegalArgumentException("Invalid prefix length: " + length);
+    }
+
+    high &= AddressUtils.mask(length);
+    low &= AddressUtils.mask(length - 64);
+    this.ipv4Jumps = null;
+    this.ipv6Jumps = null;
+
+    int node = ROOT;
+    while (true) {
+      int nodeLength = this.getLength(node);
+      if (nodeLength == length) {
+        // The node prefix is always a prefix of the key, so the keys are equal here.
+        this.nodes[node + META] = length | (value & 0xFFL) << 8;
+        return;
+      }
+
+      int bit = bitAt(high, low, nodeLength);
+      int child = this.getChild(node, bit);
+      if (child == NO_CHILD) {
+        this.setChild(node, bit, this.addNode(high, low, length, value));
+        return;
+      }
+
+      long childHigh = this.nodes[child + HIGH];
+      long childLow = this.nodes[child + LOW];
+      int childLength = this.getLength(child);
+      int common = Math.min(commonLength(high, low, childHigh, childLow), Math.min(length, childLength));
+      if (common == childLength) {
+        node = child;
+        continue;
+      }
+
+      int branch;
+      if (common == length) {
+        // The new prefix lies between the node and its child.
+        branch = this.addNode(high, low, length, value);
+      } else {
+        branch = this.addNode(high & AddressUtils.mask(common), low & AddressUtils.mask(common - 64), common, NONE);
+        this.setChild(branch, bitAt(high, low, common), this.addNode(high, low, length, value));
+      }
+
+      this.setChild(branch, bitAt(childHigh, childLow, common), child);
+      this.setChild(node, bit, branch);
+      return;
+    }
+  }
+
+  /**
+   * @return the value of the longest prefix containing the address, or {@link #NONE}
+   */
+  public byte lookup(long high, long low) {
+    long start;
+    if (this.ipv4Jumps != null && AddressUtils.isIpv4Mapped(high, low)) {
+      start = this.ipv4Jumps[(int) (low >>> (32 - JUMP_BITS)) & ((1 << JUMP_BITS) - 1)];
+    } else if (this.ipv6Jumps != null) {
+      start = this.ipv6Jumps[(int) (high >>> (64 - JUMP_BITS))];
+    } else {
+      start = this.nodes[ROOT + META] >>> 8 & 0xFF;
+    }
+
+    return (byte) this.walk(high, low, start, 128);
+  }
+
+  public byte lookup(InetAddress address) {
+    return this.lookup(AddressUtils.getHigh(address), AddressUtils.getLow(address));
+  }
+
+  /**
+   * Releases the unused capacity and builds the jump tables, call it after the last insert.
+   */
+  public void trim() {
+    this.nodes = Arrays.copyOf(this.nodes, this.size * STRIDE);
+    if (this.size >= JUMP_THRESHOLD) {
+      long root = this.nodes[ROOT + META] >>> 8 & 0xFF;
+      long[] ipv4Jumps = new long[1 << JUMP_BITS];
+      long[] ipv6Jumps = new long[1 << JUMP_BITS];
+      for (int bucket = 0; bucket < 1 << JUMP_BITS; ++bucket) {
+        long ipv4 = AddressUtils.IPV4_MAPPED_PREFIX | (long) bucket << (32 - JUMP_BITS);
+        ipv4Jumps[bucket] = this.walk(0, ipv4, root, AddressUtils.IPV4_MAPPED_BITS + JUMP_BITS);
+        ipv6Jumps[bucket] = this.walk((long) bucket << (64 - JUMP_BITS), 0, root, JUMP_BITS);
+      }
+
+      this.ipv4Jumps = ipv4Jumps;
+      this.ipv6Jumps = ipv6Jumps;
+    }
+  }
+
+  /**
+   * @return amount of the nodes, including the branch nodes
+   */
+  public int size() {
+    return this.size;
+  }
+
+  public long getMemoryUsage() {
+    return (this.nodes.length + (this.ipv4Jumps == null ? 0 : this.ipv4Jumps.length + this.ipv6Jumps.length)) * 8L;
+  }
+
+  /**
+   * Follows the key down from the start node, until a node longer than maxLength or not matching the key.
+   *
+   * @param start the node offset shifted left by 8 bits, with the value found before it in the lower 8 bits
+   * @return the last visited node and the found value, packed the same way
+   */
+  private long walk(long high, long low, long start, int maxLength) {
+    long[] nodes = this.nodes;
+    int node = (int) (start >>> 8);
+    long result = start & 0xFF;
+    while (true) {
+      int length = (int) nodes[node + META] & 0xFF;
+      if (length == 128) {
+        break;
+      }
+
+      int child = (int) (nodes[node + CHILDREN] >> (bitAt(high, low, length) == 0 ? 32 : 0));
+      if (child == NO_CHILD) {
+        break;
+      }
+
+      long meta = nodes[child + META];
+      int childLength = (int) meta & 0xFF;
+      if (childLength > maxLength
+          || (high & AddressUtils.mask(childLength)) != nodes[child + HIGH] || (low & AddressUtils.mask(childLength - 64)) != nodes[child + LOW]) {
+        break;
+      }
+
+      long value = meta >>> 8 & 0xFF;
+      if (value != NONE) {
+        result = value;
+      }
+
+      node = child;
+    }
+
+    return (long) node << 8 | result;
+  }
+
+  private int getLength(int node) {
+    return (int) this.nodes[node + META] & 0xFF;
+  }
+
+  private int getChild(int node, int bit) {
+    return (int) (this.nodes[node + CHILDREN] >> (bit == 0 ? 32 : 0));
+  }
+
+  private void setChild(int node, int bit, int child) {
+    long children = this.nodes[node + CHILDREN];
+    if (bit == 0) {
+      this.nodes[node + CHILDREN] = ((long) child << 32) | (children & 0xFFFFFFFFL);
+    } else {
+      this.nodes[node + CHILDREN] = (children & 0xFFFFFFFF00000000L) | (child & 0xFFFFFFFFL);
+    }
+  }
+
+  /**
+   * @return the node offset in {@link #nodes}
+   */
+  private int addNode(long high, long low, int length, byte value) {
+    int node = this.size * STRIDE;
+    if (node == this.nodes.length) {
+      this.nodes = Arrays.copyOf(this.nodes, node * 2);
+    }
+
+    ++this.size;
+    this.nodes[node + HIGH] = high;
+    this.nodes[node + LOW] = low;
+    this.nodes[node + META] = length | (value & 0xFFL) << 8;
+    this.nodes[node + CHILDREN] = -1L;
+    return node;
+  }
+
+  private static int bitAt(long high, long low, int index) {
+    if (index < 64) {
+      return (int) (high >>> (63 - index)) & 1;
+    } else {
+      return (int) (low >>> (127 - index)) & 1;
+    }
+  }
+
+  private static int commonLength(long high1, long low1, long high2, long low2) {
+    long high = high1 ^ high2;
+    if (high != 0) {
+      return Long.numberOfLeadingZeros(high);
+    }
+
+    return 64 + Long.numberOfLeadingZeros(low1 ^ low2);
+  }
+}
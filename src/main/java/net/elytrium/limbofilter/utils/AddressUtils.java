@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2021 - 2022 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limbofilter.utils;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * Converts addresses to a pair of longs holding the 128-bit IPv6 form.
+ * IPv4 addresses are stored as IPv4-mapped IPv6 addresses (::ffff:a.b.c.d).
+ */
+public class AddressUtils {
+
+  public static final long IPV4_MAPPED_PREFIX = 0xFFFF00000000L;
+  public static final int IPV4_MAPPED_BITS = 96;
+
+  public static long getHigh(InetAddress address) {
+    if (address instanceof Inet4Address) {
+      return 0;
+    } else {
+      return toLong(address.getAddress(), 0);
+    }
+  }
+
+  public static long getLow(InetAddress address) {
+    if (address instanceof Inet4Address) {
+      // Inet4Address#hashCode returns the address itself, so we don't need to clone the array here.
+      return IPV4_MAPPED_PREFIX | (address.hashCode() & 0xFFFFFFFFL);
+    } else {
+      return toLong(address.getAddress(), 8);
+    }
+  }
+
+  public static boolean isIpv4Mapped(long high, long low) {
+    return high == 0 && (low & 0xFFFFFFFF00000000L) == IPV4_MAPPED_PREFIX;
+  }
+
+  public static InetAddress toInetAddress(long high, long low) {
+    try {
+      if (isIpv4Mapped(high, low)) {
+        return InetAddress.getByAddress(toBytes(low, 4, 4));
+      } else {
+        byte[] address = new byte[16];
+        System.arraycopy(toBytes(high, 0, 8), 0, address, 0, 8);
+        System.arraycopy(toBytes(low, 0, 8), 0, address, 8, 8);
+        return InetAddress.getByAddress(address);
+      }
+    } catch (UnknownHostException e) {
+      throw new IllegalArgumentException(e);
+    }
+  }
+
+  public static long mask(int bits) {
+    if (bits <= 0) {
+      return 0;
+    } else if (bits >= 64) {
+      return -1L;
+    } else {
+      return -1L << (64 - bits);
+    }
+  }
+
+  /**
+   * Spreads the bits of an address part for hash tables, Stafford variant 13 of the MurmurHash3 finalizer.
+   */
+  public static long mix(long value) {
+    value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+    value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+    return value ^ (value >>> 31);
+  }
+
+  private static long toLong(byte[] bytes, int offset) {
+    long value = 0;
+    for (int i = offset; i < offset + 8; ++i) {
+      value = (value << 8) | (bytes[i] & 0xFF);
+    }
+
+    return value;
+  }
+
+  private static byte[] toBytes(long value, int offset, int length) {
+    byte[] bytes = new byte[length];
+    for (int i = 0; i < length; ++i) {
+      bytes[i] = (byte) (value >>> ((7 - offset - i) * 8));
+    }
+
+    return bytes;
+  }
+}
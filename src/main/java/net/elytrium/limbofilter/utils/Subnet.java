@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2021 - 2022 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limbofilter.utils;
+
+import com.google.common.net.InetAddresses;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+
+public class Subnet {
+
+  private final long high;
+  private final long low;
+  private final int bits;
+  private final long highMask;
+  private final long lowMask;
+
+  public Subnet(long high, long low, int bits) {
+    this.bits = bits;
+    this.highMask = AddressUtils.mask(bits);
+    this.lowMask = AddressUtils.mask(bits - 64);
+    this.high = high & this.highMask;
+    this.low = low & this.lowMask;
+  }
+
+  /**
+   * Parses "address" or "address/prefix" notation. Hostnames are not resolved.
+   *
+   * @param cidr IPv4 or IPv6 subnet, e.g. "192.168.0.0/16"
+   * @return the parsed subnet
+   * @throws IllegalArgumentException if the notation is invalid
+   */
+  public static Subnet parse(String cidr) {
+    int slash = cidr.indexOf('/');
+    InetAddress address = InetAddresses.forString((slash == -1 ? cidr : cidr.substring(0, slash)).trim());
+    boolean ipv4 = address instanceof Inet4Address;
+    int maxBits = ipv4 ? 32 : 128;
+
+    int bits = maxBits;
+    if (slash != -1) {
+      try {
+        bits = Integer.parseInt(cidr.substring(slash + 1).trim());
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("Invalid prefix length in " + cidr, e);
+      }
+
+      if (bits < 0 || bits > maxBits) {
+        throw new IllegalArgumentException("Invalid prefix length in " + cidr);
+      }
+    }
+
+    return new Subnet(AddressUtils.getHigh(address), AddressUtils.getLow(address), ipv4 ? bits + AddressUtils.IPV4_MAPPED_BITS : bits);
+  }
+
+  public boolean contains(long high, long low) {
+    return (high & this.highMask) == this.high && (low & this.lowMask) == this.low;
+  }
+
+  public boolean contains(InetAddress address) {
+    return this.contains(AddressUtils.getHigh(address), AddressUtils.getLow(address));
+  }
+
+  public long getHigh() {
+    return this.high;
+  }
+
+  public long getLow() {
+    return this.low;
+  }
+
+  /**
+   * @return prefix length in the 128-bit address space (IPv4 subnets are offset by 96 bits)
+   */
+  public int getBits() {
+    return this.bits;
+  }
+
+  @Override
+  public String toString() {
+    if (AddressUtils.isIpv4Mapped(this.high, this.low) && this.bits >= AddressUtils.IPV4_MAPPED_BITS) {
+      return InetAddresses.toAddrString(AddressUtils.toInetAddress(this.high, this.low)) + "/" + (this.bits - AddressUtils.IPV4_MAPPED_BITS);
+    } else {
+      return InetAddresses.toAddrString(AddressUtils.toInetAddress(this.high, this.low)) + "/" + this.bits;
+    }
+  }
+}
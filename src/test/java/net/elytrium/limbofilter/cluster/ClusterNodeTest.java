@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2021 - 2022 Elytrium
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.elytrium.limbofilter.cluster;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import net.elytrium.limbofilter.stats.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Two nodes talking over the loopback interface.
+ */
+class ClusterNodeTest {
+
+  private static final String HOST = "127.0.0.1";
+  private static final String SECRET = "test-secret";
+  private static final byte TYPE = 5;
+  private static final long TIMEOUT_MILLIS = 5000;
+  // Long enough for a dropped datagram to be noticed, the loopback delivers in microseconds.
+  private static final long DROP_MILLIS = 300;
+
+  private final List<ClusterNode> nodes = new ArrayList<>();
+
+  @AfterEach
+  void closeNodes() {
+    this.nodes.forEach(ClusterNode::close);
+  }
+
+  @Test
+  void deliversSignedPayload() throws IOException, InterruptedException {
+    int firstPort = freePort();
+    int secondPort = freePort();
+    ClusterNode first = this.createNode(firstPort, secondPort, SECRET);
+    ClusterNode second = this.createNode(secondPort, firstPort, SECRET);
+    BlockingQueue<byte[]> received = collect(second);
+
+    first.broadcast(TYPE, ByteBuffer.wrap("hello".getBytes(StandardCharsets.UTF_8)));
+
+    byte[] payload = received.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    assertNotNull(payload);
+    assertArrayEquals("hello".getBytes(StandardCharsets.UTF_8), payload);
+  }
+
+  @Test
+  void rejectsForeignSecret() throws IOException, InterruptedException {
+    int firstPort = freePort();
+    int secondPort = freePort();
+    ClusterNode first = this.createNode(firstPort, secondPort, "another-secret");
+    ClusterNode second = this.createNode(secondPort, firstPort, SECRET);
+    BlockingQueue<byte[]> received = collect(second);
+
+    first.broadcast(TYPE, ByteBuffer.wrap(new byte[] {1, 2, 3}));
+
+    assertNull(received.poll(DROP_MILLIS, TimeUnit.MILLISECONDS));
+  }
+
+  @Test
+  void rejectsTamperedAndReplayedDatagrams() throws IOException, InterruptedException {
+    try (DatagramChannel capture = DatagramChannel.open(); DatagramChannel attacker = DatagramChannel.open()) {
+      capture.bind(new InetSocketAddress(HOST, 0));
+      capture.configureBlocking(true);
+      int capturePort = ((InetSocketAddress) capture.getLocalAddress()).getPort();
+
+      int senderPort = freePort();
+      int receiverPort = freePort();
+      ClusterNode sender = this.createNode(senderPort, capturePort, SECRET);
+      ClusterNode receiver = this.createNode(receiverPort, senderPort, SECRET);
+      final BlockingQueue<byte[]> received = collect(receiver);
+      final InetSocketAddress receiverAddress = new InetSocketAddress(HOST, receiverPort);
+
+      sender.broadcast(TYPE, ByteBuffer.wrap(new byte[] {42}));
+      ByteBuffer datagram = ByteBuffer.allocate(2048);
+      capture.receive(datagram);
+      datagram.flip();
+      byte[] bytes = new byte[datagram.remaining()];
+      datagram.get(bytes);
+
+      byte[] tampered = bytes.clone();
+      tampered[tampered.length - 17] ^= 1;
+      attacker.send(ByteBuffer.wrap(tampered), receiverAddress);
+      assertNull(received.poll(DROP_MILLIS, TimeUnit.MILLISECONDS));
+
+      attacker.send(ByteBuffer.wrap(new byte[] {0x4C, 0x46, 0x43}), receiverAddress);
+      assertNull(received.poll(DROP_MILLIS, TimeUnit.MILLISECONDS));
+
+      attacker.send(ByteBuffer.wrap(bytes), receiverAddress);
+      byte[] payload = received.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+      assertNotNull(payload);
+      assertArrayEquals(new byte[] {42}, payload);
+
+      attacker.send(ByteBuffer.wrap(bytes), receiverAddress);
+      assertNull(received.poll(DROP_MILLIS, TimeUnit.MILLISECONDS));
+    }
+  }
+
+  @Test
+  void aggregatesPeerRates() throws IOException, InterruptedException {
+    int firstPort = freePort();
+    int secondPort = freePort();
+    ClusterNode first = this.createNode(firstPort, secondPort, SECRET);
+    ClusterNode second = this.createNode(secondPort, firstPort, SECRET);
+
+    Statistics firstStatistics = new Statistics();
+    Statistics secondStatistics = new Statistics();
+    final ClusterRates firstRates = new ClusterRates(first, firstStatistics, 10, 10, 10000);
+    final ClusterRates secondRates = new ClusterRates(second, secondStatistics, 10, 10, 10000);
+
+    for (int i = 0; i < 7; ++i) {
+      firstStatistics.addConnection();
+    }
+    for (int i = 0; i < 3; ++i) {
+      firstStatistics.addPing();
+    }
+    secondStatistics.addConnection();
+
+    long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+    while (System.currentTimeMillis() < deadline
+        && (secondRates.getRemoteConnections() != 7 || secondRates.getRemotePings() != 3 || firstRates.getRemoteConnections() != 1)) {
+      Thread.sleep(50);
+    }
+
+    assertEquals(7, secondRates.getRemoteConnections());
+    assertEquals(3, secondRates.getRemotePings());
+    assertEquals(1, firstRates.getRemoteConnections());
+    assertEquals(0, firstRates.getRemotePings());
+  }
+
+  private ClusterNode createNode(int port, int peerPort, String secret) throws IOException {
+    ClusterNode node = new ClusterNode(HOST, port, List.of(HOST + ":" + peerPort), secret);
+    this.nodes.add(node);
+    return node;
+  }
+
+  private static BlockingQueue<byte[]> collect(ClusterNode node) {
+    BlockingQueue<byte[]> received = new LinkedBlockingQueue<>();
+    node.setHandler(TYPE, (senderId, sender, payload) -> {
+      byte[] bytes = new byte[payload.remaining()];
+      payload.get(bytes);
+      received.add(bytes);
+    });
+    return received;
+  }
+
+  private static int freePort() throws IOException {
+    try (DatagramChannel channel = DatagramChannel.open()) {
+      channel.bind(new InetSocketAddress(HOST, 0));
+      return ((InetSocketAddress) channel.getLocalAddress()).getPort();
+    }
+  }
+}